@@ -0,0 +1,317 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Benchmarks the stages of {@code TagCloudGenerator} on a synthetic
+ * {@code ZipfCorpus}: counting the words of a file, selecting the top words,
+ * sorting them alphabetically and rendering the HTML, for clouds of 100 to
+ * 100000 words, and the whole run end to end.
+ *
+ * <p>
+ * Each benchmark is warmed up, so that the JIT compiler has done its work,
+ * then run repeatedly for a fixed time. For each it reports the mean, median
+ * and 99th percentile time of one run, the number of items (words of the
+ * input, or words of the cloud) processed per second, and the number of bytes
+ * allocated per item, as measured by the JVM for the running thread. The
+ * result of every run is consumed, so that no run can be optimized away.
+ *
+ * <p>
+ * Options are given as {@code --name=value}: {@code size} of the corpus in
+ * megabytes (32), {@code vocabulary} (200000), {@code line} length in words
+ * (12), Zipf {@code exponent} (1.0), {@code seed} (1), and {@code warmup}
+ * and {@code measure} times per benchmark in seconds (1 and 3).
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+public final class TagCloudBenchmark {
+
+    /**
+     * The cloud sizes benchmarked.
+     */
+    private static final int[] CLOUD_SIZES = { 100, 1000, 10000, 100000 };
+
+    /**
+     * Smallest number of measured runs of a benchmark.
+     */
+    private static final int MIN_RUNS = 5;
+
+    /**
+     * Largest number of measured runs of a benchmark.
+     */
+    private static final int MAX_RUNS = 100000;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final long NANOS = 1000000000L;
+
+    /**
+     * One run of a benchmark.
+     */
+    private interface Run {
+
+        /**
+         * Runs the benchmarked code once.
+         *
+         * @return a value depending on the result, to be consumed
+         * @throws IOException
+         *             read or write problem
+         */
+        long run() throws IOException;
+
+    }
+
+    /**
+     * A channel discarding what is written to it, so that rendering is
+     * measured without the cost of the disk.
+     */
+    private static final class Discard implements WritableByteChannel {
+
+        /**
+         * Number of bytes written.
+         */
+        private long written = 0;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            this.written += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    /**
+     * Consumes the results of the runs.
+     */
+    private static volatile long sink;
+
+    /**
+     * Warm up time of each benchmark in nanoseconds.
+     */
+    private static long warmup = NANOS;
+
+    /**
+     * Measured time of each benchmark in nanoseconds.
+     */
+    private static long measure = 3 * NANOS;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudBenchmark() {
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if the
+     * JVM does not measure them.
+     *
+     * @return the bytes allocated
+     */
+    private static long allocated() {
+        ThreadMXBean bean;
+        try {
+            bean = ManagementFactory.getPlatformMXBean(ThreadMXBean.class);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        if (bean == null || !bean.isThreadAllocatedMemorySupported()
+                || !bean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return bean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Warms up and measures a benchmark, and prints its results.
+     *
+     * @param name
+     *            the name of the benchmark
+     * @param param
+     *            the size of the cloud
+     * @param items
+     *            the number of items processed by one run
+     * @param run
+     *            the benchmarked code
+     * @throws IOException
+     *             read or write problem
+     */
+    private static void measure(String name, int param, long items, Run run)
+            throws IOException {
+        long end = System.nanoTime() + warmup;
+        int n = 0;
+        while (n < 2 || System.nanoTime() < end) {
+            sink += run.run();
+            n++;
+        }
+        long[] times = new long[MAX_RUNS];
+        n = 0;
+        long before = allocated();
+        long start = System.nanoTime();
+        end = start + measure;
+        long now = start;
+        while (n < MAX_RUNS && (n < MIN_RUNS || now < end)) {
+            long t = now;
+            sink += run.run();
+            now = System.nanoTime();
+            times[n] = now - t;
+            n++;
+        }
+        long after = allocated();
+        long total = now - start;
+        Arrays.sort(times, 0, n);
+        String bytes = "n/a";
+        if (before >= 0) {
+            bytes = String.format(Locale.ROOT, "%.1f",
+                    (double) (after - before) / n / items);
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "%-22s %7d %7d %10.3f %10.3f %10.3f %14.0f %10s", name,
+                param, n, total / 1e6 / n, times[n / 2] / 1e6,
+                times[Math.min(n - 1, (int) Math.ceil(0.99 * n) - 1)] / 1e6,
+                (double) items * n * NANOS / total, bytes));
+    }
+
+    /**
+     * Runs all benchmarks.
+     *
+     * @param args
+     *            the options, see the class comment
+     * @throws IOException
+     *             read or write problem
+     */
+    public static void main(String[] args) throws IOException {
+        long size = 32;
+        int vocabulary = 200000;
+        int line = 12;
+        double exponent = 1.0;
+        long seed = 1;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                System.err.println(
+                        "Options must have the form --name=value: " + arg);
+                return;
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "size":
+                    size = Long.parseLong(value);
+                    break;
+                case "vocabulary":
+                    vocabulary = Integer.parseInt(value);
+                    break;
+                case "line":
+                    line = Integer.parseInt(value);
+                    break;
+                case "exponent":
+                    exponent = Double.parseDouble(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "warmup":
+                    warmup = (long) (Double.parseDouble(value) * NANOS);
+                    break;
+                case "measure":
+                    measure = (long) (Double.parseDouble(value) * NANOS);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + arg);
+                    return;
+            }
+        }
+        Path corpus = Files.createTempFile("tagcloud", ".txt");
+        try {
+            long tokens = new ZipfCorpus(vocabulary, exponent, line, seed)
+                    .write(corpus, size << 20);
+            System.out.println("Corpus: " + Files.size(corpus) + " bytes, "
+                    + tokens + " words, vocabulary " + vocabulary
+                    + ", exponent " + exponent + ", seed " + seed + ".");
+            run(corpus, tokens);
+        } finally {
+            Files.delete(corpus);
+        }
+    }
+
+    /**
+     * Runs all benchmarks on the given corpus.
+     *
+     * @param corpus
+     *            the corpus file
+     * @param tokens
+     *            the number of words of the corpus
+     * @throws IOException
+     *             read or write problem
+     */
+    private static void run(Path corpus, long tokens) throws IOException {
+        System.out.println(String.format(Locale.ROOT,
+                "%-22s %7s %7s %10s %10s %10s %14s %10s", "benchmark",
+                "words", "runs", "mean ms", "p50 ms", "p99 ms", "items/s",
+                "B/item"));
+        WordCounts counts;
+        try (FileChannel in = FileChannel.open(corpus)) {
+            measure("generateMap", 0, tokens,
+                    () -> TagCloudGenerator.generateMap(in).size());
+            counts = TagCloudGenerator.generateMap(in);
+        }
+        for (int n : CLOUD_SIZES) {
+            List<Map.Entry<String, Integer>> top = TagCloudGenerator
+                    .getWordsFrequency(counts, n);
+            int[] maxAndMin = new int[2];
+            List<Map.Entry<String, Integer>> sorted = TagCloudGenerator
+                    .getWordsAlphabetical(top, maxAndMin);
+            measure("getWordsFrequency", n, top.size(),
+                    () -> TagCloudGenerator.getWordsFrequency(counts, n)
+                            .size());
+            measure("getWordsAlphabetical", n, top.size(),
+                    () -> TagCloudGenerator
+                            .getWordsAlphabetical(top, new int[2]).size());
+            measure("render", n, top.size(), () -> {
+                Discard out = new Discard();
+                new HtmlRenderer().render(out, sorted, "corpus.txt",
+                        maxAndMin[0], maxAndMin[1]);
+                return out.written;
+            });
+        }
+        measure("endToEnd", 100, tokens, () -> {
+            try (FileChannel in = FileChannel.open(corpus)) {
+                int[] maxAndMin = new int[2];
+                List<Map.Entry<String, Integer>> s = TagCloudGenerator
+                        .getWordsAlphabetical(TagCloudGenerator
+                                .getWordsFrequency(
+                                        TagCloudGenerator.generateMap(in),
+                                        100),
+                                maxAndMin);
+                Discard out = new Discard();
+                new HtmlRenderer().render(out, s, "corpus.txt", maxAndMin[0],
+                        maxAndMin[1]);
+                return out.written;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,155 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic text whose word frequencies follow Zipf's law, as those
+ * of natural language do: the word of rank r is drawn with a probability
+ * proportional to 1 / r^s. The vocabulary, the exponent, the number of words
+ * per line and the size of the text are configurable, and the same seed
+ * always gives the same text, so benchmark runs can be compared.
+ *
+ * <p>
+ * Words are made of random lower case letters, longer for rarer words, as in
+ * natural language, and are separated by single spaces and line breaks.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class ZipfCorpus {
+
+    /**
+     * The words, by rank.
+     */
+    private final String[] words;
+
+    /**
+     * The cumulative probability of the words up to each rank.
+     */
+    private final double[] cdf;
+
+    /**
+     * Number of words on each line.
+     */
+    private final int lineWords;
+
+    /**
+     * The seed of the words drawn.
+     */
+    private final long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param vocabulary
+     *            the number of distinct words
+     * @param exponent
+     *            the exponent s of Zipf's law
+     * @param lineWords
+     *            the number of words on each line
+     * @param seed
+     *            the seed of the vocabulary and of the words drawn
+     * @requires vocabulary > 0 and exponent > 0 and lineWords > 0
+     */
+    ZipfCorpus(int vocabulary, double exponent, int lineWords, long seed) {
+        assert vocabulary > 0 : "Violation of: vocabulary > 0";
+        assert exponent > 0 : "Violation of: exponent > 0";
+        assert lineWords > 0 : "Violation of: lineWords > 0";
+        this.lineWords = lineWords;
+        this.seed = seed;
+        this.words = new String[vocabulary];
+        Random random = new Random(seed);
+        Set<String> seen = new HashSet<>();
+        for (int r = 0; r < vocabulary; r++) {
+            int length = 2 + (31 - Integer.numberOfLeadingZeros(r + 1)) / 2;
+            String w;
+            do {
+                char[] letters = new char[length + random.nextInt(3)];
+                for (int i = 0; i < letters.length; i++) {
+                    letters[i] = (char) ('a' + random.nextInt(26));
+                }
+                w = new String(letters);
+            } while (!seen.add(w));
+            this.words[r] = w;
+        }
+        this.cdf = new double[vocabulary];
+        double total = 0;
+        for (int r = 0; r < vocabulary; r++) {
+            total += 1 / Math.pow(r + 1, exponent);
+            this.cdf[r] = total;
+        }
+        for (int r = 0; r < vocabulary; r++) {
+            this.cdf[r] /= total;
+        }
+    }
+
+    /**
+     * Returns the word of the given rank.
+     *
+     * @param rank
+     *            the rank, from 0 for the most frequent word
+     * @return the word
+     * @requires 0 <= rank < [the vocabulary]
+     */
+    String word(int rank) {
+        return this.words[rank];
+    }
+
+    /**
+     * Writes text of at least {@code bytes} bytes, ending with a full line.
+     *
+     * @param out
+     *            where the text is written; not closed
+     * @param bytes
+     *            the size of the text
+     * @return the number of words written
+     * @throws IOException
+     *             write problem
+     */
+    long write(OutputStream out, long bytes) throws IOException {
+        Random random = new Random(this.seed + 1);
+        long written = 0;
+        long count = 0;
+        while (written < bytes) {
+            for (int i = 0; i < this.lineWords; i++) {
+                int r = Arrays.binarySearch(this.cdf, random.nextDouble());
+                if (r < 0) {
+                    r = Math.min(-r - 1, this.cdf.length - 1);
+                }
+                byte[] w = this.words[r].getBytes(StandardCharsets.US_ASCII);
+                out.write(w);
+                out.write(i == this.lineWords - 1 ? '\n' : ' ');
+                written += w.length + 1;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes text of at least {@code bytes} bytes to a file.
+     *
+     * @param file
+     *            the file to write
+     * @param bytes
+     *            the size of the text
+     * @return the number of words written
+     * @throws IOException
+     *             file write problem
+     */
+    long write(Path file, long bytes) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file), 1 << 16)) {
+            return this.write(out, bytes);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Counts words exactly while their number fits a memory budget, and
+ * approximately beyond it, so that an input with an unexpectedly large
+ * vocabulary cannot exhaust the heap.
+ *
+ * <p>
+ * Words are first counted by a {@code ByteWordCounter}. When its number of
+ * distinct words would no longer fit the budget, the words with the most
+ * counts are handed over, with their exact counts, to a {@code SpaceSaving}
+ * summary sized for the budget, the exact counter is dropped, and the rest
+ * of the input is counted by the summary. Every word left out had no more
+ * counts than any word handed over, so the summary keeps its guarantee:
+ * each estimate is at most {@code errorBound()} above the true count, and
+ * every word counted more often than that is in the summary. While both
+ * exist, during the hand-over, up to about twice the budget is used.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class AdaptiveWordCounter implements WordScanner.Sink {
+
+    /**
+     * The exact counts, {@code null} once switched to the summary.
+     */
+    private ByteWordCounter exact = new ByteWordCounter();
+
+    /**
+     * The approximate counts, {@code null} until switched to them.
+     */
+    private SpaceSaving summary = null;
+
+    /**
+     * Where words are counted.
+     */
+    private WordScanner.Sink target = this.exact;
+
+    /**
+     * The memory budget in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Number of distinct words above which the exact counts do not fit the
+     * budget.
+     */
+    private final int limit;
+
+    /**
+     * Number of distinct words counted exactly before the switch.
+     */
+    private int switchedAfter = 0;
+
+    /**
+     * Number of words counted exactly.
+     */
+    private long counted = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param budget
+     *            the memory budget in bytes
+     */
+    AdaptiveWordCounter(long budget) {
+        this.budget = budget;
+        this.limit = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 4,
+                budget / ByteWordCounter.BYTES_PER_WORD));
+    }
+
+    @Override
+    public void word(byte[] word, int length) {
+        this.target.word(word, length);
+        if (this.exact != null) {
+            this.counted++;
+            if (this.exact.size() > this.limit) {
+                this.switchToSummary();
+            }
+        }
+    }
+
+    /**
+     * Hands the words with the most counts over to a new summary, and counts
+     * the following words there.
+     */
+    private void switchToSummary() {
+        SpaceSaving s = new SpaceSaving(SpaceSaving.capacityFor(this.budget));
+        int capacity = s.capacity();
+        int threshold = this.exact.topThreshold(capacity);
+        int[] added = new int[1];
+        long[] seeded = new long[1];
+        this.exact.forEachAtLeast(threshold + 1, (word, count) -> {
+            s.add(word, count);
+            added[0]++;
+            seeded[0] += count;
+        });
+        this.exact.forEachAtLeast(threshold, (word, count) -> {
+            if (count == threshold && added[0] < capacity) {
+                s.add(word, count);
+                added[0]++;
+                seeded[0] += count;
+            }
+        });
+        s.addDropped(this.counted - seeded[0]);
+        this.switchedAfter = this.exact.size();
+        this.exact = null;
+        this.summary = s;
+        this.target = WordScanner.counting(s::count);
+    }
+
+    /**
+     * Tells whether all words were counted exactly.
+     *
+     * @return true iff the counts are exact
+     */
+    boolean isExact() {
+        return this.exact != null;
+    }
+
+    /**
+     * Returns the exact counts.
+     *
+     * @return the exact counts
+     * @requires isExact()
+     */
+    ByteWordCounter exact() {
+        assert this.isExact() : "Violation of: isExact()";
+        return this.exact;
+    }
+
+    /**
+     * Returns the approximate counts.
+     *
+     * @return the approximate counts
+     * @requires !isExact()
+     */
+    SpaceSaving summary() {
+        assert !this.isExact() : "Violation of: !isExact()";
+        return this.summary;
+    }
+
+    /**
+     * Returns a one line description of how the words were counted.
+     *
+     * @return the description
+     */
+    String mode() {
+        if (this.isExact()) {
+            return "Counted exactly: " + this.exact.size()
+                    + " distinct words fit the memory budget.";
+        }
+        return "Switched to approximate counting after "
+                + this.switchedAfter
+                + " distinct words did not fit the memory budget.";
+    }
+
+}
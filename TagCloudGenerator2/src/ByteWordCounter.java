@@ -0,0 +1,616 @@
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counts the words reported by a {@code WordScanner} by their UTF-8 bytes,
+ * without decoding them. The bytes of each distinct word are copied once
+ * into a {@code WordArena}, and the table refers to them by handle; a word is
+ * only decoded to a {@code String} when it is reported to
+ * {@link #forEach(ObjIntConsumer)} or
+ * {@link #forEachAtLeast(int, ObjIntConsumer)}, or selected by
+ * {@link #top(int)}, and the {@code String} is kept for later reports.
+ *
+ * <p>
+ * The scanner folds ASCII letters to lower case. A word holding non-ASCII
+ * bytes takes a slow path: it is decoded, converted to lower case with
+ * {@code String.toLowerCase}, and counted by the UTF-8 bytes of the result,
+ * so words differing only in the case of non-ASCII letters are counted
+ * together exactly as by {@code WordScanner.counting}.
+ *
+ * <p>
+ * Counts may also be subtracted, for counts over a sliding window. A word
+ * whose count drops to 0 keeps its slot, so that it is cheap to count again,
+ * until such words fill a quarter of the slots in use; the table is then
+ * rebuilt without them.
+ *
+ * <p>
+ * Implemented, like {@code WordCounter}, as an open addressing hash table
+ * with linear probing over parallel arrays.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class ByteWordCounter implements WordScanner.Sink, WordCounts {
+
+    /**
+     * Estimated number of bytes of heap used per distinct word, counting the
+     * unused slots of the table and of the byte array, but not the
+     * {@code String}s of decoded words.
+     */
+    static final int BYTES_PER_WORD = 64;
+
+    /**
+     * Initial number of slots; must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * The bytes of all words.
+     */
+    private WordArena arena = new WordArena();
+
+    /**
+     * Handle in {@code arena} of the word in each slot.
+     */
+    private int[] handles;
+
+    /**
+     * Length in bytes of the word in each slot, 0 for an empty slot.
+     */
+    private int[] lengths;
+
+    /**
+     * Hash of the word in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Count of the word in each slot.
+     */
+    private int[] counts;
+
+    /**
+     * The word in each slot as a {@code String}, or {@code null} if it was
+     * not decoded yet.
+     */
+    private String[] names;
+
+    /**
+     * Number of slots in use.
+     */
+    private int size = 0;
+
+    /**
+     * Number of slots in use whose count is 0.
+     */
+    private int zeros = 0;
+
+    /**
+     * Number of slots in use above which the table grows.
+     */
+    private int threshold;
+
+    /**
+     * Constructor.
+     */
+    ByteWordCounter() {
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Replaces the table with an empty one of the given capacity.
+     *
+     * @param capacity
+     *            the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        this.handles = new int[capacity];
+        this.lengths = new int[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.names = new String[capacity];
+        this.threshold = capacity / 4 * 3;
+    }
+
+    /**
+     * Hashes {@code b[off, off + len)}.
+     *
+     * @param b
+     *            the bytes holding the word
+     * @param off
+     *            the offset of the word
+     * @param len
+     *            the length of the word
+     * @return the hash
+     */
+    private static int hash(byte[] b, int off, int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot holding {@code b[off, off + len)}, or the empty slot
+     * where it would be inserted.
+     *
+     * @param h
+     *            the hash of the word
+     * @param b
+     *            the bytes holding the word
+     * @param off
+     *            the offset of the word
+     * @param len
+     *            the length of the word
+     * @return the slot
+     */
+    private int find(int h, byte[] b, int off, int len) {
+        int mask = this.lengths.length - 1;
+        int i = h & mask;
+        while (this.lengths[i] != 0 && (this.hashes[i] != h
+                || this.lengths[i] != len || !this.holds(i, b, off, len))) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Tells whether the word in slot {@code i}, of length {@code len}, is
+     * {@code b[off, off + len)}.
+     *
+     * @param i
+     *            the slot
+     * @param b
+     *            the bytes holding the word
+     * @param off
+     *            the offset of the word
+     * @param len
+     *            the length of the word
+     * @return true iff the bytes are the same
+     */
+    private boolean holds(int i, byte[] b, int off, int len) {
+        return this.arena.equals(this.handles[i], b, off, len);
+    }
+
+    /**
+     * Adds {@code n} to the count of the word {@code b[off, off + len)}.
+     *
+     * @param h
+     *            the hash of the word
+     * @param b
+     *            the bytes holding the word, in UTF-8 and lower case
+     * @param off
+     *            the offset of the word
+     * @param len
+     *            the length of the word
+     * @param n
+     *            the amount to add
+     * @param name
+     *            the word as a {@code String}, or {@code null} if not known
+     * @return the slot of the word
+     * @requires len > 0 and n > 0
+     */
+    private int add(int h, byte[] b, int off, int len, int n, String name) {
+        int i = this.find(h, b, off, len);
+        if (this.lengths[i] != 0) {
+            if (this.counts[i] == 0) {
+                this.zeros--;
+            }
+            this.counts[i] += n;
+            return i;
+        }
+        this.handles[i] = this.arena.add(b, off, len);
+        this.lengths[i] = len;
+        this.hashes[i] = h;
+        this.counts[i] = n;
+        this.names[i] = name;
+        this.size++;
+        if (this.size > this.threshold) {
+            this.grow();
+            i = this.find(h, b, off, len);
+        }
+        return i;
+    }
+
+    @Override
+    public void word(byte[] word, int length) {
+        this.wordSlot(word, length);
+    }
+
+    /**
+     * Counts a word as {@link #word(byte[], int)} does, and returns its slot,
+     * which is only valid until the next word is added to the table.
+     *
+     * @param word
+     *            the word, in UTF-8 with ASCII letters in lower case
+     * @param length
+     *            the length of the word
+     * @return the slot of the word
+     * @requires length > 0
+     */
+    int wordSlot(byte[] word, int length) {
+        int h = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + word[i];
+            ascii &= word[i] >= 0;
+        }
+        if (ascii) {
+            return this.add(h ^ (h >>> 16), word, 0, length, 1, null);
+        }
+        String s = new String(word, 0, length, StandardCharsets.UTF_8)
+                .toLowerCase();
+        byte[] folded = s.getBytes(StandardCharsets.UTF_8);
+        return this.add(hash(folded, 0, folded.length), folded, 0,
+                folded.length, 1, s);
+    }
+
+    /**
+     * Returns the count of the word in the given slot.
+     *
+     * @param slot
+     *            a slot returned by {@link #wordSlot(byte[], int)}
+     * @return the count of its word
+     */
+    int countAt(int slot) {
+        return this.counts[slot];
+    }
+
+    /**
+     * Returns the word in the given slot, decoding it on first use.
+     *
+     * @param slot
+     *            a slot returned by {@link #wordSlot(byte[], int)}
+     * @return its word
+     */
+    String wordAt(int slot) {
+        return this.name(slot);
+    }
+
+    /**
+     * Adds one to the count of the word {@code b[off, off + len)}, given the
+     * hash of its bytes computed as by {@code h = 31 * h + b[i]} from 0, so
+     * that a caller can compute it incrementally.
+     *
+     * @param p
+     *            the hash of the bytes of the word
+     * @param b
+     *            the bytes holding the word, in UTF-8 and lower case
+     * @param off
+     *            the offset of the word
+     * @param len
+     *            the length of the word
+     * @requires len > 0
+     */
+    void increment(int p, byte[] b, int off, int len) {
+        this.add(p ^ (p >>> 16), b, off, len, 1, null);
+    }
+
+    /**
+     * Returns the count of the given word.
+     *
+     * @param word
+     *            the word
+     * @return the count of {@code word}, 0 if it was never counted
+     */
+    int get(String word) {
+        byte[] b = word.getBytes(StandardCharsets.UTF_8);
+        return this.counts[this.find(hash(b, 0, b.length), b, 0, b.length)];
+    }
+
+    /**
+     * Returns the number of distinct words counted.
+     *
+     * @return the number of distinct words
+     */
+    int size() {
+        return this.size - this.zeros;
+    }
+
+    /**
+     * Adds all the counts of {@code other} to this counter.
+     *
+     * @param other
+     *            the counts to add
+     */
+    void addAll(ByteWordCounter other) {
+        for (int i = 0; i < other.lengths.length; i++) {
+            if (other.lengths[i] != 0 && other.counts[i] != 0) {
+                int h = other.handles[i];
+                this.add(other.hashes[i], other.arena.slab(h),
+                        WordArena.offset(h), other.lengths[i], other.counts[i],
+                        other.names[i]);
+            }
+        }
+    }
+
+    /**
+     * Subtracts all the counts of {@code other} from this counter.
+     *
+     * @param other
+     *            the counts to subtract
+     * @requires every word of {@code other} is counted here at least as many
+     *           times as in {@code other}
+     */
+    void subtractAll(ByteWordCounter other) {
+        for (int i = 0; i < other.lengths.length; i++) {
+            if (other.lengths[i] != 0 && other.counts[i] != 0) {
+                int h = other.handles[i];
+                int j = this.find(other.hashes[i], other.arena.slab(h),
+                        WordArena.offset(h), other.lengths[i]);
+                assert this.counts[j] >= other.counts[i]
+                        : "Violation of: counted here at least as many times";
+                this.counts[j] -= other.counts[i];
+                if (this.counts[j] == 0) {
+                    this.zeros++;
+                }
+            }
+        }
+        if (this.zeros > this.size / 4) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Removes all words.
+     */
+    void clear() {
+        Arrays.fill(this.lengths, 0);
+        Arrays.fill(this.counts, 0);
+        Arrays.fill(this.names, null);
+        this.arena.clear();
+        this.size = 0;
+        this.zeros = 0;
+    }
+
+    /**
+     * Rebuilds the table without the words whose count is 0.
+     */
+    private void compact() {
+        WordArena oldArena = this.arena;
+        int[] oldHandles = this.handles;
+        int[] oldLengths = this.lengths;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+        String[] oldNames = this.names;
+        this.arena = new WordArena();
+        this.size = 0;
+        this.zeros = 0;
+        this.allocate(oldLengths.length);
+        for (int j = 0; j < oldLengths.length; j++) {
+            if (oldLengths[j] != 0 && oldCounts[j] != 0) {
+                this.add(oldHashes[j], oldArena.slab(oldHandles[j]),
+                        WordArena.offset(oldHandles[j]), oldLengths[j],
+                        oldCounts[j], oldNames[j]);
+            }
+        }
+    }
+
+    /**
+     * Returns the word in slot {@code i}, decoding it on first use.
+     *
+     * @param i
+     *            the slot
+     * @return the word
+     * @requires lengths[i] != 0
+     */
+    private String name(int i) {
+        if (this.names[i] == null) {
+            this.names[i] = this.arena.decode(this.handles[i],
+                    this.lengths[i]);
+        }
+        return this.names[i];
+    }
+
+    /**
+     * Performs the given action for each word and its count, in no particular
+     * order.
+     *
+     * @param action
+     *            the action to perform
+     */
+    @Override
+    public void forEach(ObjIntConsumer<String> action) {
+        this.forEachAtLeast(1, action);
+    }
+
+    /**
+     * Performs the given action for each word counted at least {@code min}
+     * times, in no particular order. Only these words are decoded.
+     *
+     * @param min
+     *            the smallest count reported
+     * @param action
+     *            the action to perform
+     */
+    @Override
+    public void forEachAtLeast(int min, ObjIntConsumer<String> action) {
+        for (int i = 0; i < this.lengths.length; i++) {
+            if (this.lengths[i] != 0 && this.counts[i] != 0
+                    && this.counts[i] >= min) {
+                action.accept(this.name(i), this.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@code size}-th largest count, computed with a min-heap of
+     * the {@code size} largest counts seen.
+     *
+     * @param size
+     *            the number of words to select
+     * @return the smallest count among the {@code size} words with the most
+     *         counts, 0 if there are fewer words
+     */
+    @Override
+    public int topThreshold(int size) {
+        if (size <= 0 || size > this.size()) {
+            return 0;
+        }
+        int[] heap = new int[size];
+        int n = 0;
+        for (int i = 0; i < this.lengths.length; i++) {
+            if (this.lengths[i] == 0 || this.counts[i] == 0) {
+                continue;
+            }
+            int c = this.counts[i];
+            if (n < size) {
+                int j = n;
+                n++;
+                while (j > 0 && heap[(j - 1) / 2] > c) {
+                    heap[j] = heap[(j - 1) / 2];
+                    j = (j - 1) / 2;
+                }
+                heap[j] = c;
+            } else if (c > heap[0]) {
+                int j = 0;
+                while (2 * j + 1 < size) {
+                    int child = 2 * j + 1;
+                    if (child + 1 < size && heap[child + 1] < heap[child]) {
+                        child++;
+                    }
+                    if (heap[child] >= c) {
+                        break;
+                    }
+                    heap[j] = heap[child];
+                    j = child;
+                }
+                heap[j] = c;
+            }
+        }
+        return heap[0];
+    }
+
+    /**
+     * Tells whether the word in slot {@code i} ranks below the word in slot
+     * {@code j} in a cloud: it has fewer counts, or as many and comes first
+     * alphabetically, as by {@code TagCloudGenerator.MapPairValueLT}.
+     *
+     * @param i
+     *            a slot in use
+     * @param j
+     *            another slot in use
+     * @return true iff the word in slot {@code i} ranks below
+     */
+    private boolean ranksBelow(int i, int j) {
+        if (this.counts[i] != this.counts[j]) {
+            return this.counts[i] < this.counts[j];
+        }
+        return this.arena.compare(this.handles[i], this.lengths[i],
+                this.handles[j], this.lengths[j]) < 0;
+    }
+
+    /**
+     * Moves the slot at {@code heap[k]} down the heap of the first {@code n}
+     * slots, whose root ranks lowest.
+     *
+     * @param heap
+     *            the heap of slots
+     * @param n
+     *            the number of slots in the heap
+     * @param k
+     *            the index of the slot to move down
+     */
+    private void siftDown(int[] heap, int n, int k) {
+        int slot = heap[k];
+        while (2 * k + 1 < n) {
+            int child = 2 * k + 1;
+            if (child + 1 < n
+                    && this.ranksBelow(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!this.ranksBelow(heap[child], slot)) {
+                break;
+            }
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = slot;
+    }
+
+    /**
+     * Selects the {@code size} words with the most counts, in the order of
+     * {@code TagCloudGenerator.MapPairValueLT}. Words are selected and
+     * sorted by their slots, comparing their bytes for ties, so only the
+     * words selected are decoded.
+     *
+     * @param size
+     *            the number of words to select
+     * @return the selected words with their counts, more counts first
+     */
+    List<Map.Entry<String, Integer>> top(int size) {
+        List<Map.Entry<String, Integer>> s = new ArrayList<>();
+        if (size <= 0) {
+            return s;
+        }
+        int min = Math.max(1, this.topThreshold(size));
+        int[] heap = new int[Math.min(size, this.size())];
+        int n = 0;
+        for (int i = 0; i < this.lengths.length; i++) {
+            if (this.lengths[i] == 0 || this.counts[i] < min) {
+                continue;
+            }
+            if (n < heap.length) {
+                int k = n;
+                n++;
+                while (k > 0 && this.ranksBelow(i, heap[(k - 1) / 2])) {
+                    heap[k] = heap[(k - 1) / 2];
+                    k = (k - 1) / 2;
+                }
+                heap[k] = i;
+            } else if (this.ranksBelow(heap[0], i)) {
+                heap[0] = i;
+                this.siftDown(heap, n, 0);
+            }
+        }
+        for (int m = n - 1; m > 0; m--) {
+            int lowest = heap[0];
+            heap[0] = heap[m];
+            heap[m] = lowest;
+            this.siftDown(heap, m, 0);
+        }
+        for (int k = 0; k < n; k++) {
+            s.add(new SimpleImmutableEntry<>(this.name(heap[k]),
+                    this.counts[heap[k]]));
+        }
+        return s;
+    }
+
+    /**
+     * Doubles the number of slots, timing it as a rehash in
+     * {@code TagCloudMetrics}.
+     */
+    private void grow() {
+        TagCloudMetrics.Span span = TagCloudMetrics
+                .begin(TagCloudMetrics.Stage.REHASH);
+        int[] oldHandles = this.handles;
+        int[] oldLengths = this.lengths;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+        String[] oldNames = this.names;
+        this.allocate(2 * oldLengths.length);
+        int mask = this.lengths.length - 1;
+        for (int j = 0; j < oldLengths.length; j++) {
+            if (oldLengths[j] != 0) {
+                int i = oldHashes[j] & mask;
+                while (this.lengths[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                this.handles[i] = oldHandles[j];
+                this.lengths[i] = oldLengths[j];
+                this.hashes[i] = oldHashes[j];
+                this.counts[i] = oldCounts[j];
+                this.names[i] = oldNames[j];
+            }
+        }
+        span.end(this.size, 0);
+    }
+
+}
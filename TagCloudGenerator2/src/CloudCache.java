@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A cache of rendered tag clouds, keyed by the hash of the content of the
+ * input, the number of words and the title of the cloud, so that the same
+ * document asked for again is served without being counted again.
+ *
+ * <p>
+ * The cache is bounded by the number of bytes of HTML it holds: when a new
+ * cloud does not fit, the least recently used clouds are evicted until it
+ * does. A cloud larger than the whole cache is not kept. Hits, misses and
+ * evictions are counted here and in {@code TagCloudMetrics}.
+ *
+ * <p>
+ * {@link #get(String, Renderer)} renders a missing cloud once however many
+ * requests miss it at the same time: the first renders it, and the others
+ * wait for its result.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class CloudCache {
+
+    /**
+     * Renders a cloud missing from the cache.
+     */
+    interface Renderer {
+
+        /**
+         * Renders the cloud.
+         *
+         * @return the HTML of the cloud
+         * @throws IOException
+         *             read or write problem
+         */
+        byte[] render() throws IOException;
+
+    }
+
+    /**
+     * The clouds, least recently used first.
+     */
+    private final LinkedHashMap<String, byte[]> clouds = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    /**
+     * The clouds being rendered, by key.
+     */
+    private final Map<String, CompletableFuture<byte[]>> rendering =
+            new HashMap<>();
+
+    /**
+     * Largest number of bytes of HTML held.
+     */
+    private final long capacity;
+
+    /**
+     * Number of bytes of HTML held.
+     */
+    private long bytes = 0;
+
+    /**
+     * Number of lookups that found a cloud.
+     */
+    private long hits = 0;
+
+    /**
+     * Number of lookups that found no cloud.
+     */
+    private long misses = 0;
+
+    /**
+     * Number of clouds evicted.
+     */
+    private long evictions = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the largest number of bytes of HTML held
+     * @requires capacity >= 0
+     */
+    CloudCache(long capacity) {
+        assert capacity >= 0 : "Violation of: capacity >= 0";
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the key of a cloud.
+     *
+     * @param digest
+     *            the hash of the content of the input
+     * @param size
+     *            the number of words of the cloud
+     * @param title
+     *            the title of the cloud
+     * @return the key
+     */
+    static String key(byte[] digest, int size, String title) {
+        return Base64.getEncoder().encodeToString(digest) + " " + size + " "
+                + title;
+    }
+
+    /**
+     * Returns the cloud of a key, and makes it the most recently used.
+     *
+     * @param key
+     *            the key
+     * @return the HTML of the cloud, {@code null} if not cached
+     */
+    synchronized byte[] get(String key) {
+        byte[] html = this.clouds.get(key);
+        if (html == null) {
+            this.misses++;
+        } else {
+            this.hits++;
+        }
+        TagCloudMetrics.cached(html != null);
+        return html;
+    }
+
+    /**
+     * Returns the cloud of a key, rendering it if not cached. If the cloud is
+     * already being rendered for another caller, waits for that rendering
+     * instead of starting another.
+     *
+     * @param key
+     *            the key
+     * @param renderer
+     *            renders the cloud if it is missing
+     * @return the HTML of the cloud
+     * @throws IOException
+     *             if rendering fails, here or for the caller waited for, or
+     *             if interrupted while waiting
+     */
+    byte[] get(String key, Renderer renderer) throws IOException {
+        CompletableFuture<byte[]> future;
+        boolean mine = false;
+        synchronized (this) {
+            byte[] html = this.get(key);
+            if (html != null) {
+                return html;
+            }
+            future = this.rendering.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                this.rendering.put(key, future);
+                mine = true;
+            }
+        }
+        if (mine) {
+            try {
+                byte[] html = renderer.render();
+                this.put(key, html);
+                future.complete(html);
+                return html;
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    this.rendering.remove(key);
+                }
+                future.completeExceptionally(
+                        new IOException("Rendering the cloud failed."));
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a cloud.",
+                    e);
+        }
+    }
+
+    /**
+     * Caches the cloud of a key, evicting the least recently used clouds as
+     * needed to stay within the capacity.
+     *
+     * @param key
+     *            the key
+     * @param html
+     *            the HTML of the cloud; not to be modified afterwards
+     */
+    synchronized void put(String key, byte[] html) {
+        if (html.length > this.capacity) {
+            return;
+        }
+        byte[] old = this.clouds.put(key, html);
+        if (old != null) {
+            this.bytes -= old.length;
+        }
+        this.bytes += html.length;
+        Iterator<Map.Entry<String, byte[]>> it = this.clouds.entrySet()
+                .iterator();
+        int evicted = 0;
+        while (this.bytes > this.capacity) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            this.bytes -= eldest.getValue().length;
+            it.remove();
+            evicted++;
+        }
+        this.evictions += evicted;
+        TagCloudMetrics.evicted(evicted);
+    }
+
+    /**
+     * Returns the number of clouds held.
+     *
+     * @return the number of clouds
+     */
+    synchronized int size() {
+        return this.clouds.size();
+    }
+
+    /**
+     * Returns the number of bytes of HTML held.
+     *
+     * @return the bytes held
+     */
+    synchronized long bytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the number of lookups that found a cloud.
+     *
+     * @return the hits
+     */
+    synchronized long hits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of lookups that found no cloud.
+     *
+     * @return the misses
+     */
+    synchronized long misses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the number of clouds evicted.
+     *
+     * @return the evictions
+     */
+    synchronized long evictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns a one line summary of the use of the cache.
+     *
+     * @return the summary
+     */
+    synchronized String statistics() {
+        return "Cloud cache: " + this.clouds.size() + " clouds, "
+                + this.bytes + " bytes, " + this.hits + " hits, "
+                + this.misses + " misses, " + this.evictions
+                + " evictions.";
+    }
+
+}
@@ -0,0 +1,614 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An inverted index of a corpus of documents: for each term, the number of
+ * documents it occurs in (its document frequency) and its count in each of
+ * them. Used to weigh the words of each document by TF-IDF, the count of the
+ * word in the document times the logarithm of the number of documents over
+ * its document frequency, so that words common to the whole corpus do not
+ * crowd the cloud of every document.
+ *
+ * <p>
+ * The index is stored in a file that is memory mapped rather than read:
+ * <ul>
+ * <li>a header: magic number, version, number of documents and of terms,
+ * and the offsets of the sections below;</li>
+ * <li>the term table, sorted by term: for each term the offset and length of
+ * its UTF-8 bytes, its document frequency, and the offset of its
+ * postings;</li>
+ * <li>the UTF-8 bytes of the terms;</li>
+ * <li>the postings: for each term, in order, a (document, count) pair of
+ * {@code int}s per document it occurs in, by increasing document;</li>
+ * <li>the names of the documents, in order.</li>
+ * </ul>
+ * Documents added with {@link #add(String, WordCounts)} are held in memory
+ * until {@link #save(Path)} merges them with the mapped index into a new
+ * file, so adding documents never reads the documents already indexed.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class CorpusIndex {
+
+    /**
+     * First bytes of an index file ("TCGI").
+     */
+    private static final int MAGIC = 0x54434749;
+
+    /**
+     * Version of the index file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header.
+     */
+    private static final int HEADER_BYTES = 4 * 4 + 4 * 8;
+
+    /**
+     * Size of an entry of the term table.
+     */
+    private static final int TERM_BYTES = 3 * 4 + 8;
+
+    /**
+     * Size of a posting.
+     */
+    private static final int POSTING_BYTES = 2 * 4;
+
+    /**
+     * Factor by which TF-IDF weights are scaled to integers; weights are
+     * shown in hundredths.
+     */
+    static final int WEIGHT_SCALE = 100;
+
+    /**
+     * A word of a document with its TF-IDF weight. Its value, used for
+     * ordering and font sizes, is the weight times {@code WEIGHT_SCALE},
+     * rounded.
+     */
+    static final class Weight extends SimpleImmutableEntry<String, Integer> {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The count of the word in the document.
+         */
+        private final int count;
+
+        /**
+         * Constructor.
+         *
+         * @param word
+         *            the word
+         * @param scaled
+         *            the weight of the word times {@code WEIGHT_SCALE}
+         * @param count
+         *            the count of the word in the document
+         */
+        Weight(String word, int scaled, int count) {
+            super(word, scaled);
+            this.count = count;
+        }
+
+        /**
+         * Returns the count of the word in the document.
+         *
+         * @return the count
+         */
+        int count() {
+            return this.count;
+        }
+
+    }
+
+    /**
+     * Postings of a term in the documents added since the index was opened.
+     */
+    private static final class Postings {
+
+        /**
+         * The documents, in increasing order.
+         */
+        private int[] documents = new int[2];
+
+        /**
+         * The count of the term in each document.
+         */
+        private int[] counts = new int[2];
+
+        /**
+         * Number of documents.
+         */
+        private int size = 0;
+
+        /**
+         * Appends a posting.
+         *
+         * @param document
+         *            the document, larger than all documents so far
+         * @param count
+         *            the count of the term in it
+         */
+        void add(int document, int count) {
+            if (this.size == this.documents.length) {
+                this.documents = Arrays.copyOf(this.documents, 2 * this.size);
+                this.counts = Arrays.copyOf(this.counts, 2 * this.size);
+            }
+            this.documents[this.size] = document;
+            this.counts[this.size] = count;
+            this.size++;
+        }
+
+    }
+
+    /**
+     * The mapped index file, {@code null} if there is none.
+     */
+    private final ByteBuffer mapped;
+
+    /**
+     * Number of terms in the mapped index.
+     */
+    private final int mappedTerms;
+
+    /**
+     * Offset of the term table of the mapped index.
+     */
+    private final long termTable;
+
+    /**
+     * Offset of the bytes of the terms of the mapped index.
+     */
+    private final long strings;
+
+    /**
+     * The names of the documents, mapped and added.
+     */
+    private final List<String> documents = new ArrayList<>();
+
+    /**
+     * The names of the documents, for lookups.
+     */
+    private final Set<String> documentSet = new HashSet<>();
+
+    /**
+     * Number of documents in the mapped index.
+     */
+    private final int mappedDocuments;
+
+    /**
+     * Postings of the documents added since the index was opened.
+     */
+    private final Map<String, Postings> added = new HashMap<>();
+
+    /**
+     * Constructor of an empty index.
+     */
+    CorpusIndex() {
+        this.mapped = null;
+        this.mappedTerms = 0;
+        this.mappedDocuments = 0;
+        this.termTable = 0;
+        this.strings = 0;
+    }
+
+    /**
+     * Constructor from a mapped index file.
+     *
+     * @param mapped
+     *            the contents of the file
+     * @param file
+     *            the file, for error messages
+     * @throws IOException
+     *             if the file is not an index
+     */
+    private CorpusIndex(ByteBuffer mapped, Path file) throws IOException {
+        if (mapped.limit() < HEADER_BYTES || mapped.getInt(0) != MAGIC
+                || mapped.getInt(4) != VERSION) {
+            throw new IOException("Not an index file: " + file);
+        }
+        this.mapped = mapped;
+        this.mappedDocuments = mapped.getInt(8);
+        this.mappedTerms = mapped.getInt(12);
+        this.termTable = mapped.getLong(16);
+        this.strings = mapped.getLong(24);
+        int position = (int) mapped.getLong(40);
+        for (int i = 0; i < this.mappedDocuments; i++) {
+            String name = this.decode(position + 4, mapped.getInt(position));
+            position += 4 + mapped.getInt(position);
+            this.documents.add(name);
+            this.documentSet.add(name);
+        }
+    }
+
+    /**
+     * Maps the index in the given file, or returns an empty index if the
+     * file does not exist.
+     *
+     * @param file
+     *            the index file
+     * @return the index
+     * @throws IOException
+     *             if the file cannot be mapped or is not an index
+     */
+    static CorpusIndex open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new CorpusIndex();
+        }
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index too large to map: " + file);
+            }
+            return new CorpusIndex(
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), file);
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes of the mapped index.
+     *
+     * @param position
+     *            the offset of the bytes
+     * @param length
+     *            the number of bytes
+     * @return the decoded text
+     */
+    private String decode(int position, int length) {
+        byte[] b = new byte[length];
+        ByteBuffer view = this.mapped.duplicate();
+        view.position(position);
+        view.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the offset of entry {@code i} of the mapped term table.
+     *
+     * @param i
+     *            the index of the term
+     * @return the offset of its entry
+     */
+    private int entry(int i) {
+        return (int) (this.termTable + (long) i * TERM_BYTES);
+    }
+
+    /**
+     * Returns term {@code i} of the mapped term table.
+     *
+     * @param i
+     *            the index of the term
+     * @return the term
+     */
+    private String term(int i) {
+        int e = this.entry(i);
+        return this.decode((int) this.strings + this.mapped.getInt(e),
+                this.mapped.getInt(e + 4));
+    }
+
+    /**
+     * Returns the number of documents.
+     *
+     * @return the number of documents
+     */
+    int documents() {
+        return this.documents.size();
+    }
+
+    /**
+     * Returns the name of a document.
+     *
+     * @param document
+     *            the document
+     * @return its name
+     */
+    String document(int document) {
+        return this.documents.get(document);
+    }
+
+    /**
+     * Tells whether a document of the given name is in the index.
+     *
+     * @param name
+     *            the name
+     * @return true iff the document is in the index
+     */
+    synchronized boolean contains(String name) {
+        return this.documentSet.contains(name);
+    }
+
+    /**
+     * Returns the number of documents containing the given term.
+     *
+     * @param term
+     *            the term
+     * @return its document frequency
+     */
+    synchronized int documentFrequency(String term) {
+        int df = 0;
+        int low = 0;
+        int high = this.mappedTerms - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = this.term(middle).compareTo(term);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                df = this.mapped.getInt(this.entry(middle) + 8);
+                low = high + 1;
+            }
+        }
+        Postings p = this.added.get(term);
+        if (p != null) {
+            df += p.size;
+        }
+        return df;
+    }
+
+    /**
+     * Adds a document to the index.
+     *
+     * @param name
+     *            the name of the document
+     * @param counts
+     *            the counts of its words
+     * @requires !contains(name)
+     */
+    synchronized void add(String name, WordCounts counts) {
+        int document = this.documents.size();
+        this.documents.add(name);
+        this.documentSet.add(name);
+        counts.forEach((word, count) -> this.added
+                .computeIfAbsent(word, w -> new Postings())
+                .add(document, count));
+    }
+
+    /**
+     * Writes the index, mapped and added documents together, to the given
+     * file, replacing it atomically. The index stays valid but keeps mapping
+     * the previous file; open the new file to map it.
+     *
+     * @param file
+     *            the index file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    synchronized void save(Path file) throws IOException {
+        List<String> newTerms = new ArrayList<>(this.added.keySet());
+        Collections.sort(newTerms);
+        // merged term order: mapped term i as i, added term j as ~j
+        int[] order = new int[this.mappedTerms + newTerms.size()];
+        byte[][] bytes = new byte[order.length][];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.mappedTerms || j < newTerms.size()) {
+            int c;
+            if (i == this.mappedTerms) {
+                c = 1;
+            } else if (j == newTerms.size()) {
+                c = -1;
+            } else {
+                c = this.term(i).compareTo(newTerms.get(j));
+            }
+            if (c <= 0) {
+                order[n] = i;
+                int e = this.entry(i);
+                bytes[n] = new byte[this.mapped.getInt(e + 4)];
+                ByteBuffer view = this.mapped.duplicate();
+                view.position((int) this.strings + this.mapped.getInt(e));
+                view.get(bytes[n]);
+                i++;
+                if (c == 0) {
+                    // the same term in both: one entry, postings merged
+                    j++;
+                }
+            } else {
+                order[n] = ~j;
+                bytes[n] = newTerms.get(j).getBytes(StandardCharsets.UTF_8);
+                j++;
+            }
+            n++;
+        }
+        Postings[] extra = new Postings[n];
+        int[] dfs = new int[n];
+        long stringBytes = 0;
+        long postingBytes = 0;
+        for (int k = 0; k < n; k++) {
+            if (order[k] >= 0) {
+                dfs[k] = this.mapped.getInt(this.entry(order[k]) + 8);
+                if (!this.added.isEmpty()) {
+                    extra[k] = this.added.get(this.term(order[k]));
+                }
+            } else {
+                extra[k] = this.added.get(newTerms.get(~order[k]));
+            }
+            if (extra[k] != null) {
+                dfs[k] += extra[k].size;
+            }
+            stringBytes += bytes[k].length;
+            postingBytes += (long) dfs[k] * POSTING_BYTES;
+        }
+        long termTableAt = HEADER_BYTES;
+        long stringsAt = termTableAt + (long) n * TERM_BYTES;
+        long postingsAt = stringsAt + stringBytes;
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, "tagcloud", ".index");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(this.documents.size());
+                out.writeInt(n);
+                out.writeLong(termTableAt);
+                out.writeLong(stringsAt);
+                out.writeLong(postingsAt);
+                out.writeLong(postingsAt + postingBytes);
+                long stringOffset = 0;
+                long postingOffset = postingsAt;
+                for (int k = 0; k < n; k++) {
+                    out.writeInt((int) stringOffset);
+                    out.writeInt(bytes[k].length);
+                    out.writeInt(dfs[k]);
+                    out.writeLong(postingOffset);
+                    stringOffset += bytes[k].length;
+                    postingOffset += (long) dfs[k] * POSTING_BYTES;
+                }
+                for (int k = 0; k < n; k++) {
+                    out.write(bytes[k]);
+                }
+                for (int k = 0; k < n; k++) {
+                    this.writePostings(out, order[k], extra[k]);
+                }
+                for (String name : this.documents) {
+                    byte[] b = name.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the postings of a term: those of the mapped index, then those
+     * of the added documents.
+     *
+     * @param out
+     *            the output
+     * @param mappedTerm
+     *            the index of the term in the mapped index, negative if it
+     *            is not there
+     * @param p
+     *            the postings of the term in the added documents,
+     *            {@code null} if none
+     * @throws IOException
+     *             write problem
+     */
+    private void writePostings(DataOutputStream out, int mappedTerm,
+            Postings p) throws IOException {
+        if (mappedTerm >= 0) {
+            int e = this.entry(mappedTerm);
+            int df = this.mapped.getInt(e + 8);
+            int at = (int) this.mapped.getLong(e + 12);
+            for (int d = 0; d < df; d++) {
+                out.writeInt(this.mapped.getInt(at));
+                out.writeInt(this.mapped.getInt(at + 4));
+                at += POSTING_BYTES;
+            }
+        }
+        if (p != null) {
+            for (int d = 0; d < p.size; d++) {
+                out.writeInt(p.documents[d]);
+                out.writeInt(p.counts[d]);
+            }
+        }
+    }
+
+    /**
+     * Selects, for every document of the mapped index, the {@code size}
+     * words with the largest TF-IDF weights, in one pass over the postings.
+     * Words that occur in every document weigh nothing and are never
+     * selected. A term is only decoded if it is selected for some document.
+     *
+     * @param size
+     *            the number of words to select per document
+     * @return for each document, its selected words sorted by weight, with
+     *         larger weights in the front
+     */
+    List<List<Map.Entry<String, Integer>>> topWeighted(int size) {
+        Comparator<Map.Entry<String, Integer>> cs =
+                new TagCloudGenerator.MapPairValueLT();
+        List<Queue<Map.Entry<String, Integer>>> heaps = new ArrayList<>();
+        for (int d = 0; d < this.mappedDocuments; d++) {
+            heaps.add(new PriorityQueue<>(cs.reversed()));
+        }
+        for (int t = 0; t < this.mappedTerms && size > 0; t++) {
+            int e = this.entry(t);
+            int df = this.mapped.getInt(e + 8);
+            double idf = Math.log((double) this.mappedDocuments / df);
+            int at = (int) this.mapped.getLong(e + 12);
+            String term = null;
+            for (int k = 0; k < df; k++, at += POSTING_BYTES) {
+                int count = this.mapped.getInt(at + 4);
+                int scaled = (int) Math.round(count * idf * WEIGHT_SCALE);
+                Queue<Map.Entry<String, Integer>> heap = heaps
+                        .get(this.mapped.getInt(at));
+                if (scaled > 0 && (heap.size() < size
+                        || scaled >= heap.peek().getValue())) {
+                    if (term == null) {
+                        term = this.term(t);
+                    }
+                    Weight w = new Weight(term, scaled, count);
+                    if (heap.size() < size) {
+                        heap.add(w);
+                    } else if (cs.compare(w, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(w);
+                    }
+                }
+            }
+        }
+        List<List<Map.Entry<String, Integer>>> top = new ArrayList<>();
+        for (Queue<Map.Entry<String, Integer>> heap : heaps) {
+            List<Map.Entry<String, Integer>> s = new ArrayList<>(heap);
+            s.sort(cs);
+            top.add(s);
+        }
+        return top;
+    }
+
+    /**
+     * Returns the count of every term over all documents of the mapped
+     * index.
+     *
+     * @return the counts
+     */
+    WordCounter totals() {
+        WordCounter m = new WordCounter();
+        for (int t = 0; t < this.mappedTerms; t++) {
+            int e = this.entry(t);
+            int df = this.mapped.getInt(e + 8);
+            int at = (int) this.mapped.getLong(e + 12);
+            int total = 0;
+            for (int k = 0; k < df; k++, at += POSTING_BYTES) {
+                total += this.mapped.getInt(at + 4);
+            }
+            String term = this.term(t);
+            m.add(term, 0, term.length(), total);
+        }
+        return m;
+    }
+
+}
@@ -0,0 +1,104 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reading and writing of the words in the binary files that store word
+ * counts. A word is stored as its length in bytes followed by its UTF-8
+ * bytes, so words of any length can be stored.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class CountFiles {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CountFiles() {
+    }
+
+    /**
+     * Writes a word.
+     *
+     * @param out
+     *            where to write
+     * @param word
+     *            the word
+     * @throws IOException
+     *             write problem
+     */
+    static void writeWord(DataOutput out, String word) throws IOException {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a word written by {@link #writeWord(DataOutput, String)}.
+     *
+     * @param in
+     *            where to read
+     * @return the word
+     * @throws IOException
+     *             read problem, or a malformed word length
+     */
+    static String readWord(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Malformed word length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a non-negative number in as few bytes as it needs: seven bits
+     * per byte, lowest first, with the high bit set on all bytes but the
+     * last.
+     *
+     * @param out
+     *            where to write
+     * @param n
+     *            the number
+     * @throws IOException
+     *             write problem
+     * @requires n >= 0
+     */
+    static void writeVarInt(DataOutput out, int n) throws IOException {
+        int m = n;
+        while (m >= 0x80) {
+            out.writeByte(0x80 | (m & 0x7F));
+            m >>>= 7;
+        }
+        out.writeByte(m);
+    }
+
+    /**
+     * Reads a number written by {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param in
+     *            where to read
+     * @return the number
+     * @throws IOException
+     *             read problem, or a malformed number
+     */
+    static int readVarInt(DataInput in) throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            n |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                if (n < 0) {
+                    throw new IOException("Malformed number.");
+                }
+                return n;
+            }
+        }
+        throw new IOException("Malformed number.");
+    }
+
+}
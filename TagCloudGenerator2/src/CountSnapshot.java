@@ -0,0 +1,413 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Word counts of a set of append-only input files, together with how far each
+ * file has been counted, so that a later run only needs to count the bytes
+ * appended since.
+ *
+ * <p>
+ * For each file the snapshot records its own counts, the offset just past
+ * the last separator counted, and a checksum of the counted bytes near the
+ * start of the file and just before that offset. A file whose checksum no
+ * longer matches was rewritten rather than appended to, and only its own
+ * counts are discarded; the other files of the snapshot are unaffected.
+ *
+ * <p>
+ * The unterminated word at the end of a file, if any, is not part of the
+ * snapshot, since more of it may still be appended; it is counted separately
+ * by {@link #countTail(FileChannel, String, WordScanner.Tally)}.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class CountSnapshot {
+
+    /**
+     * First bytes of a snapshot file ("TCGS").
+     */
+    private static final int MAGIC = 0x54434753;
+
+    /**
+     * Version of the snapshot file format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Version of the snapshot file format holding the counts of all files
+     * together; still read when it holds a single file.
+     */
+    private static final int COMBINED_VERSION = 1;
+
+    /**
+     * Number of bytes checksummed at each end of the counted part of a file.
+     */
+    private static final int CHECKED_BYTES = 1 << 16;
+
+    /**
+     * Number of bytes examined at a time while looking for a separator.
+     */
+    private static final int PROBE = 4096;
+
+    /**
+     * The counted part of one file.
+     */
+    private static final class Counted {
+
+        /**
+         * The counts of the counted part.
+         */
+        private final WordCounter counts = new WordCounter();
+
+        /**
+         * The offset up to which the file was counted.
+         */
+        private long offset = 0;
+
+        /**
+         * The checksum of the counted part.
+         */
+        private long checksum = 0;
+
+    }
+
+    /**
+     * The counted part of each file.
+     */
+    private final Map<String, Counted> files = new LinkedHashMap<>();
+
+    /**
+     * Loads the snapshot in the given file, or returns an empty snapshot if
+     * the file does not exist.
+     *
+     * @param file
+     *            the snapshot file
+     * @return the snapshot
+     * @throws IOException
+     *             if the file cannot be read or is not a snapshot
+     */
+    static CountSnapshot load(Path file) throws IOException {
+        CountSnapshot s = new CountSnapshot();
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+                int version = in.readInt();
+                if (version == COMBINED_VERSION) {
+                    s.loadCombined(in, file);
+                } else if (version == VERSION) {
+                    int files = in.readInt();
+                    for (int i = 0; i < files; i++) {
+                        Counted c = s.counted(CountFiles.readWord(in));
+                        c.offset = in.readLong();
+                        c.checksum = in.readLong();
+                        readCounts(in, c.counts);
+                    }
+                } else {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Reads counts written by {@link #writeCounts(DataOutputStream,
+     * WordCounter)}.
+     *
+     * @param in
+     *            the input stream
+     * @param counts
+     *            where the counts are added
+     * @throws IOException
+     *             read problem
+     */
+    private static void readCounts(DataInputStream in, WordCounter counts)
+            throws IOException {
+        int words = in.readInt();
+        for (int i = 0; i < words; i++) {
+            String word = CountFiles.readWord(in);
+            counts.add(word, 0, word.length(), in.readInt());
+        }
+    }
+
+    /**
+     * Writes the number of words of the given counts, then each word and
+     * its count.
+     *
+     * @param out
+     *            the output stream
+     * @param counts
+     *            the counts
+     * @throws IOException
+     *             write problem
+     */
+    private static void writeCounts(DataOutputStream out, WordCounter counts)
+            throws IOException {
+        out.writeInt(counts.size());
+        IOException[] failure = new IOException[1];
+        counts.forEach((word, count) -> {
+            try {
+                CountFiles.writeWord(out, word);
+                out.writeInt(count);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Reads the rest of a snapshot file of the combined format, whose counts
+     * can only be attributed to a file if it holds a single one.
+     *
+     * @param in
+     *            the snapshot file, after its version
+     * @param file
+     *            the name of the snapshot file
+     * @throws IOException
+     *             if the file cannot be read or holds several files
+     */
+    private void loadCombined(DataInputStream in, Path file)
+            throws IOException {
+        int files = in.readInt();
+        if (files > 1) {
+            throw new IOException("Snapshot of several files in the old"
+                    + " combined format, delete it: " + file);
+        }
+        Counted c = new Counted();
+        if (files == 1) {
+            c = this.counted(CountFiles.readWord(in));
+            c.offset = in.readLong();
+            c.checksum = in.readLong();
+        }
+        readCounts(in, c.counts);
+    }
+
+    /**
+     * Returns the counted part of the given file, adding an empty one if the
+     * file is not in the snapshot.
+     *
+     * @param name
+     *            the name of the file
+     * @return the counted part
+     */
+    private Counted counted(String name) {
+        return this.files.computeIfAbsent(name, n -> new Counted());
+    }
+
+    /**
+     * Saves this snapshot to the given file, replacing it atomically.
+     *
+     * @param file
+     *            the snapshot file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    void save(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, "tagcloud", ".snapshot");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(this.files.size());
+                for (Map.Entry<String, Counted> p : this.files.entrySet()) {
+                    CountFiles.writeWord(out, p.getKey());
+                    out.writeLong(p.getValue().offset);
+                    out.writeLong(p.getValue().checksum);
+                    writeCounts(out, p.getValue().counts);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Returns the counts of the counted part of the given file.
+     *
+     * @param name
+     *            the name of the file
+     * @return the counts, empty if the file is not in the snapshot
+     */
+    WordCounter counts(String name) {
+        return this.counted(name).counts;
+    }
+
+    /**
+     * Returns the offset up to which the given file was counted.
+     *
+     * @param name
+     *            the name of the file
+     * @return the offset, 0 if the file is not in the snapshot
+     */
+    long offset(String name) {
+        Counted c = this.files.get(name);
+        if (c == null) {
+            return 0;
+        }
+        return c.offset;
+    }
+
+    /**
+     * Computes the checksum of {@code channel[0, offset)}: the CRC-32 of its
+     * first and last {@code CHECKED_BYTES} bytes.
+     *
+     * @param channel
+     *            the file
+     * @param offset
+     *            the end of the part to checksum
+     * @return the checksum
+     * @throws IOException
+     *             file read problem
+     */
+    private static long checksum(FileChannel channel, long offset)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocate(CHECKED_BYTES);
+        long[] starts = { 0, Math.max(0, offset - CHECKED_BYTES) };
+        for (long start : starts) {
+            buf.clear();
+            buf.limit((int) Math.min(CHECKED_BYTES, offset - start));
+            long position = start;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, position);
+                if (n < 0) {
+                    throw new IOException("File shrank while reading.");
+                }
+                position += n;
+            }
+            buf.flip();
+            crc.update(buf);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Tells whether the given file is still an extension of what was
+     * counted, that is, it is at least as long and its counted part has the
+     * recorded checksum.
+     *
+     * @param channel
+     *            the file
+     * @param name
+     *            the name of the file
+     * @return true iff counting may resume at {@link #offset(String)}
+     * @throws IOException
+     *             file read problem
+     */
+    boolean isResumable(FileChannel channel, String name) throws IOException {
+        long offset = this.offset(name);
+        return offset == 0 || (channel.size() >= offset
+                && checksum(channel, offset) == this.files.get(name).checksum);
+    }
+
+    /**
+     * Returns the offset just past the last separator in
+     * {@code channel[from, size)}, or {@code from} if there is none.
+     *
+     * @param channel
+     *            the file
+     * @param from
+     *            where the search stops
+     * @return the offset
+     * @throws IOException
+     *             file read problem
+     */
+    private static long lastBoundary(FileChannel channel, long from)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(PROBE);
+        long end = channel.size();
+        while (end > from) {
+            long start = Math.max(from, end - PROBE);
+            buf.clear();
+            buf.limit((int) (end - start));
+            while (buf.hasRemaining()
+                    && channel.read(buf, start + buf.position()) >= 0) {
+                continue;
+            }
+            for (int i = buf.position() - 1; i >= 0; i--) {
+                if (WordScanner.isSeparator(buf.get(i))) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    /**
+     * Discards the counts and offset of the given file, so that it will be
+     * counted from the start.
+     *
+     * @param name
+     *            the name of the file
+     */
+    void reset(String name) {
+        this.files.remove(name);
+    }
+
+    /**
+     * Counts the bytes of the given file appended since the snapshot, up to
+     * its last separator, and records the new offset.
+     *
+     * @param channel
+     *            the file
+     * @param name
+     *            the name of the file
+     * @return the number of bytes counted
+     * @throws IOException
+     *             file read problem
+     * @requires isResumable(channel, name)
+     */
+    long update(FileChannel channel, String name) throws IOException {
+        Counted c = this.counted(name);
+        long start = c.offset;
+        long end = lastBoundary(channel, start);
+        WordScanner.scan(channel, start, end,
+                WordScanner.counting(c.counts::increment));
+        c.offset = end;
+        c.checksum = checksum(channel, end);
+        return end - start;
+    }
+
+    /**
+     * Counts the unterminated word at the end of the given file, which is
+     * not part of the snapshot, into {@code m}.
+     *
+     * @param channel
+     *            the file
+     * @param name
+     *            the name of the file
+     * @param m
+     *            where the word is counted
+     * @throws IOException
+     *             file read problem
+     */
+    void countTail(FileChannel channel, String name, WordScanner.Tally m)
+            throws IOException {
+        WordScanner.scan(channel, this.offset(name), channel.size(),
+                WordScanner.counting(m));
+    }
+
+}
@@ -0,0 +1,249 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A gzip compressed input file, scanned without decompressing it to disk.
+ *
+ * <p>
+ * Inflation runs on its own (virtual, where available) thread, which fills a
+ * ring of reusable buffers: empty buffers wait in one queue and filled ones
+ * in another, so the inflater can fill the next buffers while the words of
+ * the previous ones are being counted, and no buffer is allocated once the
+ * ring exists.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class GzipInput implements Closeable {
+
+    /**
+     * First two bytes of a gzip file.
+     */
+    private static final int[] MAGIC = { 0x1F, 0x8B };
+
+    /**
+     * Number of buffers in the ring.
+     */
+    private static final int RING_SIZE = 4;
+
+    /**
+     * Size of each buffer of the ring.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Size of the buffer of compressed bytes.
+     */
+    private static final int COMPRESSED_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * A buffer of the ring.
+     */
+    private static final class Chunk {
+
+        /**
+         * Marks the end of the inflated bytes.
+         */
+        static final Chunk END = new Chunk(0);
+
+        /**
+         * The inflated bytes.
+         */
+        final byte[] bytes;
+
+        /**
+         * Number of bytes in use.
+         */
+        int length;
+
+        /**
+         * Constructor.
+         *
+         * @param size
+         *            the size of the buffer
+         */
+        Chunk(int size) {
+            this.bytes = new byte[size];
+        }
+
+    }
+
+    /**
+     * The compressed file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Buffers ready to be filled.
+     */
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(
+            RING_SIZE);
+
+    /**
+     * Filled buffers, in input order, followed by {@code Chunk.END}.
+     */
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(
+            RING_SIZE + 1);
+
+    /**
+     * Why inflation stopped early, if it did.
+     */
+    private volatile IOException failure = null;
+
+    /**
+     * Number of bytes inflated.
+     */
+    private long inflated = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            the compressed file, read from its start
+     */
+    GzipInput(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Tells whether the given file starts like a gzip file.
+     *
+     * @param channel
+     *            the file
+     * @return true iff the file starts with the gzip magic bytes
+     * @throws IOException
+     *             file read problem
+     */
+    static boolean isGzip(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+        while (head.hasRemaining()
+                && channel.read(head, head.position()) > 0) {
+            continue;
+        }
+        boolean gzip = !head.hasRemaining();
+        for (int i = 0; i < MAGIC.length && gzip; i++) {
+            gzip = (head.get(i) & 0xFF) == MAGIC[i];
+        }
+        return gzip;
+    }
+
+    /**
+     * The inflater: fills free buffers with inflated bytes and queues them,
+     * until the end of the input or a failure. Concatenated gzip members are
+     * read one after another.
+     */
+    private void inflate() {
+        try (InputStream in = new GZIPInputStream(
+                Channels.newInputStream(this.channel.position(0)),
+                COMPRESSED_BUFFER_SIZE)) {
+            int n = 0;
+            while (n >= 0) {
+                Chunk c = this.free.take();
+                c.length = 0;
+                n = in.read(c.bytes, 0, c.bytes.length);
+                while (n > 0 && c.length + n < c.bytes.length) {
+                    c.length += n;
+                    n = in.read(c.bytes, c.length,
+                            c.bytes.length - c.length);
+                }
+                if (n > 0) {
+                    c.length += n;
+                }
+                this.full.put(c);
+            }
+        } catch (IOException e) {
+            this.failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.full.add(Chunk.END);
+        }
+    }
+
+    /**
+     * Inflates the whole file and scans the inflated bytes. Returns once all
+     * words were reported to {@code sink}. The file is closed once inflated.
+     *
+     * @param sink
+     *            receiver of the words found
+     * @throws IOException
+     *             if the file cannot be read or is not valid gzip
+     * @requires scan was not called before
+     */
+    void scan(WordScanner.Sink sink) throws IOException {
+        this.scan(sink, WordScanner.UNBOUNDED);
+    }
+
+    /**
+     * Inflates the whole file and scans the inflated bytes, dropping the
+     * words longer than {@code maxLength} bytes. Returns once all words were
+     * reported to {@code sink}. The file is closed once inflated.
+     *
+     * @param sink
+     *            receiver of the words found
+     * @param maxLength
+     *            the length in bytes of the longest word reported
+     * @throws IOException
+     *             if the file cannot be read or is not valid gzip
+     * @requires scan was not called before and maxLength > 0
+     */
+    void scan(WordScanner.Sink sink, int maxLength) throws IOException {
+        for (int i = 0; i < RING_SIZE; i++) {
+            this.free.add(new Chunk(BUFFER_SIZE));
+        }
+        Thread inflater = VirtualThreads.start("gzip-inflater",
+                this::inflate);
+        WordScanner scanner = new WordScanner(sink, maxLength);
+        boolean done = false;
+        try {
+            Chunk c = this.full.take();
+            while (c != Chunk.END) {
+                scanner.scan(ByteBuffer.wrap(c.bytes, 0, c.length));
+                this.inflated += c.length;
+                this.free.put(c);
+                c = this.full.take();
+            }
+            done = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inflating.", e);
+        } finally {
+            if (!done) {
+                inflater.interrupt();
+            }
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        scanner.finish();
+    }
+
+    /**
+     * Returns the number of bytes inflated and scanned.
+     *
+     * @return the number of inflated bytes
+     */
+    long inflated() {
+        return this.inflated;
+    }
+
+    /**
+     * Closes the compressed file.
+     *
+     * @throws IOException
+     *             file close problem
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
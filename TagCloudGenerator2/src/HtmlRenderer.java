@@ -0,0 +1,497 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes tag clouds as HTML, encoded in UTF-8, to a byte channel. The fixed
+ * parts of the page, including the opening tag of a word for each font size,
+ * are encoded once; words and counts are encoded and HTML-escaped directly
+ * into a reusable buffer, which is written to the channel whenever it fills.
+ *
+ * <p>
+ * A renderer may be reused for any number of clouds, but not by several
+ * threads at once.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class HtmlRenderer {
+
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Largest number of bytes a single {@code char} is written as ("&quot;").
+     */
+    private static final int MAX_CHAR_BYTES = 6;
+
+    /**
+     * End of line, as written by {@code PrintWriter.println}.
+     */
+    private static final String NL = System.lineSeparator();
+
+    /**
+     * The page up to the number of words in the title.
+     */
+    private static final byte[] HEAD = bytes(
+            "<html> <head>" + NL + "<title>Top ");
+
+    /**
+     * Between the number of words and the file name, in the title and in
+     * the heading.
+     */
+    private static final byte[] WORDS_IN = bytes(" words in ");
+
+    /**
+     * From the end of the title to the number of words in the heading.
+     */
+    private static final byte[] HEADING = bytes("</title>" + NL
+            + "<link href=\"http://cse.osu.edu/software/2231/web-sw2/assignments/"
+            + "projects/tag-cloud-generator/data/tagcloud.css\""
+            + " rel=\"stylesheet\" type=\"text/css\">" + NL + "</head> <body>"
+            + NL + "<h2>Top ");
+
+    /**
+     * From the end of the heading to the first word.
+     */
+    private static final byte[] CLOUD = bytes("</h2>" + NL + "<hr>" + NL
+            + "<div class =\"cdiv\">" + NL + "<p class=\"cbox\">" + NL);
+
+    /**
+     * The end of the page.
+     */
+    private static final byte[] TAIL = bytes(
+            "</p> </div> </body> </html>" + NL);
+
+    /**
+     * For each font size from {@code MIN_FONT}, the opening tag of a word up
+     * to its count.
+     */
+    private static final byte[][] SPANS = new byte[TagCloudGenerator.MAX_FONT
+            - TagCloudGenerator.MIN_FONT + 1][];
+
+    static {
+        for (int i = 0; i < SPANS.length; i++) {
+            SPANS[i] = bytes("<span style=\"cursor:default\" class=\"f"
+                    + (TagCloudGenerator.MIN_FONT + i) + "\" title=\"count: ");
+        }
+    }
+
+    /**
+     * Before the count of a word whose count is estimated.
+     */
+    private static final byte[] ESTIMATED = bytes("~");
+
+    /**
+     * Between an estimated count and its error bound.
+     */
+    private static final byte[] AT_MOST = bytes(", at most ");
+
+    /**
+     * After the error bound of an estimated count.
+     */
+    private static final byte[] TOO_HIGH = bytes(" too high");
+
+    /**
+     * Between a count estimated from a sample and its margin.
+     */
+    private static final byte[] PLUS_MINUS = bytes(" &#177; ");
+
+    /**
+     * Between the count of a word and its TF-IDF weight.
+     */
+    private static final byte[] TF_IDF = bytes(", tf-idf: ");
+
+    /**
+     * From the count of a word to the word.
+     */
+    private static final byte[] SPAN_BODY = bytes("\">");
+
+    /**
+     * After a word.
+     */
+    private static final byte[] SPAN_END = bytes("</span>" + NL);
+
+    /**
+     * Escape of '&amp;'.
+     */
+    private static final byte[] AMP = bytes("&amp;");
+
+    /**
+     * Escape of '&lt;'.
+     */
+    private static final byte[] LT = bytes("&lt;");
+
+    /**
+     * Escape of '&gt;'.
+     */
+    private static final byte[] GT = bytes("&gt;");
+
+    /**
+     * Escape of '&quot;'.
+     */
+    private static final byte[] QUOT = bytes("&quot;");
+
+    /**
+     * The output buffer.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Scratch space for the digits of a number.
+     */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * The channel being written to.
+     */
+    private WritableByteChannel out;
+
+    /**
+     * Number of bytes written since the renderer was created.
+     */
+    private long written = 0;
+
+    /**
+     * Font size of the word that appears the least.
+     */
+    private int minFont = TagCloudGenerator.MIN_FONT;
+
+    /**
+     * Font size of the word that appears the most.
+     */
+    private int maxFont = TagCloudGenerator.MAX_FONT;
+
+    /**
+     * Encodes a constant part of the page.
+     *
+     * @param s
+     *            the text
+     * @return its UTF-8 encoding
+     */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sets the range of font sizes of the clouds written next; by default,
+     * {@code MIN_FONT} to {@code MAX_FONT}.
+     *
+     * @param minFont
+     *            the font size of the word that appears the least
+     * @param maxFont
+     *            the font size of the word that appears the most
+     * @requires MIN_FONT <= minFont <= maxFont <= MAX_FONT
+     */
+    void setFontRange(int minFont, int maxFont) {
+        assert TagCloudGenerator.MIN_FONT <= minFont && minFont <= maxFont
+                && maxFont <= TagCloudGenerator.MAX_FONT
+                : "Violation of: MIN_FONT <= minFont <= maxFont <= MAX_FONT";
+        this.minFont = minFont;
+        this.maxFont = maxFont;
+    }
+
+    /**
+     * Writes the given tag cloud to {@code out}.
+     *
+     * @param out
+     *            the channel to write to
+     * @param s
+     *            the words and their counts, in the order to print them
+     * @param file
+     *            the name of the input file
+     * @param max
+     *            the count of word that appears the most
+     * @param min
+     *            the count of word that appears the least
+     * @throws IOException
+     *             write problem
+     */
+    void render(WritableByteChannel out, List<Map.Entry<String, Integer>> s,
+            String file, int max, int min) throws IOException {
+        this.out = out;
+        this.buffer.clear();
+        this.put(HEAD);
+        this.number(s.size());
+        this.put(WORDS_IN);
+        this.text(file);
+        this.put(HEADING);
+        this.number(s.size());
+        this.put(WORDS_IN);
+        this.text(file);
+        this.put(CLOUD);
+        for (Map.Entry<String, Integer> p : s) {
+            this.word(p, max, min);
+        }
+        this.put(TAIL);
+        this.flush();
+        this.out = null;
+    }
+
+    /**
+     * Writes the given tag cloud to a temporary file in the directory of
+     * {@code target} and moves it over {@code target}, so that readers never
+     * see a partly written cloud. The cloud has the permissions of
+     * {@code target} if it existed, and those of a new file otherwise.
+     *
+     * @param target
+     *            the HTML file to write
+     * @param s
+     *            the words and their counts, in the order to print them
+     * @param file
+     *            the name of the input file
+     * @param max
+     *            the count of word that appears the most
+     * @param min
+     *            the count of word that appears the least
+     * @throws IOException
+     *             file write problem
+     */
+    void write(Path target, List<Map.Entry<String, Integer>> s, String file,
+            int max, int min) throws IOException {
+        Path tmp = createSibling(target);
+        try {
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.WRITE)) {
+                this.render(channel, s, file, max, min);
+            }
+            PosixFileAttributeView view = Files.getFileAttributeView(target,
+                    PosixFileAttributeView.class);
+            if (view != null && Files.exists(target)) {
+                Files.setPosixFilePermissions(tmp,
+                        view.readAttributes().permissions());
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Creates an empty file with a unique name in the directory of
+     * {@code target}. Unlike {@code Files.createTempFile}, which makes the
+     * file readable by its owner only, the file gets the permissions of any
+     * new file.
+     *
+     * @param target
+     *            the file the new one is to replace
+     * @return the new file
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    private static Path createSibling(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = null;
+        while (tmp == null) {
+            Path candidate = dir.resolve("." + target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                    + ".tmp");
+            try {
+                Files.newByteChannel(candidate, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE).close();
+                tmp = candidate;
+            } catch (FileAlreadyExistsException e) {
+                // name taken; try another
+                continue;
+            }
+        }
+        return tmp;
+    }
+
+    /**
+     * Writes a word. The count of a word whose count is estimated is shown
+     * with its error bound, or with its margin if estimated from a sample.
+     *
+     * @param p
+     *            the word and its count
+     * @param max
+     *            the count of word that appears the most
+     * @param min
+     *            the count of word that appears the least
+     * @throws IOException
+     *             write problem
+     */
+    private void word(Map.Entry<String, Integer> p, int max, int min)
+            throws IOException {
+        int count = p.getValue();
+        this.put(SPANS[TagCloudGenerator.fontSize(count, max, min,
+                this.minFont, this.maxFont) - TagCloudGenerator.MIN_FONT]);
+        if (p instanceof SpaceSaving.Estimate) {
+            this.put(ESTIMATED);
+            this.number(count);
+            this.put(AT_MOST);
+            this.number(((SpaceSaving.Estimate) p).error());
+            this.put(TOO_HIGH);
+        } else if (p instanceof SampledWordCount.Estimate) {
+            this.put(ESTIMATED);
+            this.number(count);
+            this.put(PLUS_MINUS);
+            this.number(((SampledWordCount.Estimate) p).margin());
+        } else if (p instanceof CorpusIndex.Weight) {
+            this.number(((CorpusIndex.Weight) p).count());
+            this.put(TF_IDF);
+            this.hundredths(count);
+        } else {
+            this.number(count);
+        }
+        this.put(SPAN_BODY);
+        this.text(p.getKey());
+        this.put(SPAN_END);
+    }
+
+    /**
+     * Returns the number of bytes written by this renderer.
+     *
+     * @return the bytes written
+     */
+    long written() {
+        return this.written;
+    }
+
+    /**
+     * Writes the buffered bytes to the channel and empties the buffer.
+     *
+     * @throws IOException
+     *             write problem
+     */
+    private void flush() throws IOException {
+        this.buffer.flip();
+        this.written += this.buffer.remaining();
+        while (this.buffer.hasRemaining()) {
+            this.out.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Appends bytes to the buffer.
+     *
+     * @param b
+     *            the bytes
+     * @throws IOException
+     *             write problem
+     */
+    private void put(byte[] b) throws IOException {
+        if (this.buffer.remaining() < b.length) {
+            this.flush();
+        }
+        this.buffer.put(b);
+    }
+
+    /**
+     * Appends the decimal digits of a number to the buffer.
+     *
+     * @param n
+     *            the number
+     * @throws IOException
+     *             write problem
+     */
+    private void number(long n) throws IOException {
+        if (this.buffer.remaining() < this.digits.length) {
+            this.flush();
+        }
+        if (n < 0) {
+            this.buffer.put((byte) '-');
+        }
+        int i = this.digits.length;
+        long m = n;
+        do {
+            i--;
+            this.digits[i] = (byte) ('0' + Math.abs(m % 10));
+            m /= 10;
+        } while (m != 0);
+        this.buffer.put(this.digits, i, this.digits.length - i);
+    }
+
+    /**
+     * Appends a number of hundredths to the buffer as a decimal number with
+     * two decimals.
+     *
+     * @param n
+     *            the number of hundredths
+     * @throws IOException
+     *             write problem
+     * @requires n >= 0
+     */
+    private void hundredths(int n) throws IOException {
+        this.number(n / 100);
+        if (this.buffer.remaining() < 3) {
+            this.flush();
+        }
+        this.buffer.put((byte) '.');
+        this.buffer.put((byte) ('0' + n / 10 % 10));
+        this.buffer.put((byte) ('0' + n % 10));
+    }
+
+    /**
+     * Appends text to the buffer, HTML-escaped and encoded in UTF-8. An
+     * unpaired surrogate is written as '?'.
+     *
+     * @param s
+     *            the text
+     * @throws IOException
+     *             write problem
+     */
+    private void text(String s) throws IOException {
+        ByteBuffer b = this.buffer;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (b.remaining() < MAX_CHAR_BYTES) {
+                this.flush();
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '&':
+                        b.put(AMP);
+                        break;
+                    case '<':
+                        b.put(LT);
+                        break;
+                    case '>':
+                        b.put(GT);
+                        break;
+                    case '"':
+                        b.put(QUOT);
+                        break;
+                    default:
+                        b.put((byte) c);
+                        break;
+                }
+            } else if (c < 0x800) {
+                b.put((byte) (0xC0 | (c >> 6)));
+                b.put((byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                b.put((byte) (0xE0 | (c >> 12)));
+                b.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                b.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                i++;
+                b.put((byte) (0xF0 | (cp >> 18)));
+                b.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                b.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                b.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                b.put((byte) '?');
+            }
+        }
+    }
+
+}
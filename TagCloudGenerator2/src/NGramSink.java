@@ -0,0 +1,218 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Counts the n-grams (runs of {@code n} consecutive words) of the words
+ * reported by a {@code WordScanner}. Each n-gram is counted as its words
+ * joined by single spaces, in a {@code ByteWordCounter}, so memory grows with
+ * the number of distinct n-grams and an n-gram is only decoded to a
+ * {@code String} once selected.
+ *
+ * <p>
+ * The last {@code n} words are kept back to back in a window that slides
+ * forward through a buffer: dropping the oldest word only moves the start of
+ * the window, and the window is moved back to the start of the buffer when
+ * it reaches the end, which leaves at least half the buffer free. The hash of
+ * the window is rolled rather than recomputed: the hash of the oldest word
+ * is subtracted and that of the new word appended, each word being hashed
+ * once. So a word costs time in proportion to its length, whatever
+ * {@code n}. Words with non-ASCII bytes are converted to lower case with
+ * {@code String.toLowerCase} first, as by {@code ByteWordCounter}.
+ *
+ * <p>
+ * N-grams run across separators of all kinds, including line breaks.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class NGramSink implements WordScanner.Sink {
+
+    /**
+     * Multiplier of the polynomial hash of {@code ByteWordCounter}.
+     */
+    private static final int BASE = 31;
+
+    /**
+     * Joins the words of an n-gram.
+     */
+    private static final byte SPACE = ' ';
+
+    /**
+     * Initial capacity of the buffer holding the window.
+     */
+    private static final int INITIAL_BUFFER = 256;
+
+    /**
+     * Where the n-grams are counted.
+     */
+    private final ByteWordCounter counter;
+
+    /**
+     * Number of words per n-gram.
+     */
+    private final int n;
+
+    /**
+     * Buffer holding the last words, joined by spaces, in
+     * {@code buffer[start, start + length)}.
+     */
+    private byte[] buffer = new byte[INITIAL_BUFFER];
+
+    /**
+     * Offset of the window in {@code buffer}.
+     */
+    private int start = 0;
+
+    /**
+     * Number of bytes of the window.
+     */
+    private int length = 0;
+
+    /**
+     * Hash of the window.
+     */
+    private int hash = 0;
+
+    /**
+     * Length of each word in the window, in a ring starting at
+     * {@code first}.
+     */
+    private final int[] lengths;
+
+    /**
+     * Hash of each word in the window, in a ring starting at {@code first}.
+     */
+    private final int[] hashes;
+
+    /**
+     * Ring position of the oldest word in the window.
+     */
+    private int first = 0;
+
+    /**
+     * Number of words in the window.
+     */
+    private int words = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param counter
+     *            where the n-grams are counted
+     * @param n
+     *            the number of words per n-gram
+     * @requires n > 0
+     */
+    NGramSink(ByteWordCounter counter, int n) {
+        assert n > 0 : "Violation of: n > 0";
+        this.counter = counter;
+        this.n = n;
+        this.lengths = new int[n];
+        this.hashes = new int[n];
+    }
+
+    /**
+     * Returns {@code BASE} to the power {@code k}, modulo 2^32.
+     *
+     * @param k
+     *            the exponent
+     * @return the power
+     * @requires k >= 0
+     */
+    private static int power(int k) {
+        int result = 1;
+        int b = BASE;
+        for (int e = k; e > 0; e >>= 1) {
+            if ((e & 1) != 0) {
+                result *= b;
+            }
+            b *= b;
+        }
+        return result;
+    }
+
+    /**
+     * Removes the oldest word, and the space after it if any, from the
+     * window.
+     */
+    private void dropFirst() {
+        if (this.words == 1) {
+            this.start = 0;
+            this.length = 0;
+            this.hash = 0;
+        } else {
+            int len = this.lengths[this.first];
+            int rest = this.length - len - 1;
+            this.hash -= this.hashes[this.first] * power(rest + 1);
+            this.hash -= SPACE * power(rest);
+            this.start += len + 1;
+            this.length = rest;
+        }
+        this.first = (this.first + 1) % this.n;
+        this.words--;
+    }
+
+    /**
+     * Moves the window to the start of the buffer, first doubling the buffer
+     * as needed to leave at least half of it free once the window holds
+     * {@code needed} bytes.
+     *
+     * @param needed
+     *            the number of bytes the window is about to hold
+     */
+    private void moveToStart(int needed) {
+        byte[] target = this.buffer;
+        if (2 * needed > target.length) {
+            target = new byte[Math.max(2 * target.length, 2 * needed)];
+        }
+        System.arraycopy(this.buffer, this.start, target, 0, this.length);
+        this.buffer = target;
+        this.start = 0;
+    }
+
+    @Override
+    public void word(byte[] word, int len) {
+        byte[] w = word;
+        int wlen = len;
+        int h = 0;
+        boolean ascii = true;
+        for (int i = 0; i < len; i++) {
+            h = BASE * h + word[i];
+            ascii &= word[i] >= 0;
+        }
+        if (!ascii) {
+            w = new String(word, 0, len, StandardCharsets.UTF_8).toLowerCase()
+                    .getBytes(StandardCharsets.UTF_8);
+            wlen = w.length;
+            h = 0;
+            for (int i = 0; i < wlen; i++) {
+                h = BASE * h + w[i];
+            }
+        }
+        if (this.words == this.n) {
+            this.dropFirst();
+        }
+        int needed = this.length + 1 + wlen;
+        if (this.start + needed > this.buffer.length) {
+            this.moveToStart(needed);
+        }
+        int end = this.start + this.length;
+        if (this.words > 0) {
+            this.buffer[end] = SPACE;
+            end++;
+            this.hash = BASE * this.hash + SPACE;
+        }
+        System.arraycopy(w, 0, this.buffer, end, wlen);
+        this.length = end + wlen - this.start;
+        this.hash = this.hash * power(wlen) + h;
+        int slot = (this.first + this.words) % this.n;
+        this.lengths[slot] = wlen;
+        this.hashes[slot] = h;
+        this.words++;
+        if (this.words == this.n) {
+            this.counter.increment(this.hash, this.buffer, this.start,
+                    this.length);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * Normalizes the words reported by a {@code WordScanner} before they are
+ * counted: stop-words are dropped, and other words are reduced to their
+ * stem by a {@code PorterStemmer}, so that "connection" and "connections"
+ * are counted as one. Only words made of the letters 'a' to 'z' are stemmed;
+ * other words are passed on unchanged.
+ *
+ * <p>
+ * The same forms of the same words come back over and over, so stems are
+ * memoized in a bounded cache: a direct-mapped table of a fixed number of
+ * entries, each holding a word and its stem. A word whose entry holds it is
+ * passed on as the cached stem; any other word is stemmed and replaces the
+ * entry. So a frequent word costs one hash and one comparison of its bytes,
+ * and the cache never holds more than its number of entries. The hash of a
+ * word is computed once, for the stop-word lookup and the cache alike.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class NormalizingSink implements WordScanner.Sink {
+
+    /**
+     * Where the normalized words are reported.
+     */
+    private final WordScanner.Sink sink;
+
+    /**
+     * Stems the words missing from the cache.
+     */
+    private final PorterStemmer stemmer = new PorterStemmer();
+
+    /**
+     * Scratch space for stemming, at least one byte longer than the word.
+     */
+    private byte[] scratch = new byte[64];
+
+    /**
+     * Mask giving the cache entry of a hash.
+     */
+    private final int mask;
+
+    /**
+     * Hash of the word of each entry.
+     */
+    private final int[] hashes;
+
+    /**
+     * Word of each entry, {@code null} for an empty entry.
+     */
+    private final byte[][] words;
+
+    /**
+     * Stem of the word of each entry.
+     */
+    private final byte[][] stems;
+
+    /**
+     * Number of words found in the cache.
+     */
+    private long hits = 0;
+
+    /**
+     * Number of words stemmed.
+     */
+    private long misses = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param sink
+     *            where the normalized words are reported
+     * @param cacheSize
+     *            the largest number of memoized stems; rounded down to a
+     *            power of two
+     * @requires cacheSize > 0
+     */
+    NormalizingSink(WordScanner.Sink sink, int cacheSize) {
+        assert cacheSize > 0 : "Violation of: cacheSize > 0";
+        this.sink = sink;
+        int capacity = Integer.highestOneBit(cacheSize);
+        this.mask = capacity - 1;
+        this.hashes = new int[capacity];
+        this.words = new byte[capacity][];
+        this.stems = new byte[capacity][];
+    }
+
+    @Override
+    public void word(byte[] word, int length) {
+        int h = StopWords.hash(word, length);
+        if (StopWords.contains(word, length, h)) {
+            return;
+        }
+        int i = (h ^ (h >>> 16)) & this.mask;
+        byte[] cached = this.words[i];
+        if (cached != null && this.hashes[i] == h
+                && Arrays.equals(cached, 0, cached.length, word, 0, length)) {
+            this.hits++;
+        } else {
+            this.misses++;
+            this.words[i] = Arrays.copyOf(word, length);
+            this.hashes[i] = h;
+            this.stems[i] = this.stem(word, length);
+        }
+        this.sink.word(this.stems[i], this.stems[i].length);
+    }
+
+    /**
+     * Returns the stem of a word, or the word itself if it is not made of
+     * the letters 'a' to 'z' only.
+     *
+     * @param word
+     *            the bytes holding the word
+     * @param length
+     *            the length of the word
+     * @return the bytes of the stem
+     */
+    private byte[] stem(byte[] word, int length) {
+        for (int i = 0; i < length; i++) {
+            if (word[i] < 'a' || word[i] > 'z') {
+                return Arrays.copyOf(word, length);
+            }
+        }
+        if (this.scratch.length <= length) {
+            this.scratch = new byte[2 * length];
+        }
+        System.arraycopy(word, 0, this.scratch, 0, length);
+        return Arrays.copyOf(this.scratch,
+                this.stemmer.stem(this.scratch, length));
+    }
+
+    /**
+     * Returns a one line summary of the use of the stem cache.
+     *
+     * @return the summary
+     */
+    String statistics() {
+        return "Stem cache: " + this.hits + " hits, " + this.misses
+                + " misses.";
+    }
+
+}
@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the words of a file on several threads. The file is cut into byte
+ * ranges whose boundaries all directly follow a separator, so no word is
+ * split between two ranges; each range is counted by its own
+ * {@code ForkJoinPool} task into its own counter, and the partial counters are
+ * merged as the tasks join.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class ParallelWordCount {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelWordCount() {
+    }
+
+    /**
+     * Smallest range worth counting in a task of its own.
+     */
+    static final long MIN_RANGE = 1 << 20;
+
+    /**
+     * Number of ranges per thread, so that threads that finish early can
+     * steal work from the others.
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * Number of bytes examined at a time while looking for a separator.
+     */
+    private static final int PROBE = 256;
+
+    /**
+     * Counts the words in the ranges between consecutive boundaries.
+     */
+    private static final class CountTask
+            extends RecursiveTask<ByteWordCounter> {
+
+        /**
+         * Serialization id, as required of {@code RecursiveTask}s.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The file being counted.
+         */
+        private final transient FileChannel channel;
+
+        /**
+         * Range boundaries of the whole file.
+         */
+        private final long[] bounds;
+
+        /**
+         * Index in {@code bounds} of the start of the first range to count.
+         */
+        private final int first;
+
+        /**
+         * Index in {@code bounds} of the end of the last range to count.
+         */
+        private final int last;
+
+        /**
+         * The run the counting is for, {@code null} if none.
+         */
+        private final TagCloudMetrics.Run run;
+
+        /**
+         * Constructor.
+         *
+         * @param channel
+         *            the file being counted
+         * @param bounds
+         *            range boundaries of the whole file
+         * @param first
+         *            index of the start of the first range to count
+         * @param last
+         *            index of the end of the last range to count
+         * @param run
+         *            the run the counting is for, {@code null} if none
+         */
+        CountTask(FileChannel channel, long[] bounds, int first, int last,
+                TagCloudMetrics.Run run) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.first = first;
+            this.last = last;
+            this.run = run;
+        }
+
+        @Override
+        protected ByteWordCounter compute() {
+            TagCloudMetrics.Run previous = TagCloudMetrics.attach(this.run);
+            try {
+                return this.count();
+            } finally {
+                TagCloudMetrics.attach(previous);
+            }
+        }
+
+        /**
+         * Counts the ranges of the task, splitting them among subtasks.
+         *
+         * @return the counter of words and their count
+         */
+        private ByteWordCounter count() {
+            ByteWordCounter m;
+            if (this.last - this.first == 1) {
+                m = new ByteWordCounter();
+                try {
+                    WordScanner.scan(this.channel, this.bounds[this.first],
+                            this.bounds[this.last], m);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                int middle = (this.first + this.last) / 2;
+                CountTask left = new CountTask(this.channel, this.bounds,
+                        this.first, middle, this.run);
+                left.fork();
+                m = new CountTask(this.channel, this.bounds, middle,
+                        this.last, this.run).compute();
+                m = merge(left.join(), m);
+            }
+            return m;
+        }
+
+    }
+
+    /**
+     * Adds the counts of the smaller of two counters into the larger one.
+     *
+     * @param m1
+     *            a counter of words and their counts
+     * @param m2
+     *            another counter of words and their counts
+     * @return the counter of words and their combined counts
+     */
+    private static ByteWordCounter merge(ByteWordCounter m1,
+            ByteWordCounter m2) {
+        ByteWordCounter larger = m1;
+        ByteWordCounter smaller = m2;
+        if (m1.size() < m2.size()) {
+            larger = m2;
+            smaller = m1;
+        }
+        larger.addAll(smaller);
+        return larger;
+    }
+
+    /**
+     * Returns the first offset at or after {@code position} that directly
+     * follows a separator, or the size of the file if there is none.
+     *
+     * @param channel
+     *            the file
+     * @param position
+     *            where to start looking
+     * @return the aligned offset
+     * @throws IOException
+     *             file read problem
+     * @requires 0 < position <= [size of the file]
+     */
+    private static long align(FileChannel channel, long position)
+            throws IOException {
+        long size = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(PROBE);
+        long p = position - 1;
+        while (p < size) {
+            probe.clear();
+            int n = channel.read(probe, p);
+            if (n < 0) {
+                return size;
+            }
+            for (int i = 0; i < n; i++) {
+                if (WordScanner.isSeparator(probe.get(i))) {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return size;
+    }
+
+    /**
+     * Cuts the file into ranges, moving each nominal boundary forward to the
+     * next separator.
+     *
+     * @param channel
+     *            the file
+     * @param parallelism
+     *            the number of threads that will count the ranges
+     * @param minRange
+     *            the smallest range
+     * @return the strictly increasing range boundaries, starting with 0 and
+     *         ending with the size of the file
+     * @throws IOException
+     *             file read problem
+     * @requires parallelism > 0 and minRange > 0
+     */
+    static long[] boundaries(FileChannel channel, int parallelism,
+            long minRange) throws IOException {
+        long size = channel.size();
+        long range = Math.max(minRange,
+                size / ((long) parallelism * RANGES_PER_THREAD) + 1);
+        long[] b = new long[(int) (size / range) + 2];
+        int n = 1;
+        long next = range;
+        while (next < size && b[n - 1] < size) {
+            long aligned = align(channel, next);
+            b[n] = aligned;
+            n++;
+            next = aligned + range;
+        }
+        if (b[n - 1] < size) {
+            b[n] = size;
+            n++;
+        }
+        if (n == 1) {
+            b[n] = size;
+            n++;
+        }
+        long[] bounds = new long[n];
+        System.arraycopy(b, 0, bounds, 0, n);
+        return bounds;
+    }
+
+    /**
+     * Counts the words of the given file using {@code parallelism} threads.
+     * Produces the same counts as counting the file on a single thread.
+     *
+     * @param channel
+     *            the file to count
+     * @param parallelism
+     *            the number of threads to use
+     * @return the counter of words and their count
+     * @throws IOException
+     *             file read problem
+     * @requires parallelism > 0
+     */
+    static ByteWordCounter count(FileChannel channel, int parallelism)
+            throws IOException {
+        return count(channel, parallelism, MIN_RANGE);
+    }
+
+    /**
+     * Counts the words of the given file using {@code parallelism} threads,
+     * in ranges of at least {@code minRange} bytes.
+     *
+     * @param channel
+     *            the file to count
+     * @param parallelism
+     *            the number of threads to use
+     * @param minRange
+     *            the smallest range counted by a task of its own
+     * @return the counter of words and their count
+     * @throws IOException
+     *             file read problem
+     * @requires parallelism > 0 and minRange > 0
+     */
+    static ByteWordCounter count(FileChannel channel, int parallelism,
+            long minRange) throws IOException {
+        assert parallelism > 0 : "Violation of: parallelism > 0";
+        assert minRange > 0 : "Violation of: minRange > 0";
+        long[] bounds = boundaries(channel, parallelism, minRange);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new CountTask(channel, bounds, 0,
+                    bounds.length - 1, TagCloudMetrics.current()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
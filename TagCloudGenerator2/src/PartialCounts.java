@@ -0,0 +1,362 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The counts of several partial-count files, each holding the counts of one
+ * shard of an input, so that shards may be counted by separate processes or
+ * machines and their counts combined afterwards.
+ *
+ * <p>
+ * A partial-count file holds a header (magic number, version, number of
+ * words) followed by the words sorted by their UTF-8 bytes, each with its
+ * count. Each word is stored as the number of leading bytes it shares with
+ * the word before it, followed by the number and the bytes of the rest, so
+ * the common prefixes of sorted words are stored once; lengths and counts
+ * are stored in as few bytes as they need.
+ *
+ * <p>
+ * Since all files are sorted the same way, their counts are combined by a
+ * k-way merge: one buffered stream and one current word per file, and a
+ * priority queue of the files by current word. The words of the merge are
+ * reported in order, each once with its total count, so memory use depends
+ * on the number of files and not on the number of words.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class PartialCounts implements WordCounts {
+
+    /**
+     * Name ending of the partial-count files merged from a directory.
+     */
+    static final String SUFFIX = ".counts";
+
+    /**
+     * First bytes of a partial-count file ("TCGP").
+     */
+    private static final int MAGIC = 0x54434750;
+
+    /**
+     * Version of the partial-count file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the buffer of each file.
+     */
+    private static final int BUFFER_SIZE = 1 << 15;
+
+    /**
+     * A partial-count file being merged, positioned on its current word.
+     */
+    private static final class Cursor implements Closeable {
+
+        /**
+         * The contents of the file.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Number of words not yet read.
+         */
+        private int remaining;
+
+        /**
+         * The bytes of the current word, in {@code word[0, length)}.
+         */
+        private byte[] word = new byte[64];
+
+        /**
+         * Length of the current word, -1 once the file is exhausted.
+         */
+        private int length = 0;
+
+        /**
+         * The count of the current word.
+         */
+        private int count;
+
+        /**
+         * Constructor; positions the cursor on the first word.
+         *
+         * @param file
+         *            the partial-count file
+         * @throws IOException
+         *             file read problem, or not a partial-count file
+         */
+        Cursor(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), BUFFER_SIZE));
+            try {
+                if (this.in.readInt() != MAGIC
+                        || this.in.readInt() != VERSION) {
+                    throw new IOException(
+                            "Not a partial-count file: " + file);
+                }
+                this.remaining = this.in.readInt();
+                this.advance();
+            } catch (IOException e) {
+                this.in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next word of the file.
+         *
+         * @throws IOException
+         *             file read problem, or a malformed word
+         */
+        void advance() throws IOException {
+            if (this.remaining == 0) {
+                this.length = -1;
+                return;
+            }
+            int shared = CountFiles.readVarInt(this.in);
+            int rest = CountFiles.readVarInt(this.in);
+            if (shared > this.length || shared + rest <= 0) {
+                throw new IOException("Malformed partial-count file.");
+            }
+            if (this.word.length < shared + rest) {
+                this.word = Arrays.copyOf(this.word,
+                        Math.max(2 * this.word.length, shared + rest));
+            }
+            this.in.readFully(this.word, shared, rest);
+            this.length = shared + rest;
+            this.count = CountFiles.readVarInt(this.in);
+            this.remaining--;
+        }
+
+        /**
+         * Compares the current words of two cursors by their bytes.
+         *
+         * @param other
+         *            the other cursor
+         * @return negative, 0 or positive as this word comes before, is, or
+         *         comes after the other
+         */
+        int compareTo(Cursor other) {
+            return Arrays.compareUnsigned(this.word, 0, this.length,
+                    other.word, 0, other.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+
+    }
+
+    /**
+     * The files to merge.
+     */
+    private final List<Path> files;
+
+    /**
+     * Constructor.
+     *
+     * @param files
+     *            the partial-count files to merge
+     */
+    PartialCounts(List<Path> files) {
+        this.files = new ArrayList<>(files);
+    }
+
+    /**
+     * Returns the partial-count files of a directory, those whose name ends
+     * with {@code SUFFIX}, sorted by name.
+     *
+     * @param dir
+     *            the directory
+     * @return the files
+     * @throws IOException
+     *             if the directory cannot be listed
+     */
+    static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX)
+                            && Files.isRegularFile(p))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes the given counts to a partial-count file. The file is written
+     * under a temporary name and then renamed, so a merge never sees it
+     * partly written.
+     *
+     * @param m
+     *            the counts
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             file write problem
+     */
+    static void write(WordCounts m, Path file) throws IOException {
+        List<Map.Entry<byte[], Integer>> words = new ArrayList<>();
+        m.forEach((word, count) -> words.add(new SimpleImmutableEntry<>(
+                word.getBytes(StandardCharsets.UTF_8), count)));
+        words.sort((a, b) -> Arrays.compareUnsigned(a.getKey(), b.getKey()));
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, "tagcloud", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp),
+                            BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(words.size());
+                byte[] previous = new byte[0];
+                for (Map.Entry<byte[], Integer> p : words) {
+                    byte[] word = p.getKey();
+                    int shared = Math.max(0, Arrays.mismatch(previous, word));
+                    CountFiles.writeVarInt(out, shared);
+                    CountFiles.writeVarInt(out, word.length - shared);
+                    out.write(word, shared, word.length - shared);
+                    CountFiles.writeVarInt(out, p.getValue());
+                    previous = word;
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reports each distinct word of the files counted at least {@code min}
+     * times in all of them, with its total count, in the order of its UTF-8
+     * bytes. Only these words are decoded.
+     *
+     * @param min
+     *            the smallest total count reported
+     * @param action
+     *            the action to perform
+     * @throws IOException
+     *             if a file cannot be read or is not a partial-count file
+     */
+    void merge(int min, ObjIntConsumer<String> action) throws IOException {
+        Queue<Cursor> queue = new PriorityQueue<>(
+                Math.max(1, this.files.size()), Cursor::compareTo);
+        byte[] word = new byte[64];
+        try {
+            for (Path file : this.files) {
+                Cursor c = new Cursor(file);
+                if (c.length >= 0) {
+                    queue.add(c);
+                } else {
+                    c.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor c = queue.poll();
+                int length = c.length;
+                if (word.length < length) {
+                    word = Arrays.copyOf(c.word, c.word.length);
+                } else {
+                    System.arraycopy(c.word, 0, word, 0, length);
+                }
+                long count = c.count;
+                next(queue, c);
+                while (!queue.isEmpty() && Arrays.equals(word, 0, length,
+                        queue.peek().word, 0, queue.peek().length)) {
+                    c = queue.poll();
+                    count += c.count;
+                    next(queue, c);
+                }
+                if (count >= min) {
+                    action.accept(
+                            new String(word, 0, length,
+                                    StandardCharsets.UTF_8),
+                            (int) Math.min(Integer.MAX_VALUE, count));
+                }
+            }
+        } finally {
+            for (Cursor c : queue) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Advances the given cursor and puts it back in the queue, or closes it
+     * if its file is exhausted or cannot be read.
+     *
+     * @param queue
+     *            the cursors being merged
+     * @param c
+     *            the cursor to advance
+     * @throws IOException
+     *             file read problem
+     */
+    private static void next(Queue<Cursor> queue, Cursor c)
+            throws IOException {
+        try {
+            c.advance();
+        } catch (IOException | RuntimeException e) {
+            c.close();
+            throw e;
+        }
+        if (c.length >= 0) {
+            queue.add(c);
+        } else {
+            c.close();
+        }
+    }
+
+    /**
+     * Reports each distinct word of the files with its total count.
+     *
+     * @param action
+     *            the action to perform
+     * @throws UncheckedIOException
+     *             if a file cannot be read or is not a partial-count file
+     */
+    @Override
+    public void forEach(ObjIntConsumer<String> action) {
+        this.forEachAtLeast(1, action);
+    }
+
+    /**
+     * Reports each distinct word of the files counted at least {@code min}
+     * times in all of them, with its total count.
+     *
+     * @param min
+     *            the smallest total count reported
+     * @param action
+     *            the action to perform
+     * @throws UncheckedIOException
+     *             if a file cannot be read or is not a partial-count file
+     */
+    @Override
+    public void forEachAtLeast(int min, ObjIntConsumer<String> action) {
+        try {
+            this.merge(min, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
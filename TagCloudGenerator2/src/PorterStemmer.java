@@ -0,0 +1,343 @@
+/**
+ * The Porter stemming algorithm (M.F. Porter, "An algorithm for suffix
+ * stripping", 1980), which strips common English suffixes so that
+ * inflections of a word, such as "connect", "connected" and "connecting",
+ * are counted as one.
+ *
+ * <p>
+ * Words are stemmed in place, as lower case ASCII letters, in the byte
+ * buffer that holds them. A stemmer keeps the state of the word being
+ * stemmed, so it may not be used by several threads at once.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class PorterStemmer {
+
+    /**
+     * Suffixes of step 3 and their replacements. Porter groups them by their
+     * next to last letter; no two groups can match the same word, so trying
+     * them in order gives the same result.
+     */
+    private static final String[][] STEP3 = { { "ational", "ate" },
+            { "tional", "tion" }, { "enci", "ence" }, { "anci", "ance" },
+            { "izer", "ize" }, { "bli", "ble" }, { "alli", "al" },
+            { "entli", "ent" }, { "eli", "e" }, { "ousli", "ous" },
+            { "ization", "ize" }, { "ation", "ate" }, { "ator", "ate" },
+            { "alism", "al" }, { "iveness", "ive" }, { "fulness", "ful" },
+            { "ousness", "ous" }, { "aliti", "al" }, { "iviti", "ive" },
+            { "biliti", "ble" }, { "logi", "log" } };
+
+    /**
+     * Suffixes of step 4 and their replacements.
+     */
+    private static final String[][] STEP4 = { { "icate", "ic" },
+            { "ative", "" }, { "alize", "al" }, { "iciti", "ic" },
+            { "ical", "ic" }, { "ful", "" }, { "ness", "" } };
+
+    /**
+     * Suffixes removed by step 5.
+     */
+    private static final String[] STEP5 = { "al", "ance", "ence", "er", "ic",
+            "able", "ible", "ant", "ement", "ment", "ent", "ion", "ou", "ism",
+            "ate", "iti", "ous", "ive", "ize" };
+
+    /**
+     * The word being stemmed, in {@code b[0, k]}.
+     */
+    private byte[] b;
+
+    /**
+     * Index of the last letter of the word.
+     */
+    private int k;
+
+    /**
+     * Index of the last letter of the word without the suffix last matched
+     * by {@link #ends(String)}.
+     */
+    private int j;
+
+    /**
+     * Stems the word {@code word[0, length)} in place.
+     *
+     * @param word
+     *            the bytes holding the word, all in 'a'..'z'
+     * @param length
+     *            the length of the word
+     * @return the length of the stem, in {@code word[0, result)}
+     * @requires word.length > length
+     */
+    int stem(byte[] word, int length) {
+        assert word.length > length : "Violation of: word.length > length";
+        this.b = word;
+        this.k = length - 1;
+        if (this.k > 1) {
+            this.step1();
+            this.step2();
+            this.step3();
+            this.step4();
+            this.step5();
+            this.step6();
+        }
+        this.b = null;
+        return this.k + 1;
+    }
+
+    /**
+     * Tells whether the letter at {@code i} is a consonant: not a vowel, and
+     * not a 'y' following a consonant.
+     *
+     * @param i
+     *            the index of the letter
+     * @return true iff it is a consonant
+     */
+    private boolean cons(int i) {
+        switch (this.b[i]) {
+            case 'a':
+            case 'e':
+            case 'i':
+            case 'o':
+            case 'u':
+                return false;
+            case 'y':
+                return i == 0 || !this.cons(i - 1);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Returns the number of vowel-consonant sequences in {@code b[0, j]}: m
+     * in [C](VC)^m[V].
+     *
+     * @return the measure of {@code b[0, j]}
+     */
+    private int m() {
+        int n = 0;
+        int i = 0;
+        while (i <= this.j && this.cons(i)) {
+            i++;
+        }
+        while (i <= this.j) {
+            while (i <= this.j && !this.cons(i)) {
+                i++;
+            }
+            if (i > this.j) {
+                return n;
+            }
+            n++;
+            while (i <= this.j && this.cons(i)) {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Tells whether {@code b[0, j]} holds a vowel.
+     *
+     * @return true iff it holds a vowel
+     */
+    private boolean vowelInStem() {
+        for (int i = 0; i <= this.j; i++) {
+            if (!this.cons(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether {@code b[i - 1, i]} is a double consonant.
+     *
+     * @param i
+     *            the index of the second letter
+     * @return true iff both letters are the same consonant
+     */
+    private boolean doubleC(int i) {
+        return i >= 1 && this.b[i] == this.b[i - 1] && this.cons(i);
+    }
+
+    /**
+     * Tells whether {@code b[i - 2, i]} is consonant-vowel-consonant, the
+     * last consonant not being 'w', 'x' or 'y', as in "hop" but not "snow".
+     *
+     * @param i
+     *            the index of the last letter
+     * @return true iff the letters are consonant-vowel-consonant
+     */
+    private boolean cvc(int i) {
+        if (i < 2 || !this.cons(i) || this.cons(i - 1) || !this.cons(i - 2)) {
+            return false;
+        }
+        byte c = this.b[i];
+        return c != 'w' && c != 'x' && c != 'y';
+    }
+
+    /**
+     * Tells whether {@code b[0, k]} ends with {@code s}, and if so sets
+     * {@code j} to the index before the suffix.
+     *
+     * @param s
+     *            the suffix
+     * @return true iff the word ends with {@code s}
+     */
+    private boolean ends(String s) {
+        int l = s.length();
+        int o = this.k - l + 1;
+        if (o < 0) {
+            return false;
+        }
+        for (int i = 0; i < l; i++) {
+            if (this.b[o + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        this.j = this.k - l;
+        return true;
+    }
+
+    /**
+     * Replaces {@code b[j + 1, k]} with {@code s}.
+     *
+     * @param s
+     *            the replacement
+     */
+    private void setTo(String s) {
+        int l = s.length();
+        for (int i = 0; i < l; i++) {
+            this.b[this.j + 1 + i] = (byte) s.charAt(i);
+        }
+        this.k = this.j + l;
+    }
+
+    /**
+     * Replaces {@code b[j + 1, k]} with {@code s} if {@code b[0, j]} has a
+     * positive measure.
+     *
+     * @param s
+     *            the replacement
+     */
+    private void r(String s) {
+        if (this.m() > 0) {
+            this.setTo(s);
+        }
+    }
+
+    /**
+     * Removes plurals and -ed or -ing, as in "caresses" to "caress", "ponies"
+     * to "poni", "meetings" to "meet" and "hopping" to "hop".
+     */
+    private void step1() {
+        if (this.b[this.k] == 's') {
+            if (this.ends("sses")) {
+                this.k -= 2;
+            } else if (this.ends("ies")) {
+                this.setTo("i");
+            } else if (this.b[this.k - 1] != 's') {
+                this.k--;
+            }
+        }
+        if (this.ends("eed")) {
+            if (this.m() > 0) {
+                this.k--;
+            }
+        } else if ((this.ends("ed") || this.ends("ing"))
+                && this.vowelInStem()) {
+            this.k = this.j;
+            if (this.ends("at")) {
+                this.setTo("ate");
+            } else if (this.ends("bl")) {
+                this.setTo("ble");
+            } else if (this.ends("iz")) {
+                this.setTo("ize");
+            } else if (this.doubleC(this.k)) {
+                this.k--;
+                byte c = this.b[this.k];
+                if (c == 'l' || c == 's' || c == 'z') {
+                    this.k++;
+                }
+            } else if (this.m() == 1 && this.cvc(this.k)) {
+                this.setTo("e");
+            }
+        }
+    }
+
+    /**
+     * Turns a final 'y' into 'i' when there is another vowel in the stem.
+     */
+    private void step2() {
+        if (this.ends("y") && this.vowelInStem()) {
+            this.b[this.k] = 'i';
+        }
+    }
+
+    /**
+     * Maps double suffixes to single ones, as in "-ization" to "-ize".
+     */
+    private void step3() {
+        this.apply(STEP3);
+    }
+
+    /**
+     * Handles -ic-, -full, -ness and the like.
+     */
+    private void step4() {
+        this.apply(STEP4);
+    }
+
+    /**
+     * Replaces the suffix of the first of the given rules that matches, if
+     * the rest of the word has a positive measure.
+     *
+     * @param rules
+     *            pairs of a suffix and its replacement
+     */
+    private void apply(String[][] rules) {
+        for (String[] rule : rules) {
+            if (this.ends(rule[0])) {
+                this.r(rule[1]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes -ant, -ence and the like when the rest of the word has a
+     * measure above 1; -ion only after 's' or 't'.
+     */
+    private void step5() {
+        for (String suffix : STEP5) {
+            if (this.ends(suffix)) {
+                boolean ion = suffix.equals("ion");
+                if (!ion || (this.j >= 0
+                        && (this.b[this.j] == 's' || this.b[this.j] == 't'))) {
+                    if (this.m() > 1) {
+                        this.k = this.j;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a final -e and turns a final -ll into -l when the rest of the
+     * word has a measure above 1.
+     */
+    private void step6() {
+        this.j = this.k;
+        if (this.b[this.k] == 'e') {
+            int a = this.m();
+            if (a > 1 || (a == 1 && !this.cvc(this.k - 1))) {
+                this.k--;
+            }
+        }
+        if (this.b[this.k] == 'l' && this.doubleC(this.k) && this.m() > 1) {
+            this.k--;
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Estimates the word counts of a file from a random sample of its blocks, for
+ * a quick preview of the cloud of a file too large to count in full.
+ *
+ * <p>
+ * The file is cut into blocks of a fixed size, and a given percentage of them
+ * is chosen at random and read with positional reads, in file order. Each
+ * occurrence of a word belongs to the block in which it starts: the end of a
+ * word started in the previous block is skipped, and a word running past the
+ * end of the block is read to its end. So every occurrence belongs to exactly
+ * one block, and the total of a word over the sampled blocks, scaled by the
+ * number of blocks over the number sampled, is an unbiased estimate of its
+ * count.
+ *
+ * <p>
+ * Each estimate comes with the margin of a 95% confidence interval, computed
+ * from the variance of the word's count across the sampled blocks, so words
+ * that cluster in a few places get the wider margins they deserve.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class SampledWordCount {
+
+    /**
+     * Default size of a block in bytes.
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Number of bytes read past the end of a block to finish its last word;
+     * a longer word is dropped.
+     */
+    private static final int OVERHANG = 1 << 10;
+
+    /**
+     * Quantile of the normal distribution for a 95% confidence interval.
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * A word with its estimated count and the margin of that count.
+     */
+    static final class Estimate extends SimpleImmutableEntry<String, Integer> {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Half the width of the 95% confidence interval of the count.
+         */
+        private final int margin;
+
+        /**
+         * Constructor.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            the estimated count of the word
+         * @param margin
+         *            half the width of the confidence interval of
+         *            {@code count}
+         */
+        Estimate(String word, int count, int margin) {
+            super(word, count);
+            this.margin = margin;
+        }
+
+        /**
+         * Returns half the width of the 95% confidence interval of the
+         * count: the true count is within this much of the estimate 19 times
+         * out of 20.
+         *
+         * @return the margin
+         */
+        int margin() {
+            return this.margin;
+        }
+
+    }
+
+    /**
+     * Percentage of the blocks sampled.
+     */
+    private final int percent;
+
+    /**
+     * Size of a block in bytes.
+     */
+    private final int blockSize;
+
+    /**
+     * Chooses the blocks sampled.
+     */
+    private final Random random;
+
+    /**
+     * For each word, its total count over the sampled blocks and the total of
+     * the squares of its count in each block.
+     */
+    private final Map<String, long[]> totals = new HashMap<>();
+
+    /**
+     * Number of blocks of the file.
+     */
+    private long blocks = 0;
+
+    /**
+     * Number of blocks sampled.
+     */
+    private int sampled = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param percent
+     *            the percentage of the blocks to sample
+     * @param blockSize
+     *            the size of a block in bytes
+     * @param random
+     *            chooses the blocks sampled
+     * @requires 0 < percent <= 100 and blockSize > 0
+     */
+    SampledWordCount(int percent, int blockSize, Random random) {
+        assert 0 < percent && percent <= 100
+                : "Violation of: 0 < percent <= 100";
+        assert blockSize > 0 : "Violation of: blockSize > 0";
+        this.percent = percent;
+        this.blockSize = blockSize;
+        this.random = random;
+    }
+
+    /**
+     * Samples blocks of the given file and counts their words.
+     *
+     * @param channel
+     *            the file
+     * @throws IOException
+     *             file read problem
+     */
+    void run(FileChannel channel) throws IOException {
+        long size = channel.size();
+        this.blocks = (size + this.blockSize - 1) / this.blockSize;
+        long[] chosen = this.choose(this.blocks, (int) Math.min(this.blocks,
+                Math.max(1, (this.blocks * this.percent + 99) / 100)));
+        ByteBuffer buffer = ByteBuffer.allocate(this.blockSize + 1 + OVERHANG);
+        ByteWordCounter block = new ByteWordCounter();
+        for (long b : chosen) {
+            long start = b * this.blockSize;
+            long from = Math.max(0, start - 1);
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - from));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            this.scanBlock(buffer, (int) (start - from),
+                    (int) (Math.min(size, start + this.blockSize) - from),
+                    from + buffer.limit() == size, block);
+            block.forEach((word, count) -> {
+                long[] t = this.totals.computeIfAbsent(word,
+                        w -> new long[2]);
+                t[0] += count;
+                t[1] += (long) count * count;
+            });
+            block.clear();
+            this.sampled++;
+        }
+    }
+
+    /**
+     * Chooses {@code k} distinct blocks out of {@code n} at random, with
+     * Floyd's algorithm.
+     *
+     * @param n
+     *            the number of blocks
+     * @param k
+     *            the number of blocks to choose
+     * @return the blocks chosen, in increasing order
+     * @requires 0 <= k <= n
+     */
+    private long[] choose(long n, int k) {
+        long[] chosen = new long[k];
+        if (k == n) {
+            for (int i = 0; i < k; i++) {
+                chosen[i] = i;
+            }
+            return chosen;
+        }
+        Set<Long> set = new HashSet<>();
+        for (long j = n - k; j < n; j++) {
+            long t = this.random.nextLong(j + 1);
+            set.add(set.contains(t) ? j : t);
+        }
+        int i = 0;
+        for (long b : set) {
+            chosen[i] = b;
+            i++;
+        }
+        Arrays.sort(chosen);
+        return chosen;
+    }
+
+    /**
+     * Counts the words starting in {@code buffer[start, end)}, reading past
+     * {@code end} to the end of the last one.
+     *
+     * @param buffer
+     *            the bytes read, from the byte before the block if any
+     * @param start
+     *            the index of the first byte of the block
+     * @param end
+     *            the index just past the last byte of the block
+     * @param atEnd
+     *            whether the buffer ends at the end of the file
+     * @param sink
+     *            receiver of the words
+     */
+    private void scanBlock(ByteBuffer buffer, int start, int end,
+            boolean atEnd, WordScanner.Sink sink) {
+        int limit = buffer.limit();
+        int i = start;
+        if (start > 0 && !WordScanner.isSeparator(buffer.get(start - 1))) {
+            while (i < end && !WordScanner.isSeparator(buffer.get(i))) {
+                i++;
+            }
+        }
+        if (i == end) {
+            return;
+        }
+        int j = end;
+        if (!WordScanner.isSeparator(buffer.get(end - 1))) {
+            while (j < limit && !WordScanner.isSeparator(buffer.get(j))) {
+                j++;
+            }
+        }
+        WordScanner scanner = new WordScanner(sink,
+                WordScanner.MAX_WORD_LENGTH);
+        buffer.position(i).limit(j);
+        scanner.scan(buffer);
+        if (j < limit || atEnd) {
+            scanner.finish();
+        } else {
+            scanner.report();
+        }
+    }
+
+    /**
+     * Returns the number of blocks of the file.
+     *
+     * @return the number of blocks
+     */
+    long blocks() {
+        return this.blocks;
+    }
+
+    /**
+     * Returns the number of blocks sampled.
+     *
+     * @return the number of blocks sampled
+     */
+    int sampled() {
+        return this.sampled;
+    }
+
+    /**
+     * Returns the estimated count of each word seen, with its margin, in
+     * decreasing order of estimated count.
+     *
+     * @return the estimates
+     */
+    List<Estimate> estimates() {
+        double n = this.blocks;
+        double k = this.sampled;
+        double scale = n / k;
+        List<Estimate> estimates = new ArrayList<>(this.totals.size());
+        for (Map.Entry<String, long[]> p : this.totals.entrySet()) {
+            double sum = p.getValue()[0];
+            double squares = p.getValue()[1];
+            double variance = 0;
+            if (k > 1) {
+                variance = Math.max(0, (squares - sum * sum / k) / (k - 1));
+            }
+            double error = n * Math.sqrt((1 - k / n) * variance / k);
+            estimates.add(new Estimate(p.getKey(),
+                    (int) Math.min(Integer.MAX_VALUE, Math.round(scale * sum)),
+                    (int) Math.min(Integer.MAX_VALUE, Math.ceil(Z * error))));
+        }
+        estimates.sort(new TagCloudGenerator.MapPairValueLT());
+        return estimates;
+    }
+
+    /**
+     * Returns how many of the first {@code size} estimates might not be in
+     * the true top {@code size}: those whose confidence interval overlaps
+     * that of the next estimate.
+     *
+     * @param estimates
+     *            the estimates, in decreasing order of estimated count
+     * @param size
+     *            the number of words in the cloud
+     * @return the number of uncertain words
+     */
+    static int uncertain(List<Estimate> estimates, int size) {
+        if (estimates.size() <= size) {
+            return 0;
+        }
+        Estimate next = estimates.get(size);
+        long high = (long) next.getValue() + next.margin();
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            Estimate e = estimates.get(i);
+            if ((long) e.getValue() - e.margin() <= high) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,441 @@
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Approximate counts of the most frequent words of a stream, kept in a fixed
+ * number of counters regardless of how many distinct words the stream has
+ * (the Space-Saving algorithm of Metwally, Agrawal and El Abbadi).
+ *
+ * <p>
+ * Each monitored word has a count that never underestimates its true count,
+ * and an error that bounds the overestimate. When an unmonitored word
+ * arrives and all counters are in use, the word with the smallest count is
+ * replaced and the new word inherits that count as its error. Every word
+ * whose true count exceeds {@code total / capacity} is guaranteed to be
+ * monitored.
+ *
+ * <p>
+ * The counters are kept in a min-heap on their counts, and located through an
+ * open addressing index keyed by {@code CharSequence} slices, so counting a
+ * monitored word allocates nothing.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class SpaceSaving {
+
+    /**
+     * Estimated number of bytes of heap needed per counter, including the
+     * {@code String} of its word.
+     */
+    static final int BYTES_PER_COUNTER = 128;
+
+    /**
+     * A word with its estimated count and the error bound of that count.
+     */
+    static final class Estimate extends SimpleImmutableEntry<String, Integer> {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Maximum amount by which the count overestimates the true count.
+         */
+        private final int error;
+
+        /**
+         * Constructor.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            the estimated count of the word
+         * @param error
+         *            the maximum overestimate of {@code count}
+         */
+        Estimate(String word, int count, int error) {
+            super(word, count);
+            this.error = error;
+        }
+
+        /**
+         * Returns the maximum amount by which the count overestimates the
+         * true count.
+         *
+         * @return the error bound
+         */
+        int error() {
+            return this.error;
+        }
+
+    }
+
+    /**
+     * Monitored words, in heap order on {@code counts}.
+     */
+    private final String[] words;
+
+    /**
+     * Count of each monitored word.
+     */
+    private final int[] counts;
+
+    /**
+     * Error of each monitored word.
+     */
+    private final int[] errors;
+
+    /**
+     * Hash of each monitored word.
+     */
+    private final int[] hashes;
+
+    /**
+     * Index slot of each monitored word.
+     */
+    private final int[] slotOf;
+
+    /**
+     * Index: 1 + heap position of a monitored word, or 0 for an empty slot.
+     */
+    private final int[] slots;
+
+    /**
+     * Number of counters in use.
+     */
+    private int size = 0;
+
+    /**
+     * Number of words counted.
+     */
+    private long total = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the number of counters
+     * @requires capacity > 0
+     */
+    SpaceSaving(int capacity) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.words = new String[capacity];
+        this.counts = new int[capacity];
+        this.errors = new int[capacity];
+        this.hashes = new int[capacity];
+        this.slotOf = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity) * 4];
+    }
+
+    /**
+     * Returns the number of counters that fit in the given memory budget.
+     *
+     * @param budget
+     *            the memory budget in bytes
+     * @return the number of counters, at least 1
+     */
+    static int capacityFor(long budget) {
+        return (int) Math.max(1,
+                Math.min(Integer.MAX_VALUE / 4, budget / BYTES_PER_COUNTER));
+    }
+
+    /**
+     * Hashes {@code text[start, end)}.
+     *
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return the hash
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index slot holding {@code text[start, end)}, or the empty
+     * slot where it would be inserted.
+     *
+     * @param h
+     *            the hash of the word
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return the slot
+     */
+    private int find(int h, CharSequence text, int start, int end) {
+        int mask = this.slots.length - 1;
+        int s = h & mask;
+        while (this.slots[s] != 0) {
+            int i = this.slots[s] - 1;
+            if (this.hashes[i] == h && this.holds(i, text, start, end)) {
+                return s;
+            }
+            s = (s + 1) & mask;
+        }
+        return s;
+    }
+
+    /**
+     * Tells whether the counter at heap position {@code i} monitors
+     * {@code text[start, end)}.
+     *
+     * @param i
+     *            the heap position
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return true iff the counter monitors the word
+     */
+    private boolean holds(int i, CharSequence text, int start, int end) {
+        String word = this.words[i];
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int j = 0; j < word.length(); j++) {
+            if (word.charAt(j) != text.charAt(start + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the word in index slot {@code s}, moving back the words after
+     * it in the same probe run so that no lookup is broken.
+     *
+     * @param s
+     *            the slot to clear
+     */
+    private void clearSlot(int s) {
+        int mask = this.slots.length - 1;
+        int hole = s;
+        int j = (hole + 1) & mask;
+        while (this.slots[j] != 0) {
+            int i = this.slots[j] - 1;
+            int home = this.hashes[i] & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                this.slots[hole] = this.slots[j];
+                this.slotOf[i] = hole;
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        this.slots[hole] = 0;
+    }
+
+    /**
+     * Exchanges the counters at heap positions {@code i} and {@code j}.
+     *
+     * @param i
+     *            a heap position
+     * @param j
+     *            another heap position
+     */
+    private void swap(int i, int j) {
+        String w = this.words[i];
+        this.words[i] = this.words[j];
+        this.words[j] = w;
+        int t = this.counts[i];
+        this.counts[i] = this.counts[j];
+        this.counts[j] = t;
+        t = this.errors[i];
+        this.errors[i] = this.errors[j];
+        this.errors[j] = t;
+        t = this.hashes[i];
+        this.hashes[i] = this.hashes[j];
+        this.hashes[j] = t;
+        t = this.slotOf[i];
+        this.slotOf[i] = this.slotOf[j];
+        this.slotOf[j] = t;
+        this.slots[this.slotOf[i]] = i + 1;
+        this.slots[this.slotOf[j]] = j + 1;
+    }
+
+    /**
+     * Restores the heap order after the count at {@code i} increased.
+     *
+     * @param i
+     *            the heap position whose count increased
+     */
+    private void siftDown(int i) {
+        int k = i;
+        int child = 2 * k + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && this.counts[child + 1] < this.counts[child]) {
+                child++;
+            }
+            if (this.counts[k] <= this.counts[child]) {
+                return;
+            }
+            this.swap(k, child);
+            k = child;
+            child = 2 * k + 1;
+        }
+    }
+
+    /**
+     * Restores the heap order after a counter was added at {@code i}.
+     *
+     * @param i
+     *            the heap position of the new counter
+     */
+    private void siftUp(int i) {
+        int k = i;
+        while (k > 0 && this.counts[(k - 1) / 2] > this.counts[k]) {
+            this.swap(k, (k - 1) / 2);
+            k = (k - 1) / 2;
+        }
+    }
+
+    /**
+     * Counts one occurrence of {@code text[start, end)}.
+     *
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @requires 0 <= start < end <= |text|
+     */
+    void count(CharSequence text, int start, int end) {
+        this.total++;
+        int h = hash(text, start, end);
+        int s = this.find(h, text, start, end);
+        if (this.slots[s] != 0) {
+            int i = this.slots[s] - 1;
+            this.counts[i]++;
+            this.siftDown(i);
+        } else {
+            String word = text.subSequence(start, end).toString();
+            int i;
+            if (this.size < this.words.length) {
+                i = this.size;
+                this.size++;
+                this.counts[i] = 1;
+                this.errors[i] = 0;
+            } else {
+                i = 0;
+                this.clearSlot(this.slotOf[i]);
+                s = this.find(h, text, start, end);
+                this.errors[i] = this.counts[i];
+                this.counts[i]++;
+            }
+            this.words[i] = word;
+            this.hashes[i] = h;
+            this.slotOf[i] = s;
+            this.slots[s] = i + 1;
+            if (i == 0) {
+                this.siftDown(i);
+            } else {
+                this.siftUp(i);
+            }
+        }
+    }
+
+    /**
+     * Starts monitoring a word whose count is known exactly, as when the
+     * counts of an exact counter are handed over. Its error is 0.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            its exact count
+     * @requires word is not monitored and not all counters are in use and
+     *           count > 0
+     */
+    void add(String word, int count) {
+        assert this.size < this.words.length
+                : "Violation of: not all counters are in use";
+        this.total += count;
+        int h = hash(word, 0, word.length());
+        int s = this.find(h, word, 0, word.length());
+        int i = this.size;
+        this.size++;
+        this.words[i] = word;
+        this.counts[i] = count;
+        this.errors[i] = 0;
+        this.hashes[i] = h;
+        this.slotOf[i] = s;
+        this.slots[s] = i + 1;
+        this.siftUp(i);
+    }
+
+    /**
+     * Counts words that are not monitored, as when the words of an exact
+     * counter that do not fit are dropped.
+     *
+     * @param count
+     *            the number of words
+     * @requires all counters are in use and each word dropped was counted
+     *           at most as many times as any monitored word
+     */
+    void addDropped(long count) {
+        this.total += count;
+    }
+
+    /**
+     * Returns the number of counters.
+     *
+     * @return the number of counters
+     */
+    int capacity() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the number of words counted.
+     *
+     * @return the number of words counted
+     */
+    long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the largest error any count can have: the smallest monitored
+     * count once all counters are in use, 0 before.
+     *
+     * @return the error bound
+     */
+    int errorBound() {
+        int bound = 0;
+        if (this.size == this.words.length) {
+            bound = this.counts[0];
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the estimates of all monitored words, in no particular order.
+     *
+     * @return the estimates
+     */
+    List<Estimate> estimates() {
+        List<Estimate> list = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            list.add(new Estimate(this.words[i], this.counts[i],
+                    this.errors[i]));
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,438 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counts words exactly with a bounded amount of heap. Words are counted in a
+ * {@code WordCounter} until its estimated size reaches the memory budget; the
+ * counts are then written, sorted by word, to a temporary "run" file and the
+ * counter is cleared. {@link #forEach(ObjIntConsumer)} k-way merges all runs,
+ * adding up the counts of each word, and reports the words in alphabetical
+ * order.
+ *
+ * <p>
+ * At most a fixed number of runs are open at once. When there are more, the
+ * oldest runs are first merged, that many at a time, into new runs, until
+ * few enough remain; so a small budget on a large input costs more passes
+ * over the runs rather than more file descriptors and buffers.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class SpillingWordCounter implements WordScanner.Tally, WordCounts,
+        Closeable {
+
+    /**
+     * Estimated number of bytes of heap used per distinct word in a
+     * {@code WordCounter}, including the {@code String} of the word.
+     */
+    static final int BYTES_PER_WORD = 96;
+
+    /**
+     * Size of the buffers of run files.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Default largest number of runs merged at once.
+     */
+    static final int MAX_FAN_IN = 64;
+
+    /**
+     * A run file being merged, positioned on its current word.
+     */
+    private static final class Run implements Closeable {
+
+        /**
+         * The contents of the run.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Number of words not yet read.
+         */
+        private int remaining;
+
+        /**
+         * The current word, {@code null} once the run is exhausted.
+         */
+        private String word;
+
+        /**
+         * The count of the current word.
+         */
+        private int count;
+
+        /**
+         * Constructor; positions the run on its first word.
+         *
+         * @param file
+         *            the run file
+         * @throws IOException
+         *             file read problem
+         */
+        Run(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), BUFFER_SIZE));
+            this.remaining = this.in.readInt();
+            this.advance();
+        }
+
+        /**
+         * Moves to the next word of the run.
+         *
+         * @throws IOException
+         *             file read problem
+         */
+        void advance() throws IOException {
+            if (this.remaining > 0) {
+                this.word = CountFiles.readWord(this.in);
+                this.count = this.in.readInt();
+                this.remaining--;
+            } else {
+                this.word = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+
+    }
+
+    /**
+     * The words counted since the last spill.
+     */
+    private final WordCounter counter = new WordCounter();
+
+    /**
+     * Number of distinct words at which the counter is spilled.
+     */
+    private final int spillSize;
+
+    /**
+     * The directory of the run files, {@code null} for the default
+     * temporary-file directory.
+     */
+    private final Path directory;
+
+    /**
+     * Largest number of runs merged at once.
+     */
+    private final int fanIn;
+
+    /**
+     * The run files not yet merged into another run.
+     */
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * Number of runs spilled from the counter.
+     */
+    private int spilledRuns = 0;
+
+    /**
+     * Number of runs written by merging other runs.
+     */
+    private int mergedRuns = 0;
+
+    /**
+     * Number of (word, count) pairs written to runs.
+     */
+    private long spilledWords = 0;
+
+    /**
+     * Number of bytes written to runs.
+     */
+    private long spilledBytes = 0;
+
+    /**
+     * Time spent merging, in milliseconds.
+     */
+    private long mergeMillis = 0;
+
+    /**
+     * Constructor, with runs in the default temporary-file directory, merged
+     * {@code MAX_FAN_IN} at a time.
+     *
+     * @param budget
+     *            the memory budget in bytes for the in-heap counter
+     */
+    SpillingWordCounter(long budget) {
+        this(budget, null, MAX_FAN_IN);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param budget
+     *            the memory budget in bytes for the in-heap counter
+     * @param directory
+     *            the directory of the run files, {@code null} for the
+     *            default temporary-file directory
+     * @param fanIn
+     *            the largest number of runs merged at once
+     * @requires fanIn > 1
+     */
+    SpillingWordCounter(long budget, Path directory, int fanIn) {
+        assert fanIn > 1 : "Violation of: fanIn > 1";
+        this.spillSize = (int) Math.max(1,
+                Math.min(Integer.MAX_VALUE / 2, budget / BYTES_PER_WORD));
+        this.directory = directory;
+        this.fanIn = fanIn;
+    }
+
+    /**
+     * Creates a new, empty run file and adds it to the runs, so that it is
+     * deleted by {@link #close()}.
+     *
+     * @return the run file
+     * @throws IOException
+     *             file creation problem
+     */
+    private Path newRun() throws IOException {
+        Path file;
+        if (this.directory == null) {
+            file = Files.createTempFile("tagcloud", ".run");
+        } else {
+            file = Files.createTempFile(this.directory, "tagcloud", ".run");
+        }
+        this.runs.add(file);
+        return file;
+    }
+
+    @Override
+    public void count(CharSequence text, int start, int end) {
+        this.counter.increment(text, start, end);
+        if (this.counter.size() >= this.spillSize) {
+            try {
+                this.spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the counter to a new run file, sorted by word, and clears it.
+     *
+     * @throws IOException
+     *             file write problem
+     */
+    private void spill() throws IOException {
+        String[] words = new String[this.counter.size()];
+        int[] n = new int[1];
+        this.counter.forEach((word, count) -> {
+            words[n[0]] = word;
+            n[0]++;
+        });
+        Arrays.sort(words);
+        Path file = this.newRun();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file),
+                        BUFFER_SIZE))) {
+            out.writeInt(words.length);
+            for (String word : words) {
+                CountFiles.writeWord(out, word);
+                out.writeInt(this.counter.get(word));
+            }
+            this.spilledBytes += out.size();
+        }
+        this.spilledWords += words.length;
+        this.spilledRuns++;
+        this.counter.clear();
+    }
+
+    /**
+     * Reports each distinct word counted with its total count, in
+     * alphabetical order, by merging the runs.
+     *
+     * @param action
+     *            the action to perform
+     * @throws IOException
+     *             file read or write problem
+     */
+    void merge(ObjIntConsumer<String> action) throws IOException {
+        if (this.counter.size() > 0) {
+            this.spill();
+        }
+        long start = System.currentTimeMillis();
+        while (this.runs.size() > this.fanIn) {
+            this.mergeOldest();
+        }
+        mergeRuns(this.runs, action);
+        this.mergeMillis += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Merges the {@code fanIn} oldest runs into a new run, and deletes them.
+     *
+     * @throws IOException
+     *             file read or write problem
+     */
+    private void mergeOldest() throws IOException {
+        List<Path> oldest = new ArrayList<>(this.runs.subList(0, this.fanIn));
+        Path file = this.newRun();
+        int[] words = new int[1];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file),
+                        BUFFER_SIZE))) {
+            out.writeInt(0);
+            mergeRuns(oldest, (word, count) -> {
+                try {
+                    CountFiles.writeWord(out, word);
+                    out.writeInt(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                words[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, words[0]),
+                    0);
+        }
+        this.runs.subList(0, this.fanIn).clear();
+        for (Path old : oldest) {
+            Files.delete(old);
+        }
+        this.mergedRuns++;
+    }
+
+    /**
+     * Reports each word of the given runs with its total count, in
+     * alphabetical order, by k-way merging them.
+     *
+     * @param files
+     *            the run files
+     * @param action
+     *            the action to perform
+     * @throws IOException
+     *             file read problem
+     */
+    private static void mergeRuns(List<Path> files,
+            ObjIntConsumer<String> action) throws IOException {
+        Queue<Run> queue = new PriorityQueue<>(Math.max(1, files.size()),
+                Comparator.comparing((Run r) -> r.word));
+        try {
+            for (Path file : files) {
+                Run r = new Run(file);
+                if (r.word != null) {
+                    queue.add(r);
+                } else {
+                    r.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                Run r = queue.poll();
+                String word = r.word;
+                int count = r.count;
+                next(queue, r);
+                while (!queue.isEmpty() && queue.peek().word.equals(word)) {
+                    r = queue.poll();
+                    count += r.count;
+                    next(queue, r);
+                }
+                action.accept(word, count);
+            }
+        } finally {
+            for (Run r : queue) {
+                r.close();
+            }
+        }
+    }
+
+    /**
+     * Advances the given run and puts it back in the queue, or closes it if
+     * it is exhausted.
+     *
+     * @param queue
+     *            the runs being merged
+     * @param r
+     *            the run to advance
+     * @throws IOException
+     *             file read problem
+     */
+    private static void next(Queue<Run> queue, Run r) throws IOException {
+        r.advance();
+        if (r.word != null) {
+            queue.add(r);
+        } else {
+            r.close();
+        }
+    }
+
+    /**
+     * Reports each distinct word counted with its total count, in
+     * alphabetical order.
+     *
+     * @param action
+     *            the action to perform
+     * @throws UncheckedIOException
+     *             if a run file cannot be read or written
+     */
+    @Override
+    public void forEach(ObjIntConsumer<String> action) {
+        try {
+            this.merge(action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of run files not yet merged into another run.
+     *
+     * @return the number of runs
+     */
+    int runs() {
+        return this.runs.size();
+    }
+
+    /**
+     * Returns a one line summary of the spills and merges so far.
+     *
+     * @return the summary
+     */
+    String statistics() {
+        return "Spilled " + this.spilledRuns + " runs (" + this.spilledWords
+                + " words, " + this.spilledBytes + " bytes); merged in "
+                + this.mergeMillis + " ms, through " + this.mergedRuns
+                + " intermediate runs.";
+    }
+
+    /**
+     * Deletes the run files.
+     *
+     * @throws IOException
+     *             file delete problem
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path file : this.runs) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
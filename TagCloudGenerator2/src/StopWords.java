@@ -0,0 +1,205 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The English stop-words: words so common that they would crowd any cloud.
+ * Words are looked up by their bytes, as reported by a {@code WordScanner},
+ * so they need not be decoded.
+ *
+ * <p>
+ * The words are kept in a perfect hash table, built once: each word is
+ * hashed once, the hash picks a bucket, and a displacement chosen per bucket
+ * when the table is built moves the words of the bucket to slots that no
+ * other word uses. So a lookup is one hash of the word, one mix of the hash
+ * with the displacement of its bucket, and one comparison with the only word
+ * that can be in the resulting slot.
+ *
+ * <p>
+ * Apostrophes separate words, so contractions such as "don't" reach the
+ * table as "don" and "t", which are stop-words as well.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class StopWords {
+
+    /**
+     * The stop-words.
+     */
+    private static final String[] WORDS = { "a", "about", "above", "after",
+            "again", "against", "ain", "all", "am", "an", "and", "any", "are",
+            "aren", "as", "at", "be", "because", "been", "before", "being",
+            "below", "between", "both", "but", "by", "can", "couldn", "d",
+            "did", "didn", "do", "does", "doesn", "doing", "don", "down",
+            "during", "each", "few", "for", "from", "further", "had",
+            "hadn", "has", "hasn", "have", "haven", "having", "he", "her",
+            "here", "hers", "herself", "him", "himself", "his", "how", "i",
+            "if", "in", "into", "is", "isn", "it", "its", "itself", "just",
+            "ll", "m", "ma", "me", "mightn", "more", "most", "mustn", "my",
+            "myself", "needn", "no", "nor", "not", "now", "o", "of", "off",
+            "on", "once", "only", "or", "other", "our", "ours", "ourselves",
+            "out", "over", "own", "re", "s", "same", "shan", "she", "should",
+            "shouldn", "so", "some", "such", "t", "than", "that", "the",
+            "their", "theirs", "them", "themselves", "then", "there",
+            "these", "they", "this", "those", "through", "to", "too",
+            "under", "until", "up", "ve", "very", "was", "wasn", "we",
+            "were", "weren", "what", "when", "where", "which", "while", "who",
+            "whom", "why", "will", "with", "won", "wouldn", "y", "you",
+            "your", "yours", "yourself", "yourselves" };
+
+    /**
+     * Offset basis of the FNV-1a hash.
+     */
+    private static final int BASIS = 0x811C9DC5;
+
+    /**
+     * Prime of the FNV-1a hash.
+     */
+    private static final int PRIME = 0x01000193;
+
+    /**
+     * Multiplier spreading a displacement over all bits.
+     */
+    private static final int GOLDEN = 0x9E3779B9;
+
+    /**
+     * Number of buckets; a power of two.
+     */
+    private static final int BUCKETS = Integer.highestOneBit(WORDS.length);
+
+    /**
+     * Number of slots; a power of two, at least twice the number of words.
+     */
+    private static final int SLOTS = 4 * BUCKETS;
+
+    /**
+     * The displacement of each bucket.
+     */
+    private static final int[] DISPLACEMENTS = new int[BUCKETS];
+
+    /**
+     * The word in each slot, {@code null} for an empty slot.
+     */
+    private static final byte[][] TABLE = new byte[SLOTS][];
+
+    static {
+        List<List<byte[]>> buckets = new ArrayList<>();
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (String w : WORDS) {
+            byte[] word = w.getBytes(StandardCharsets.US_ASCII);
+            buckets.get(hash(word, word.length) & (BUCKETS - 1)).add(word);
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int b = 0; b < BUCKETS; b++) {
+            order.add(b);
+        }
+        order.sort((x, y) -> buckets.get(y).size() - buckets.get(x).size());
+        for (int b : order) {
+            List<byte[]> words = buckets.get(b);
+            int d = 0;
+            while (!place(words, d)) {
+                d++;
+            }
+            DISPLACEMENTS[b] = d;
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private StopWords() {
+    }
+
+    /**
+     * Puts the given words in the slots given by the displacement
+     * {@code d}, if those slots are empty and distinct.
+     *
+     * @param words
+     *            the words of a bucket
+     * @param d
+     *            the displacement
+     * @return true iff the words were placed
+     */
+    private static boolean place(List<byte[]> words, int d) {
+        int[] slots = new int[words.size()];
+        for (int i = 0; i < slots.length; i++) {
+            byte[] w = words.get(i);
+            slots[i] = slot(hash(w, w.length), d);
+            if (TABLE[slots[i]] != null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slots[i]) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            TABLE[slots[i]] = words.get(i);
+        }
+        return true;
+    }
+
+    /**
+     * Hashes {@code word[0, length)} with FNV-1a.
+     *
+     * @param word
+     *            the bytes holding the word
+     * @param length
+     *            the length of the word
+     * @return the hash
+     */
+    static int hash(byte[] word, int length) {
+        int h = BASIS;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ word[i]) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the slot of a word of the given hash, given the displacement
+     * of its bucket.
+     *
+     * @param h
+     *            the hash of the word
+     * @param d
+     *            the displacement
+     * @return the slot
+     */
+    private static int slot(int h, int d) {
+        int x = h ^ (d * GOLDEN);
+        x *= GOLDEN;
+        return (x ^ (x >>> 16)) & (SLOTS - 1);
+    }
+
+    /**
+     * Tells whether {@code word[0, length)} is a stop-word.
+     *
+     * @param word
+     *            the bytes holding the word, in lower case
+     * @param length
+     *            the length of the word
+     * @param h
+     *            the hash of the word, as computed by
+     *            {@link #hash(byte[], int)}
+     * @return true iff the word is a stop-word
+     */
+    static boolean contains(byte[] word, int length, int h) {
+        byte[] w = TABLE[slot(h, DISPLACEMENTS[h & (BUCKETS - 1)])];
+        if (w == null || w.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (w[i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,362 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Generates a tag cloud for every file of a directory tree, and a corpus
+ * cloud of all of them together.
+ *
+ * <p>
+ * Files are counted by a fixed number of worker threads; files waiting for
+ * a worker are held in a bounded queue, and when it is full the thread
+ * listing the directory counts the next file itself, so listing never runs
+ * far ahead of counting. Each file is read once: its counts make its own
+ * cloud and are then added to the corpus counter of the worker, and the
+ * corpus counters of all workers are merged at the end.
+ *
+ * <p>
+ * The cloud of {@code in/a/b.txt} is written to {@code out/a/b.txt.html},
+ * and the corpus cloud to {@code out/corpus.html}.
+ *
+ * <p>
+ * With an index file, the counts of each file are added to a
+ * {@code CorpusIndex} instead, and files already in the index are not read
+ * again. Once the index is saved, the cloud of every document in it is
+ * weighted by TF-IDF, and the corpus cloud is made from the index.
+ *
+ * <p>
+ * Each file, and each cloud made at the end, is recorded by
+ * {@code TagCloudMetrics} as a run of its own.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class TagCloudBatch {
+
+    /**
+     * Name of the corpus cloud in the output directory.
+     */
+    static final String CORPUS = "corpus.html";
+
+    /**
+     * Number of waiting files per worker.
+     */
+    private static final int QUEUE_PER_WORKER = 2;
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final double MEGABYTE = 1 << 20;
+
+    /**
+     * The directory receiving the clouds.
+     */
+    private final Path out;
+
+    /**
+     * The number of words in each cloud.
+     */
+    private final int size;
+
+    /**
+     * The number of worker threads.
+     */
+    private final int workers;
+
+    /**
+     * The index file, {@code null} when not indexing.
+     */
+    private final Path indexFile;
+
+    /**
+     * The index, {@code null} when not indexing.
+     */
+    private CorpusIndex index = null;
+
+    /**
+     * The corpus counter of each thread that counted a file.
+     */
+    private final List<ByteWordCounter> corpus = new ArrayList<>();
+
+    /**
+     * The corpus counter of the current thread.
+     */
+    private final ThreadLocal<ByteWordCounter> threadCorpus = ThreadLocal
+            .withInitial(() -> {
+                ByteWordCounter m = new ByteWordCounter();
+                synchronized (this.corpus) {
+                    this.corpus.add(m);
+                }
+                return m;
+            });
+
+    /**
+     * The renderer of the current thread.
+     */
+    private final ThreadLocal<HtmlRenderer> renderer = ThreadLocal
+            .withInitial(HtmlRenderer::new);
+
+    /**
+     * Number of files whose cloud was written.
+     */
+    private final AtomicInteger files = new AtomicInteger();
+
+    /**
+     * Number of files that could not be read or whose cloud could not be
+     * written.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Number of bytes read.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            the directory receiving the clouds
+     * @param size
+     *            the number of words in each cloud
+     * @param workers
+     *            the number of worker threads
+     * @param indexFile
+     *            the index file, {@code null} for clouds of raw counts
+     * @requires workers > 0
+     */
+    TagCloudBatch(Path out, int size, int workers, Path indexFile) {
+        assert workers > 0 : "Violation of: workers > 0";
+        this.out = out;
+        this.size = size;
+        this.workers = workers;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Counts the words of the given file, which may be gzip compressed.
+     *
+     * @param file
+     *            the file
+     * @return the counter of its words
+     * @throws IOException
+     *             file read problem
+     */
+    private ByteWordCounter count(Path file) throws IOException {
+        ByteWordCounter m = new ByteWordCounter();
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            this.bytes.addAndGet(ch.size());
+            if (GzipInput.isGzip(ch)) {
+                new GzipInput(ch).scan(m);
+            } else {
+                WordScanner.scan(ch, 0, ch.size(), m);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Writes the cloud of the given counts, and ends its run.
+     *
+     * @param m
+     *            the counts
+     * @param distinct
+     *            the number of distinct words of {@code m}
+     * @param title
+     *            the name shown in the cloud
+     * @param target
+     *            the HTML file to write
+     * @param run
+     *            the run of the cloud
+     * @throws IOException
+     *             file write problem
+     */
+    private void write(WordCounts m, long distinct, String title,
+            Path target, TagCloudMetrics.Run run) throws IOException {
+        this.write(TagCloudGenerator.getWordsFrequency(m, this.size),
+                distinct, title, target, run);
+    }
+
+    /**
+     * Writes the cloud of the given words, and ends its run.
+     *
+     * @param top
+     *            the words and their values, with larger values in the
+     *            front
+     * @param distinct
+     *            the number of distinct words counted, -1 if not known
+     * @param title
+     *            the name shown in the cloud
+     * @param target
+     *            the HTML file to write
+     * @param run
+     *            the run of the cloud
+     * @throws IOException
+     *             file write problem
+     */
+    private void write(List<Map.Entry<String, Integer>> top, long distinct,
+            String title, Path target, TagCloudMetrics.Run run)
+            throws IOException {
+        int[] maxAndMin = new int[2];
+        List<Map.Entry<String, Integer>> s = TagCloudGenerator
+                .getWordsAlphabetical(top, maxAndMin);
+        Files.createDirectories(target.getParent());
+        HtmlRenderer renderer = this.renderer.get();
+        long before = renderer.written();
+        try (FileChannel html = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            renderer.render(html, s, title, maxAndMin[0], maxAndMin[1]);
+        }
+        run.end(distinct, s.size(), renderer.written() - before);
+    }
+
+    /**
+     * Makes the cloud of one file and adds its counts to the corpus counter
+     * of the current thread, or adds the file to the index.
+     *
+     * @param in
+     *            the input directory
+     * @param file
+     *            the file, in {@code in}
+     */
+    private void process(Path in, Path file) {
+        Path relative = in.relativize(file);
+        try {
+            TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+            ByteWordCounter m = this.count(file);
+            if (this.index != null) {
+                this.index.add(relative.toString(), m);
+                run.end(m.size(), 0, 0);
+            } else {
+                this.write(m, m.size(), relative.toString(),
+                        this.out.resolve(relative.toString() + ".html"), run);
+                this.threadCorpus.get().addAll(m);
+            }
+            this.files.incrementAndGet();
+        } catch (IOException | UncheckedIOException
+                | IllegalStateException e) {
+            System.err.println("Error processing " + relative + ".");
+            this.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Makes the clouds of all regular files in the tree of {@code in}, then
+     * the corpus cloud, and reports the throughput. Files in the output
+     * directory, and the index file, are skipped, so they may be inside
+     * {@code in}.
+     *
+     * @param in
+     *            the input directory
+     * @throws IOException
+     *             if the directory cannot be listed or the corpus cloud
+     *             cannot be written
+     * @throws InterruptedException
+     *             if interrupted while waiting for the workers
+     */
+    void run(Path in) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(this.out);
+        Path outTree = this.out.toAbsolutePath().normalize();
+        Path indexPath = null;
+        if (this.indexFile != null) {
+            this.index = CorpusIndex.open(this.indexFile);
+            indexPath = this.indexFile.toAbsolutePath().normalize();
+        }
+        int indexed = 0;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(this.workers,
+                this.workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_PER_WORKER * this.workers),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try (Stream<Path> tree = Files.walk(in)) {
+            Iterator<Path> it = tree.filter(Files::isRegularFile).iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                Path p = file.toAbsolutePath().normalize();
+                if (p.startsWith(outTree) || p.equals(indexPath)) {
+                    continue;
+                }
+                String name = in.relativize(file).toString();
+                if (this.index != null && this.index.contains(name)) {
+                    indexed++;
+                } else {
+                    pool.execute(() -> this.process(in, file));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        if (this.index != null) {
+            this.writeWeighted(in);
+        } else {
+            ByteWordCounter total = new ByteWordCounter();
+            for (ByteWordCounter m : this.corpus) {
+                if (m.size() > total.size()) {
+                    m.addAll(total);
+                    total = m;
+                } else {
+                    total.addAll(m);
+                }
+            }
+            this.write(total, total.size(), in.toString(),
+                    this.out.resolve(CORPUS), TagCloudMetrics.beginRun());
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        System.out.println(String.format(
+                "Processed %d files (%d failed, %d already indexed), %d bytes"
+                        + " in %.2f s: %.1f files/s, %.1f MB/s.",
+                this.files.get(), this.failures.get(), indexed,
+                this.bytes.get(),
+                seconds, this.files.get() / seconds,
+                this.bytes.get() / MEGABYTE / seconds));
+    }
+
+    /**
+     * Saves the index, then writes the TF-IDF weighted cloud of every
+     * document in it and the corpus cloud of its total counts.
+     *
+     * @param in
+     *            the input directory
+     * @throws IOException
+     *             if the index or a cloud cannot be written
+     */
+    private void writeWeighted(Path in) throws IOException {
+        this.index.save(this.indexFile);
+        CorpusIndex saved = CorpusIndex.open(this.indexFile);
+        List<List<Map.Entry<String, Integer>>> top = saved
+                .topWeighted(this.size);
+        for (int d = 0; d < saved.documents(); d++) {
+            String name = saved.document(d);
+            this.write(top.get(d), -1, name, this.out.resolve(name + ".html"),
+                    TagCloudMetrics.beginRun());
+        }
+        WordCounter totals = saved.totals();
+        this.write(totals, totals.size(), in.toString(),
+                this.out.resolve(CORPUS), TagCloudMetrics.beginRun());
+    }
+
+}
@@ -1,17 +1,26 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
 import java.util.Scanner;
-import java.util.Set;
 
 /**
  * The program generates a tag cloud from a given text file.
@@ -31,17 +40,17 @@ public final class TagCloudGenerator {
     /**
      * Definition of whitespace separators.
      */
-    private static final String SEPARATORS = " \t\n\r,-.!?[]\"';:/`()*";
+    static final String SEPARATORS = " \t\n\r,-.!?[]\"';:/`()*";
 
     /**
      * Maximum font size.
      */
-    private static final int MAX_FONT = 48;
+    static final int MAX_FONT = 48;
 
     /**
      * Minimum font size.
      */
-    private static final int MIN_FONT = 11;
+    static final int MIN_FONT = 11;
 
     /**
      * Compare {@code Map.Pair<String,Integer>}s in alphabetical order according
@@ -64,7 +73,7 @@ public final class TagCloudGenerator {
      * Compare {@code Map.Pair<String,Integer>}s in alphabetical order according
      * to the keys.
      */
-    private static class MapPairValueLT
+    static class MapPairValueLT
             implements Comparator<Map.Entry<String, Integer>> {
         @Override
         public int compare(Map.Entry<String, Integer> o1,
@@ -156,135 +165,292 @@ public final class TagCloudGenerator {
     }
 
     /**
-     * Generates a map containing all the words read from an input file and
-     * their corresponding counts.
+     * Generates a counter of all the words read from an input file and their
+     * corresponding counts.
      *
      * @param in
      *            the input stream
-     * @return the map of words and their count
+     * @return the counter of words and their count
      * @throws IOException
      *             string read problem
      */
-    private static Map<String, Integer> generateMap(BufferedReader in)
+    private static WordCounter generateMap(BufferedReader in)
             throws IOException {
-        Map<String, Integer> m = new HashMap<>();
+        WordCounter m = new WordCounter();
+        countWords(in, m::increment);
+        return m;
+    }
+
+    /**
+     * Counts all the words read from an input file. The characters read,
+     * with one per line break, are recorded as the bytes scanned.
+     *
+     * @param in
+     *            the input stream
+     * @param m
+     *            where the words are counted
+     * @throws IOException
+     *             string read problem
+     */
+    private static void countWords(BufferedReader in, WordScanner.Tally m)
+            throws IOException {
+        long chars = 0;
+        long lines = 0;
+        long tokens = 0;
         String str = in.readLine();
         while (str != null) {
+            chars += str.length() + 1;
+            lines++;
             str = str.toLowerCase();
             int position = 0;
             while (position < str.length()) {
                 String word = nextWordOrSeparator(str, position);
                 if (SEPARATORS.indexOf(word.charAt(0)) < 0) {
-                    if (m.containsKey(word)) {
-                        int x = m.get(word);
-                        m.put(word, x + 1);
-                    } else {
-                        m.put(word, 1);
-                    }
+                    m.count(word, 0, word.length());
+                    tokens++;
                 }
                 position += word.length();
             }
             str = in.readLine();
         }
+        TagCloudMetrics.scanned(chars, lines, tokens);
+    }
+
+    /**
+     * Counts all the words of an input file, which is either a
+     * {@code FileChannel} on a regular file, a {@code GzipInput}, or a
+     * {@code BufferedReader}.
+     *
+     * @param in
+     *            the input file
+     * @param m
+     *            where the words are counted
+     * @throws IOException
+     *             file read problem
+     */
+    private static void countWords(Closeable in, WordScanner.Tally m)
+            throws IOException {
+        if (in instanceof FileChannel) {
+            FileChannel channel = (FileChannel) in;
+            WordScanner.scan(channel, 0, channel.size(),
+                    WordScanner.counting(m));
+        } else if (in instanceof GzipInput) {
+            ((GzipInput) in).scan(WordScanner.counting(m));
+        } else {
+            countWords((BufferedReader) in, m);
+        }
+    }
+
+    /**
+     * Generates a counter of all the words in an input file and their
+     * corresponding counts, scanning the file through memory mapped windows.
+     * Produces the same counts as {@link #generateMap(BufferedReader)} on
+     * UTF-8 text, but words are counted by their bytes and decoded only once
+     * selected.
+     *
+     * @param in
+     *            the input file
+     * @return the counter of words and their count
+     * @throws IOException
+     *             file read problem
+     */
+    static ByteWordCounter generateMap(FileChannel in)
+            throws IOException {
+        ByteWordCounter m = new ByteWordCounter();
+        WordScanner.scan(in, 0, in.size(), m);
+        return m;
+    }
+
+    /**
+     * Generates a counter of all the words in a gzip compressed input file
+     * and their corresponding counts, counting while the file is inflated.
+     *
+     * @param in
+     *            the input file
+     * @return the counter of words and their count
+     * @throws IOException
+     *             file read problem, or the file is not valid gzip
+     */
+    private static ByteWordCounter generateMap(GzipInput in)
+            throws IOException {
+        ByteWordCounter m = new ByteWordCounter();
+        in.scan(m);
+        return m;
+    }
+
+    /**
+     * Reports all the words of an input file, which is either a
+     * {@code FileChannel} on a regular file, a {@code GzipInput}, or a
+     * {@code BufferedReader}, to the given sink, dropping the words longer
+     * than {@code maxLength} bytes.
+     *
+     * @param in
+     *            the input file
+     * @param sink
+     *            receiver of the words found
+     * @param maxLength
+     *            the length in bytes of the longest word reported,
+     *            {@code WordScanner.UNBOUNDED} for exact counting
+     * @throws IOException
+     *             file read problem
+     */
+    private static void scan(Closeable in, WordScanner.Sink sink,
+            int maxLength) throws IOException {
+        if (in instanceof FileChannel) {
+            FileChannel channel = (FileChannel) in;
+            WordScanner.scan(channel, 0, channel.size(), sink, maxLength);
+        } else if (in instanceof GzipInput) {
+            ((GzipInput) in).scan(sink, maxLength);
+        } else {
+            countWords((BufferedReader) in, (text, start, end) -> {
+                byte[] word = text.subSequence(start, end).toString()
+                        .getBytes(StandardCharsets.UTF_8);
+                if (word.length <= maxLength) {
+                    sink.word(word, word.length);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reports all the words of an input file to the given sink through the
+     * normalization stage, dropping stop-words and stemming the others.
+     *
+     * @param in
+     *            the input file
+     * @param sink
+     *            receiver of the normalized words
+     * @param cacheSize
+     *            the number of entries of the stem cache
+     * @param maxLength
+     *            the length in bytes of the longest word reported,
+     *            {@code WordScanner.UNBOUNDED} for exact counting
+     * @throws IOException
+     *             file read problem
+     */
+    private static void countNormalized(Closeable in, WordScanner.Sink sink,
+            int cacheSize, int maxLength) throws IOException {
+        NormalizingSink normalizer = new NormalizingSink(sink, cacheSize);
+        scan(in, normalizer, maxLength);
+        System.out.println(normalizer.statistics());
+    }
+
+    /**
+     * Generates a counter of all the n-grams of an input file, which is
+     * either a {@code FileChannel} on a regular file, a {@code GzipInput}, or
+     * a {@code BufferedReader}, and their corresponding counts.
+     *
+     * @param in
+     *            the input file
+     * @param n
+     *            the number of words per n-gram
+     * @param cacheSize
+     *            the number of entries of the stem cache, 0 to make n-grams
+     *            of the words as they are
+     * @return the counter of n-grams and their count
+     * @throws IOException
+     *             file read problem
+     */
+    private static ByteWordCounter generateNGrams(Closeable in, int n,
+            int cacheSize) throws IOException {
+        ByteWordCounter m = new ByteWordCounter();
+        NGramSink sink = new NGramSink(m, n);
+        if (cacheSize > 0) {
+            countNormalized(in, sink, cacheSize, WordScanner.UNBOUNDED);
+        } else {
+            scan(in, sink, WordScanner.UNBOUNDED);
+        }
         return m;
     }
 
     /**
-     * Generates a sorting machine containing the top words in a map.
+     * Sorts the given top words in alphabetical order, and records the
+     * largest and smallest of their counts. A cloud of 0 or 1 words has
+     * exactly that many words; {@code arr} is left unchanged when there are
+     * none.
      *
      * @param m
-     *            the map to get words from
-     * @param size
-     *            the number of elements to add in the sorting machine
+     *            the top words, sorted with the word count
      * @param arr
-     *            the array containing the maximum and minimum occurrences of
-     *            the words
-     * @return the sorting machine of the top words in the file
+     *            the array receiving the maximum (arr[0]) and minimum (arr[1])
+     *            occurrences of the words
+     * @return the list of the top words in alphabetical order
+     * @updates arr
      */
-    private static List<Map.Entry<String, Integer>> getWordsAlphabetical(
-            List<Map.Entry<String, Integer>> m, int size, int[] arr) {
+    static List<Map.Entry<String, Integer>> getWordsAlphabetical(
+            List<Map.Entry<String, Integer>> m, int[] arr) {
         Comparator<Map.Entry<String, Integer>> cs = new MapPairKeyLT();
-        List<Map.Entry<String, Integer>> s = new ArrayList<>();
-        if (m.size() != 0) {
-            Map.Entry<String, Integer> p;
-            if (m.size() == 1) {
-                p = m.remove(0);
-                s.add(p);
-            } else {
-                int size2 = size;
-                if (size > m.size()) {
-                    size2 = m.size();
-                }
-                p = m.remove(0);
-                s.add(p);
-                arr[0] = p.getValue();
-                for (int i = 1; i < size2 - 1; i++) {
-                    p = m.remove(0);
-                    s.add(p);
-                }
-                p = m.remove(0);
-                s.add(p);
-                arr[1] = p.getValue();
-                s.sort(cs);
-            }
+        List<Map.Entry<String, Integer>> s = new ArrayList<>(m);
+        if (m.size() > 0) {
+            arr[0] = m.get(0).getValue();
+            arr[1] = m.get(m.size() - 1).getValue();
+            s.sort(cs);
         }
         return s;
     }
 
     /**
-     * Sort words by their counts, with more counts being in the front.
+     * Selects the {@code size} words with the most counts, keeping only a
+     * heap of the best {@code size} words seen so far while scanning the
+     * counter. Words below the counter's {@code topThreshold} are skipped,
+     * and a map pair is only created for a word that enters the heap; a
+     * {@code ByteWordCounter} selects by slot, creating pairs only for the
+     * words selected.
      *
      * @param m
-     *            the map to sort
-     * @clears m
-     * @return sorting machine of map pair sorted with the word count
+     *            the counts to select from
+     * @param size
+     *            the number of words to select
+     * @return the selected words sorted with the word count, with more counts
+     *         being in the front
      */
-    private static List<Map.Entry<String, Integer>> getWordsFrequency(
-            Set<Map.Entry<String, Integer>> m) {
+    static List<Map.Entry<String, Integer>> getWordsFrequency(
+            WordCounts m, int size) {
+        if (m instanceof ByteWordCounter) {
+            return ((ByteWordCounter) m).top(size);
+        }
         Comparator<Map.Entry<String, Integer>> cs = new MapPairValueLT();
         List<Map.Entry<String, Integer>> s = new ArrayList<>();
-        Iterator<Map.Entry<String, Integer>> itr = m.iterator();
-        while (itr.hasNext()) {
-            Map.Entry<String, Integer> p = itr.next();
-            s.add(p);
+        if (size > 0) {
+            Queue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(
+                    cs.reversed());
+            m.forEachAtLeast(m.topThreshold(size), (word, count) -> {
+                if (heap.size() < size) {
+                    heap.add(new SimpleImmutableEntry<>(word, count));
+                } else if (count >= heap.peek().getValue()) {
+                    Map.Entry<String, Integer> p = new SimpleImmutableEntry<>(
+                            word, count);
+                    if (cs.compare(p, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(p);
+                    }
+                }
+            });
+            s.addAll(heap);
+            s.sort(cs);
         }
-        s.sort(cs);
         return s;
     }
 
     /**
-     * Output the generated tag cloud to an HTML file.
+     * Selects the {@code size} words with the largest estimated counts.
      *
-     * @param out
-     *            the output stream
-     * @param s
-     *            the sorting machine of words and their counts to print
-     * @param file
-     *            the name of the input file
-     * @param max
-     *            the count of word that appears the most
-     * @param min
-     *            the count of word that appears the least
+     * @param summary
+     *            the approximate counts to select from
+     * @param size
+     *            the number of words to select
+     * @return the selected words, with their error bounds, sorted with the
+     *         estimated word count, with more counts being in the front
      */
-    private static void printHTML(PrintWriter out,
-            List<Map.Entry<String, Integer>> s, String file, int max, int min) {
-        out.println("<html> <head>");
-        out.println(
-                "<title>Top " + s.size() + " words in " + file + "</title>");
-        out.println(
-                "<link href=\"http://cse.osu.edu/software/2231/web-sw2/assignments/"
-                        + "projects/tag-cloud-generator/data/tagcloud.css\""
-                        + " rel=\"stylesheet\" type=\"text/css\">");
-        out.println("</head> <body>");
-        out.println("<h2>Top " + s.size() + " words in " + file + "</h2>");
-        out.println("<hr>");
-        out.println("<div class =\"cdiv\">");
-        out.println("<p class=\"cbox\">");
-        while (s.size() > 0) {
-            Map.Entry<String, Integer> p = s.remove(0);
-            printWord(p, out, max, min);
-        }
-        out.println("</p> </div> </body> </html>");
+    private static List<Map.Entry<String, Integer>> getEstimatedWordsFrequency(
+            SpaceSaving summary, int size) {
+        List<Map.Entry<String, Integer>> s = new ArrayList<>(
+                summary.estimates());
+        s.sort(new MapPairValueLT());
+        if (s.size() > size) {
+            s = new ArrayList<>(s.subList(0, size));
+        }
+        return s;
     }
 
     /**
@@ -314,87 +480,616 @@ public final class TagCloudGenerator {
     }
 
     /**
-     * Output a word.
+     * Computes the font size of a word from its count.
+     *
+     * @param count
+     *            the count of the word
+     * @param max
+     *            the count of word that appears the most
+     * @param min
+     *            the count of word that appears the least
+     * @return the font size, between {@code MIN_FONT} and {@code MAX_FONT}
+     */
+    static int fontSize(int count, int max, int min) {
+        return fontSize(count, max, min, MIN_FONT, MAX_FONT);
+    }
+
+    /**
+     * Computes the font size of a word from its count, within the given
+     * range of font sizes.
      *
-     * @param p
-     *            the map pair of word an its count to print
-     * @param out
-     *            the output stream
+     * @param count
+     *            the count of the word
      * @param max
      *            the count of word that appears the most
      * @param min
      *            the count of word that appears the least
+     * @param minFont
+     *            the font size of the word that appears the least
+     * @param maxFont
+     *            the font size of the word that appears the most
+     * @return the font size, between {@code minFont} and {@code maxFont}
      */
-    private static void printWord(Map.Entry<String, Integer> p, PrintWriter out,
-            int max, int min) {
+    static int fontSize(int count, int max, int min, int minFont,
+            int maxFont) {
         int font;
         if (max != min) {
-            font = (MAX_FONT - MIN_FONT) * (p.getValue() - min) / (max - min)
-                    + MIN_FONT;
+            font = (maxFont - minFont) * (count - min) / (max - min)
+                    + minFont;
         } else {
-            font = (MAX_FONT + MIN_FONT) / 2;
+            font = (maxFont + minFont) / 2;
+        }
+        return font;
+    }
+
+    /**
+     * Counts the words of an input file, reusing the counts in a snapshot of
+     * an earlier run so that only the bytes appended since are read, and
+     * updates the snapshot.
+     *
+     * @param in
+     *            the input file
+     * @param inPath
+     *            the path of the input file
+     * @param snapshotFile
+     *            the snapshot file
+     * @return the counter of words and their count
+     * @throws IOException
+     *             file read or write problem
+     */
+    private static WordCounter countIncrementally(FileChannel in, Path inPath,
+            Path snapshotFile) throws IOException {
+        CountSnapshot snapshot = CountSnapshot.load(snapshotFile);
+        String name = inPath.toAbsolutePath().normalize().toString();
+        if (!snapshot.isResumable(in, name)) {
+            System.out.println("Input changed since the snapshot; "
+                    + "counting from the start.");
+            snapshot.reset(name);
+        }
+        long read = snapshot.update(in, name);
+        snapshot.save(snapshotFile);
+        System.out.println("Counted " + read + " new bytes.");
+        WordCounter m = snapshot.counts(name);
+        snapshot.countTail(in, name, m::increment);
+        return m;
+    }
+
+    /**
+     * Keeps the tag cloud of a growing input file up to date until
+     * interrupted.
+     *
+     * @param file
+     *            the opened input file, which is closed
+     * @param inPath
+     *            the path of the input file
+     * @param outPath
+     *            the path of the HTML file to keep up to date
+     * @param num
+     *            the number of words in the cloud
+     * @param debounce
+     *            the debounce interval in milliseconds
+     */
+    private static void watch(Closeable file, Path inPath, Path outPath,
+            int num, int debounce) {
+        close(file);
+        System.out.println("Watching " + inPath + "; interrupt to stop.");
+        TagCloudMetrics.register();
+        try {
+            new TagCloudWatcher(inPath, outPath, num, debounce).run();
+        } catch (IOException e) {
+            System.err.println("Error watching file.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of distinct words of a counter, for the metrics of
+     * a run.
+     *
+     * @param map
+     *            the counter, {@code null} if counting was approximate
+     * @return the number of distinct words, -1 if not known
+     */
+    private static long distinctWords(WordCounts map) {
+        if (map instanceof ByteWordCounter) {
+            return ((ByteWordCounter) map).size();
+        } else if (map instanceof WordCounter) {
+            return ((WordCounter) map).size();
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a preview of the tag cloud of an input file, estimated from a
+     * random sample of its blocks, asking the user for the number of words.
+     * The estimated counts are printed with their margins.
+     *
+     * @param in
+     *            the user input
+     * @param file
+     *            the opened input file, uncompressed
+     * @param html
+     *            the output file
+     * @param inFile
+     *            the name of the input file
+     * @param percent
+     *            the percentage of the blocks to sample
+     */
+    private static void preview(Scanner in, FileChannel file,
+            FileChannel html, String inFile, int percent) {
+        TagCloudMetrics.register();
+        TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+        SampledWordCount sample = new SampledWordCount(percent,
+                SampledWordCount.BLOCK_SIZE, new Random());
+        long begin = System.nanoTime();
+        try {
+            sample.run(file);
+        } catch (IOException e) {
+            System.err.println("Error reading from file.");
+            return;
+        }
+        System.out.println("Sampled " + sample.sampled() + " of "
+                + sample.blocks() + " blocks in "
+                + (System.nanoTime() - begin) / 1000000 + " ms.");
+        int num = getNonNegativeInteger(in);
+        List<SampledWordCount.Estimate> estimates = sample.estimates();
+        List<Map.Entry<String, Integer>> s = new ArrayList<>(
+                estimates.subList(0, Math.min(num, estimates.size())));
+        for (Map.Entry<String, Integer> p : s) {
+            System.out.println(p.getKey() + ": ~" + p.getValue() + " +/- "
+                    + ((SampledWordCount.Estimate) p).margin());
+        }
+        System.out.println("Counts are estimates, each within its margin of "
+                + "the true count with 95% confidence; "
+                + SampledWordCount.uncertain(estimates, num)
+                + " of the words might not be in the true top " + num + ".");
+        int[] maxAndMin = new int[2];
+        List<Map.Entry<String, Integer>> s2 = getWordsAlphabetical(s,
+                maxAndMin);
+        HtmlRenderer renderer = new HtmlRenderer();
+        try {
+            renderer.render(html, s2, inFile, maxAndMin[0], maxAndMin[1]);
+        } catch (IOException e) {
+            System.err.println("Error writing to file.");
+        }
+        run.end(-1, s2.size(), renderer.written());
+    }
+
+    /**
+     * Keeps the tag cloud of the last minutes of a live stream up to date,
+     * asking the user for the output file and the number of words.
+     *
+     * @param in
+     *            the user input
+     * @param inPath
+     *            the input file or stream
+     * @param minutes
+     *            the length of the window in minutes
+     */
+    private static void window(Scanner in, Path inPath, int minutes) {
+        System.out.println("Please enter the name of the output file: ");
+        String outFile = in.nextLine();
+        int num = getNonNegativeInteger(in);
+        System.out.println("Following " + inPath + "; interrupt to stop.");
+        TagCloudMetrics.register();
+        try {
+            new WindowedTagCloud(inPath, Paths.get(outFile), num, minutes)
+                    .run();
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Error following stream.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes the tag cloud of the merged counts of the partial-count files of
+     * a directory, asking the user for the output file and the number of
+     * words.
+     *
+     * @param in
+     *            the user input
+     * @param dir
+     *            the directory of partial-count files
+     */
+    private static void merge(Scanner in, String dir) {
+        System.out.println("Please enter the name of the output file: ");
+        String outFile = in.nextLine();
+        int num = getNonNegativeInteger(in);
+        TagCloudMetrics.register();
+        TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+        try {
+            List<Path> files = PartialCounts.list(Paths.get(dir));
+            long start = System.currentTimeMillis();
+            List<Map.Entry<String, Integer>> s = getWordsFrequency(
+                    new PartialCounts(files), num);
+            System.out.println("Merged " + files.size()
+                    + " partial-count files in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            int[] maxAndMin = new int[2];
+            List<Map.Entry<String, Integer>> s2 = getWordsAlphabetical(s,
+                    maxAndMin);
+            HtmlRenderer renderer = new HtmlRenderer();
+            try (FileChannel html = FileChannel.open(Paths.get(outFile),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                renderer.render(html, s2, dir, maxAndMin[0], maxAndMin[1]);
+            }
+            run.end(-1, s2.size(), renderer.written());
+        } catch (IOException | UncheckedIOException
+                | InvalidPathException e) {
+            System.err.println("Error merging partial counts.");
+        }
+    }
+
+    /**
+     * Serves tag clouds over HTTP on the loopback interface until the
+     * process is stopped.
+     *
+     * @param options
+     *            the command line options
+     */
+    private static void serve(TagCloudOptions options) {
+        TagCloudMetrics.register();
+        try {
+            TagCloudServer server = new TagCloudServer(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                            options.serve()),
+                    options.cache());
+            server.start();
+            System.out.println("Serving tag clouds on http://localhost:"
+                    + server.port() + TagCloudServer.CLOUD + ".");
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes a tag cloud for each file in a directory tree and one for the
+     * whole tree, asking the user for the output directory and the number
+     * of words.
+     *
+     * @param in
+     *            the user input
+     * @param inPath
+     *            the input directory
+     * @param options
+     *            the command line options
+     */
+    private static void batch(Scanner in, Path inPath,
+            TagCloudOptions options) {
+        System.out.println("Please enter the name of the output directory: ");
+        String outDir = in.nextLine();
+        int num = getNonNegativeInteger(in);
+        TagCloudMetrics.register();
+        try {
+            Path index = null;
+            if (options.index() != null) {
+                index = Paths.get(options.index());
+            }
+            new TagCloudBatch(Paths.get(outDir), num, options.workers(),
+                    index).run(inPath);
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Error processing directory.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the exact counts of the input to a partial-count file.
+     *
+     * @param map
+     *            the counts, {@code null} if they are only approximate
+     * @param file
+     *            the name of the partial-count file
+     */
+    private static void writePartial(WordCounts map, String file) {
+        if (map == null) {
+            System.err.println("Partial counts need exact counting.");
+            return;
+        }
+        try {
+            PartialCounts.write(map, Paths.get(file));
+        } catch (IOException | UncheckedIOException
+                | InvalidPathException e) {
+            System.err.println("Error writing partial counts.");
+        }
+    }
+
+    /**
+     * Closes a file, reporting a failure to do so.
+     *
+     * @param file
+     *            the file to close
+     */
+    private static void close(Closeable file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("Error closing file.");
+        }
+    }
+
+    /**
+     * Deletes the run files of the given counter, if any.
+     *
+     * @param spilling
+     *            the counter, or {@code null}
+     */
+    private static void closeRuns(SpillingWordCounter spilling) {
+        if (spilling != null) {
+            try {
+                spilling.close();
+            } catch (IOException e) {
+                System.err.println("Error deleting temporary files.");
+            }
         }
-        out.println("<span style=\"cursor:default\" class=\"f" + font
-                + "\" title=\"count: " + p.getValue() + "\">" + p.getKey()
-                + "</span>");
     }
 
     /**
      * Main method.
      *
      * @param args
-     *            the command line arguments
+     *            the command line arguments, see {@code TagCloudOptions}
      */
     public static void main(String[] args) {
+        TagCloudOptions options;
+        try {
+            options = TagCloudOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        if (options.serve() > 0) {
+            serve(options);
+            return;
+        }
         Scanner in = new Scanner(System.in);
+        if (options.merge() != null) {
+            merge(in, options.merge());
+            in.close();
+            return;
+        }
         System.out.println("Please enter the name of the input file: ");
         String inFile = in.nextLine();
-        BufferedReader file;
+        Path inPath;
         try {
-            file = new BufferedReader(new FileReader(inFile));
-        } catch (IOException e) {
+            inPath = Paths.get(inFile);
+        } catch (InvalidPathException e) {
             System.err.println("Error opening file.");
             in.close();
             return;
         }
-        System.out.println("Please enter the name of the output file: ");
-        String outFile = in.nextLine();
-        PrintWriter html;
+        if (Files.isDirectory(inPath)) {
+            try {
+                options.checkDirectory();
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage());
+                in.close();
+                return;
+            }
+            batch(in, inPath, options);
+            in.close();
+            return;
+        }
+        if (options.window() > 0) {
+            window(in, inPath, options.window());
+            in.close();
+            return;
+        }
+        Closeable file;
         try {
-            html = new PrintWriter(new BufferedWriter(new FileWriter(outFile)));
+            if (Files.isRegularFile(inPath)) {
+                FileChannel channel = FileChannel.open(inPath,
+                        StandardOpenOption.READ);
+                file = channel;
+                if (GzipInput.isGzip(channel)) {
+                    file = new GzipInput(channel);
+                }
+            } else {
+                file = new BufferedReader(new FileReader(inFile));
+            }
         } catch (IOException e) {
-            System.err.println("Error creating file.");
+            System.err.println("Error opening file.");
             in.close();
+            return;
+        }
+        try {
+            options.checkFile(file instanceof FileChannel);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            in.close();
+            close(file);
+            return;
+        }
+        System.out.println("Please enter the name of the output file: ");
+        String outFile = in.nextLine();
+        boolean several = !options.clouds().isEmpty() && options.watch() == 0
+                && options.sample() == 0;
+        FileChannel html = null;
+        if (!several) {
             try {
-                file.close();
-            } catch (IOException e1) {
-                System.err.println("Error closing file.");
+                html = FileChannel.open(Paths.get(outFile),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException | InvalidPathException e) {
+                System.err.println("Error creating file.");
+                in.close();
+                close(file);
+                return;
             }
+        }
+        if (options.watch() > 0) {
+            close(html);
+            watch(file, inPath, Paths.get(outFile), getNonNegativeInteger(in),
+                    options.watch());
+            in.close();
             return;
         }
-        Map<String, Integer> map;
-        try {
-            map = generateMap(file);
-        } catch (IOException e1) {
-            System.err.println("Error reading from file.");
+        if (options.sample() > 0) {
+            preview(in, (FileChannel) file, html, inFile, options.sample());
             in.close();
-            html.close();
+            close(file);
+            close(html);
             return;
         }
-        Set<Map.Entry<String, Integer>> m = map.entrySet();
-        int num = getNonNegativeInteger(in);
-        int[] maxAndMin = new int[2];
-        List<Map.Entry<String, Integer>> s = getWordsFrequency(m);
-        List<Map.Entry<String, Integer>> s2 = getWordsAlphabetical(s, num,
-                maxAndMin);
-        printHTML(html, s2, inFile, maxAndMin[0], maxAndMin[1]);
-        in.close();
+        TagCloudMetrics.register();
+        TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+        TagCloudMetrics.Span span = TagCloudMetrics
+                .begin(TagCloudMetrics.Stage.COUNT);
+        WordCounts map = null;
+        SpaceSaving summary = null;
+        SpillingWordCounter spilling = null;
         try {
-            file.close();
-        } catch (IOException e) {
-            System.err.println("Error closing file.");
+            if (options.ngram() > 1) {
+                map = generateNGrams(file, options.ngram(),
+                        options.normalize());
+            } else if (options.snapshot() != null) {
+                map = countIncrementally((FileChannel) file, inPath,
+                        Paths.get(options.snapshot()));
+            } else if (options.spill() > 0) {
+                Path runs = Paths.get(outFile).toAbsolutePath().getParent();
+                if (options.spillDir() != null) {
+                    runs = Paths.get(options.spillDir());
+                }
+                spilling = new SpillingWordCounter(options.spill(), runs,
+                        SpillingWordCounter.MAX_FAN_IN);
+                map = spilling;
+                if (options.normalize() > 0) {
+                    countNormalized(file, WordScanner.counting(spilling),
+                            options.normalize(), WordScanner.UNBOUNDED);
+                } else {
+                    countWords(file, spilling);
+                }
+            } else if (options.approximate() > 0) {
+                summary = new SpaceSaving(
+                        SpaceSaving.capacityFor(options.approximate()));
+                if (options.normalize() > 0) {
+                    countNormalized(file, WordScanner.counting(summary::count),
+                            options.normalize(), WordScanner.UNBOUNDED);
+                } else {
+                    countWords(file, summary::count);
+                }
+            } else if (options.adaptive() > 0) {
+                AdaptiveWordCounter adaptive = new AdaptiveWordCounter(
+                        options.adaptive());
+                if (options.normalize() > 0) {
+                    countNormalized(file, adaptive, options.normalize(),
+                            WordScanner.MAX_WORD_LENGTH);
+                } else {
+                    scan(file, adaptive, WordScanner.MAX_WORD_LENGTH);
+                }
+                if (adaptive.isExact()) {
+                    map = adaptive.exact();
+                } else {
+                    summary = adaptive.summary();
+                }
+                System.out.println(adaptive.mode());
+            } else if (options.normalize() > 0) {
+                ByteWordCounter m = new ByteWordCounter();
+                countNormalized(file, m, options.normalize(),
+                        WordScanner.UNBOUNDED);
+                map = m;
+            } else if (options.pipeline() > 0) {
+                TokenPipeline pipeline = new TokenPipeline(options.pipeline(),
+                        options.pipeline());
+                map = pipeline.run((FileChannel) file);
+                for (TokenPipeline.Stage stage : pipeline.stages()) {
+                    System.out.println(stage);
+                }
+            } else if (options.threads() > 1) {
+                map = ParallelWordCount.count((FileChannel) file,
+                        options.threads());
+            } else if (file instanceof FileChannel) {
+                map = generateMap((FileChannel) file);
+            } else if (file instanceof GzipInput) {
+                map = generateMap((GzipInput) file);
+            } else {
+                map = generateMap((BufferedReader) file);
+            }
+        } catch (IOException | UncheckedIOException
+                | InvalidPathException | IllegalStateException e1) {
+            if (e1 instanceof IllegalStateException) {
+                System.err.println("Error: " + e1.getMessage() + " Use --spill"
+                        + " or --adaptive to count more distinct words.");
+            } else {
+                System.err.println("Error reading from file.");
+            }
+            in.close();
+            close(html);
+            closeRuns(spilling);
+            return;
+        }
+        long distinct = distinctWords(map);
+        span.end(distinct, run.bytesRead());
+        if (options.partial() != null) {
+            writePartial(map, options.partial());
+        }
+        List<TagCloudOptions.Cloud> clouds = options.clouds();
+        if (!several) {
+            clouds = List.of(new TagCloudOptions.Cloud(
+                    getNonNegativeInteger(in), MIN_FONT, MAX_FONT));
+        }
+        int num = 0;
+        for (TagCloudOptions.Cloud c : clouds) {
+            num = Math.max(num, c.size());
+        }
+        List<Map.Entry<String, Integer>> s;
+        span = TagCloudMetrics.begin(TagCloudMetrics.Stage.TOP);
+        if (summary != null) {
+            s = getEstimatedWordsFrequency(summary, num);
+            System.out.println("Counts are approximate: each is at most "
+                    + summary.errorBound() + " above the true count.");
+        } else {
+            try {
+                s = getWordsFrequency(map, num);
+            } catch (UncheckedIOException e) {
+                System.err.println("Error merging counts.");
+                s = new ArrayList<>();
+            }
         }
-        html.close();
+        span.end(s.size(), 0);
+        if (file instanceof GzipInput) {
+            System.out.println("Inflated " + ((GzipInput) file).inflated()
+                    + " bytes.");
+        }
+        if (spilling != null) {
+            System.out.println(spilling.statistics());
+            closeRuns(spilling);
+        }
+        HtmlRenderer renderer = new HtmlRenderer();
+        for (TagCloudOptions.Cloud c : clouds) {
+            int[] maxAndMin = new int[2];
+            span = TagCloudMetrics.begin(TagCloudMetrics.Stage.SORT);
+            List<Map.Entry<String, Integer>> s2 = getWordsAlphabetical(
+                    s.subList(0, Math.min(c.size(), s.size())), maxAndMin);
+            span.end(s2.size(), 0);
+            span = TagCloudMetrics.begin(TagCloudMetrics.Stage.RENDER);
+            long before = renderer.written();
+            renderer.setFontRange(c.minFont(), c.maxFont());
+            try {
+                if (several) {
+                    renderer.write(Paths.get(c.fileName(outFile)), s2, inFile,
+                            maxAndMin[0], maxAndMin[1]);
+                    System.out.println("Wrote " + c.fileName(outFile) + ".");
+                } else {
+                    renderer.render(html, s2, inFile, maxAndMin[0],
+                            maxAndMin[1]);
+                }
+            } catch (IOException | InvalidPathException e) {
+                System.err.println("Error writing to file.");
+            }
+            span.end(s2.size(), renderer.written() - before);
+        }
+        run.end(distinct, s.size(), renderer.written());
+        in.close();
+        close(file);
+        close(html);
     }
 
 }
@@ -0,0 +1,637 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Instrumentation of tag cloud generation, so that a slow run can be traced
+ * to reading and counting, map growth, selection, sorting or HTML writing.
+ *
+ * <p>
+ * Each stage of a run is timed as a {@link Span}, which adds its time to a
+ * process-wide counter and emits a {@code TagCloud.Stage} event to JDK Flight
+ * Recorder; each run emits a {@code TagCloud.Run} event with its totals. The
+ * counters are published through JMX as {@value #NAME} once
+ * {@link #register()} is called. Nothing is done per word but incrementing
+ * two fields of the scanner, which are added to the counters once per scan,
+ * and a JFR event that is not being recorded costs a check of a flag, so the
+ * instrumentation can be left on. The hits, misses and evictions of the
+ * {@code CloudCache} of a {@code TagCloudServer} are counted too.
+ *
+ * <p>
+ * The bytes, lines, words and rehashes of a {@code TagCloud.Run} event are
+ * counted for the run alone, by the thread that began it and by the threads
+ * it is {@link #attach(Run) attached} to, so runs done at the same time, such
+ * as the requests of a {@code TagCloudServer}, do not add to each other's
+ * events. The bytes are those scanned, so they are the decompressed text of
+ * a compressed input and only the new text of an incremental count.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class TagCloudMetrics implements TagCloudMetricsMBean {
+
+    /**
+     * Name under which the counters are published through JMX.
+     */
+    static final String NAME = "TagCloudGenerator:type=Metrics";
+
+    /**
+     * A timed stage of tag cloud generation.
+     */
+    enum Stage {
+
+        /**
+         * Reading, tokenizing and counting the input.
+         */
+        COUNT("count"),
+
+        /**
+         * Growing and rehashing a word table.
+         */
+        REHASH("rehash"),
+
+        /**
+         * Selecting the top words.
+         */
+        TOP("top"),
+
+        /**
+         * Sorting the top words alphabetically.
+         */
+        SORT("sort"),
+
+        /**
+         * Writing the HTML.
+         */
+        RENDER("render");
+
+        /**
+         * Name of the stage in events.
+         */
+        private final String label;
+
+        /**
+         * Number of times the stage ran.
+         */
+        private final LongAdder runs = new LongAdder();
+
+        /**
+         * Time spent in the stage, in nanoseconds.
+         */
+        private final LongAdder nanos = new LongAdder();
+
+        /**
+         * Constructor.
+         *
+         * @param label
+         *            name of the stage in events
+         */
+        Stage(String label) {
+            this.label = label;
+        }
+
+    }
+
+    /**
+     * Flight Recorder event of one stage of a run.
+     */
+    @Name("TagCloud.Stage")
+    @Label("Tag Cloud Stage")
+    @Category("Tag Cloud")
+    @Description("One stage of the generation of a tag cloud")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+
+        /**
+         * Name of the stage.
+         */
+        @Label("Stage")
+        String stage;
+
+        /**
+         * Number of words handled.
+         */
+        @Label("Words")
+        long words;
+
+        /**
+         * Number of bytes read or written.
+         */
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+    }
+
+    /**
+     * Flight Recorder event of a whole run.
+     */
+    @Name("TagCloud.Run")
+    @Label("Tag Cloud Run")
+    @Category("Tag Cloud")
+    @Description("The generation of a tag cloud")
+    @StackTrace(false)
+    static final class RunEvent extends Event {
+
+        /**
+         * Number of bytes of text scanned.
+         */
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        /**
+         * Number of lines scanned.
+         */
+        @Label("Lines")
+        long lines;
+
+        /**
+         * Number of words scanned.
+         */
+        @Label("Tokens")
+        long tokens;
+
+        /**
+         * Number of distinct words counted.
+         */
+        @Label("Distinct Words")
+        long distinctWords;
+
+        /**
+         * Number of rehashes of word tables.
+         */
+        @Label("Rehashes")
+        long rehashes;
+
+        /**
+         * Number of words in the cloud.
+         */
+        @Label("Cloud Words")
+        long cloudWords;
+
+        /**
+         * Number of bytes of HTML written.
+         */
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+    }
+
+    /**
+     * A stage being timed.
+     */
+    static final class Span {
+
+        /**
+         * The stage.
+         */
+        private final Stage stage;
+
+        /**
+         * The event of the stage.
+         */
+        private final StageEvent event = new StageEvent();
+
+        /**
+         * When the stage began, in nanoseconds.
+         */
+        private final long start;
+
+        /**
+         * Constructor; begins timing.
+         *
+         * @param stage
+         *            the stage
+         */
+        private Span(Stage stage) {
+            this.stage = stage;
+            this.event.begin();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Ends timing and records the stage.
+         *
+         * @param words
+         *            the number of words handled
+         * @param bytes
+         *            the number of bytes read or written
+         */
+        void end(long words, long bytes) {
+            this.stage.nanos.add(System.nanoTime() - this.start);
+            this.stage.runs.increment();
+            Run run = CURRENT.get();
+            if (this.stage == Stage.REHASH && run != null) {
+                run.rehashes.increment();
+            }
+            this.event.end();
+            if (this.event.shouldCommit()) {
+                this.event.stage = this.stage.label;
+                this.event.words = words;
+                this.event.bytes = bytes;
+                this.event.commit();
+            }
+        }
+
+    }
+
+    /**
+     * A run being recorded.
+     */
+    static final class Run {
+
+        /**
+         * The event of the run.
+         */
+        private final RunEvent event = new RunEvent();
+
+        /**
+         * Bytes scanned for the run.
+         */
+        private final LongAdder bytesRead = new LongAdder();
+
+        /**
+         * Lines scanned for the run.
+         */
+        private final LongAdder lines = new LongAdder();
+
+        /**
+         * Words scanned for the run.
+         */
+        private final LongAdder tokens = new LongAdder();
+
+        /**
+         * Rehashes done for the run.
+         */
+        private final LongAdder rehashes = new LongAdder();
+
+        /**
+         * Constructor; begins the run.
+         */
+        private Run() {
+            this.event.begin();
+        }
+
+        /**
+         * Returns the number of bytes scanned for the run so far.
+         *
+         * @return the bytes scanned
+         */
+        long bytesRead() {
+            return this.bytesRead.sum();
+        }
+
+        /**
+         * Returns the number of words scanned for the run so far.
+         *
+         * @return the words scanned
+         */
+        long tokens() {
+            return this.tokens.sum();
+        }
+
+        /**
+         * Ends the run and records it. The current thread is no longer
+         * attached to the run.
+         *
+         * @param distinctWords
+         *            the number of distinct words counted, -1 if not known
+         * @param cloudWords
+         *            the number of words in the cloud
+         * @param bytesWritten
+         *            the number of bytes of HTML written
+         */
+        void end(long distinctWords, long cloudWords, long bytesWritten) {
+            RUNS.increment();
+            BYTES_WRITTEN.add(bytesWritten);
+            distinct = distinctWords;
+            if (CURRENT.get() == this) {
+                CURRENT.remove();
+            }
+            this.event.end();
+            if (this.event.shouldCommit()) {
+                this.event.bytesRead = this.bytesRead.sum();
+                this.event.lines = this.lines.sum();
+                this.event.tokens = this.tokens.sum();
+                this.event.distinctWords = distinctWords;
+                this.event.rehashes = this.rehashes.sum();
+                this.event.cloudWords = cloudWords;
+                this.event.bytesWritten = bytesWritten;
+                this.event.commit();
+            }
+        }
+
+    }
+
+    /**
+     * Number of runs.
+     */
+    private static final LongAdder RUNS = new LongAdder();
+
+    /**
+     * The run the current thread works for, if any.
+     */
+    private static final ThreadLocal<Run> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Number of bytes of text scanned.
+     */
+    private static final LongAdder BYTES_READ = new LongAdder();
+
+    /**
+     * Number of lines scanned.
+     */
+    private static final LongAdder LINES = new LongAdder();
+
+    /**
+     * Number of words scanned.
+     */
+    private static final LongAdder TOKENS = new LongAdder();
+
+    /**
+     * Number of bytes of HTML written.
+     */
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+    /**
+     * Number of lookups in a cloud cache that found a cloud.
+     */
+    private static final LongAdder CACHE_HITS = new LongAdder();
+
+    /**
+     * Number of lookups in a cloud cache that found no cloud.
+     */
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    /**
+     * Number of clouds evicted from a cloud cache.
+     */
+    private static final LongAdder CACHE_EVICTIONS = new LongAdder();
+
+    /**
+     * Whether the counters were published through JMX.
+     */
+    private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+    /**
+     * Number of distinct words of the last run.
+     */
+    private static volatile long distinct = 0;
+
+    /**
+     * Private constructor; the counters are static.
+     */
+    private TagCloudMetrics() {
+    }
+
+    /**
+     * Publishes the counters through JMX, if not done yet. A failure to
+     * publish them is reported but does not stop the run.
+     */
+    static void register() {
+        if (REGISTERED.getAndSet(true)) {
+            return;
+        }
+        publish(NAME, new TagCloudMetrics(), TagCloudMetricsMBean.class);
+    }
+
+    /**
+     * Publishes a bean through JMX. A failure to publish it is reported but
+     * does not stop the run.
+     *
+     * @param <T>
+     *            the management interface
+     * @param name
+     *            the JMX name of the bean
+     * @param bean
+     *            the bean
+     * @param type
+     *            the management interface of the bean
+     * @return the name of the bean, {@code null} if it was not published
+     */
+    static <T> ObjectName publish(String name, T bean, Class<T> type) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(bean, type), objectName);
+            return objectName;
+        } catch (JMException e) {
+            System.err.println("Metrics are not published: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Withdraws a bean published by {@link #publish(String, Object, Class)}.
+     *
+     * @param name
+     *            the name of the bean
+     */
+    static void unpublish(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            System.err.println("Metrics are not withdrawn: " + e);
+        }
+    }
+
+    /**
+     * Begins timing a stage.
+     *
+     * @param stage
+     *            the stage
+     * @return the span to end when the stage is done
+     */
+    static Span begin(Stage stage) {
+        return new Span(stage);
+    }
+
+    /**
+     * Begins recording a run, and attaches the current thread to it.
+     *
+     * @return the run to end when the cloud is written
+     */
+    static Run beginRun() {
+        Run run = new Run();
+        CURRENT.set(run);
+        return run;
+    }
+
+    /**
+     * Returns the run the current thread works for.
+     *
+     * @return the run, {@code null} if none
+     */
+    static Run current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attaches the current thread to a run, so that what it scans and
+     * rehashes is counted for that run; used by the threads a run hands its
+     * work to.
+     *
+     * @param run
+     *            the run, {@code null} to detach the thread
+     * @return the run the thread worked for before, {@code null} if none
+     */
+    static Run attach(Run run) {
+        Run previous = CURRENT.get();
+        if (run == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(run);
+        }
+        return previous;
+    }
+
+    /**
+     * Records the bytes, lines and words of a scan, for the process and for
+     * the run of the current thread.
+     *
+     * @param bytes
+     *            the number of bytes scanned
+     * @param lines
+     *            the number of lines scanned
+     * @param tokens
+     *            the number of words scanned
+     */
+    static void scanned(long bytes, long lines, long tokens) {
+        BYTES_READ.add(bytes);
+        LINES.add(lines);
+        TOKENS.add(tokens);
+        Run run = CURRENT.get();
+        if (run != null) {
+            run.bytesRead.add(bytes);
+            run.lines.add(lines);
+            run.tokens.add(tokens);
+        }
+    }
+
+    /**
+     * Records a lookup in a cloud cache.
+     *
+     * @param hit
+     *            whether the lookup found a cloud
+     */
+    static void cached(boolean hit) {
+        if (hit) {
+            CACHE_HITS.increment();
+        } else {
+            CACHE_MISSES.increment();
+        }
+    }
+
+    /**
+     * Records clouds evicted from a cloud cache.
+     *
+     * @param clouds
+     *            the number of clouds evicted
+     */
+    static void evicted(int clouds) {
+        CACHE_EVICTIONS.add(clouds);
+    }
+
+    /**
+     * Converts the time spent in a stage to milliseconds.
+     *
+     * @param stage
+     *            the stage
+     * @return the time in milliseconds
+     */
+    private static long millis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stage.nanos.sum());
+    }
+
+    @Override
+    public long getRuns() {
+        return RUNS.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    @Override
+    public long getLines() {
+        return LINES.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        return TOKENS.sum();
+    }
+
+    @Override
+    public long getDistinctWords() {
+        return distinct;
+    }
+
+    @Override
+    public long getRehashes() {
+        return Stage.REHASH.runs.sum();
+    }
+
+    @Override
+    public long getRehashMillis() {
+        return millis(Stage.REHASH);
+    }
+
+    @Override
+    public long getCountMillis() {
+        return millis(Stage.COUNT);
+    }
+
+    @Override
+    public long getTopMillis() {
+        return millis(Stage.TOP);
+    }
+
+    @Override
+    public long getSortMillis() {
+        return millis(Stage.SORT);
+    }
+
+    @Override
+    public long getRenderMillis() {
+        return millis(Stage.RENDER);
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return BYTES_WRITTEN.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return CACHE_EVICTIONS.sum();
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Management interface of {@code TagCloudMetrics}: the counters of all tag
+ * clouds generated by this process, as seen through JMX.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+public interface TagCloudMetricsMBean {
+
+    /**
+     * Returns the number of tag clouds generated.
+     *
+     * @return the number of runs
+     */
+    long getRuns();
+
+    /**
+     * Returns the number of bytes of text scanned, after decompression.
+     *
+     * @return the bytes read
+     */
+    long getBytesRead();
+
+    /**
+     * Returns the number of lines of input scanned.
+     *
+     * @return the lines scanned
+     */
+    long getLines();
+
+    /**
+     * Returns the number of words of input scanned.
+     *
+     * @return the words scanned
+     */
+    long getTokens();
+
+    /**
+     * Returns the number of distinct words counted by the last run.
+     *
+     * @return the distinct words of the last run
+     */
+    long getDistinctWords();
+
+    /**
+     * Returns the number of times a word table grew and was rehashed.
+     *
+     * @return the number of rehashes
+     */
+    long getRehashes();
+
+    /**
+     * Returns the time spent rehashing word tables.
+     *
+     * @return the time in milliseconds
+     */
+    long getRehashMillis();
+
+    /**
+     * Returns the time spent reading, tokenizing and counting input.
+     *
+     * @return the time in milliseconds
+     */
+    long getCountMillis();
+
+    /**
+     * Returns the time spent selecting the top words.
+     *
+     * @return the time in milliseconds
+     */
+    long getTopMillis();
+
+    /**
+     * Returns the time spent sorting the top words alphabetically.
+     *
+     * @return the time in milliseconds
+     */
+    long getSortMillis();
+
+    /**
+     * Returns the time spent writing HTML.
+     *
+     * @return the time in milliseconds
+     */
+    long getRenderMillis();
+
+    /**
+     * Returns the number of bytes of HTML written.
+     *
+     * @return the bytes written
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns the number of lookups in a cloud cache that found a cloud.
+     *
+     * @return the cache hits
+     */
+    long getCacheHits();
+
+    /**
+     * Returns the number of lookups in a cloud cache that found no cloud.
+     *
+     * @return the cache misses
+     */
+    long getCacheMisses();
+
+    /**
+     * Returns the number of clouds evicted from a cloud cache.
+     *
+     * @return the cache evictions
+     */
+    long getCacheEvictions();
+
+}
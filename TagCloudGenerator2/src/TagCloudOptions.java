@@ -0,0 +1,768 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Command line options of {@code TagCloudGenerator}. Each option has the form
+ * {@code --name=value}; options that are not given keep their default value.
+ *
+ * <p>
+ * Options that cannot be used together are rejected rather than some of them
+ * being ignored: at most one way of counting and at most one mode may be
+ * given, and a mode takes no other option but the cache size of the server.
+ * Options that depend on the kind of input are checked once it is known, by
+ * {@link #checkDirectory()} and {@link #checkFile(boolean)}.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class TagCloudOptions {
+
+    /**
+     * A tag cloud to write: its number of words, and the range of font sizes
+     * of its words.
+     */
+    static final class Cloud {
+
+        /**
+         * Number of words.
+         */
+        private final int size;
+
+        /**
+         * Font size of the least counted word.
+         */
+        private final int minFont;
+
+        /**
+         * Font size of the most counted word.
+         */
+        private final int maxFont;
+
+        /**
+         * Constructor.
+         *
+         * @param size
+         *            the number of words
+         * @param minFont
+         *            the font size of the least counted word
+         * @param maxFont
+         *            the font size of the most counted word
+         * @requires MIN_FONT <= minFont <= maxFont <= MAX_FONT
+         */
+        Cloud(int size, int minFont, int maxFont) {
+            this.size = size;
+            this.minFont = minFont;
+            this.maxFont = maxFont;
+        }
+
+        /**
+         * Returns the number of words.
+         *
+         * @return the number of words
+         */
+        int size() {
+            return this.size;
+        }
+
+        /**
+         * Returns the font size of the least counted word.
+         *
+         * @return the smallest font size
+         */
+        int minFont() {
+            return this.minFont;
+        }
+
+        /**
+         * Returns the font size of the most counted word.
+         *
+         * @return the largest font size
+         */
+        int maxFont() {
+            return this.maxFont;
+        }
+
+        /**
+         * Returns the name of the HTML file of this cloud: the given name,
+         * without its ".html" ending, followed by the number of words and,
+         * unless they are the default ones, the font sizes.
+         *
+         * @param outFile
+         *            the name of the output file given by the user
+         * @return the name of the file of this cloud
+         */
+        String fileName(String outFile) {
+            String base = outFile;
+            if (base.endsWith(".html")) {
+                base = base.substring(0, base.length() - ".html".length());
+            }
+            String name = base + "-" + this.size;
+            if (this.minFont != TagCloudGenerator.MIN_FONT
+                    || this.maxFont != TagCloudGenerator.MAX_FONT) {
+                name += "-" + this.minFont + "-" + this.maxFont;
+            }
+            return name + ".html";
+        }
+
+    }
+
+    /**
+     * Number of bytes in a kilobyte.
+     */
+    private static final long KILOBYTE = 1024;
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final long MEGABYTE = KILOBYTE * KILOBYTE;
+
+    /**
+     * Largest TCP port number.
+     */
+    private static final int MAX_PORT = 65535;
+
+    /**
+     * Options choosing how the words of an input file are counted, of which
+     * at most one may be given.
+     */
+    private static final List<String> COUNTING = List.of("ngram", "snapshot",
+            "spill", "approximate", "adaptive", "pipeline", "threads");
+
+    /**
+     * Ways of counting that count the words as they are, so cannot be used
+     * with {@code --normalize}.
+     */
+    private static final List<String> UNNORMALIZED = List.of("snapshot",
+            "pipeline", "threads");
+
+    /**
+     * Options choosing a mode other than making the clouds of one input, of
+     * which at most one may be given.
+     */
+    private static final List<String> MODES = List.of("serve", "merge",
+            "window", "watch", "sample");
+
+    /**
+     * Options of the counting of a directory.
+     */
+    private static final List<String> BATCH = List.of("workers", "index");
+
+    /**
+     * Options that need an uncompressed regular input file.
+     */
+    private static final List<String> PLAIN = List.of("snapshot", "pipeline",
+            "threads", "watch", "sample");
+
+    /**
+     * Names of the options given, in the order given. {@code --threads} and
+     * {@code --ngram} given as 1, their default, are left out.
+     */
+    private final Set<String> given = new LinkedHashSet<>();
+
+    /**
+     * Number of threads counting words.
+     */
+    private int threads = 1;
+
+    /**
+     * Memory budget in bytes for approximate counting, 0 for exact counting.
+     */
+    private long approximate = 0;
+
+    /**
+     * Memory budget in bytes for exact counting that spills to disk, 0 for
+     * counting in memory only.
+     */
+    private long spill = 0;
+
+    /**
+     * Directory of the run files of spilling, {@code null} for the directory
+     * of the output file.
+     */
+    private String spillDir = null;
+
+    /**
+     * Number of tokenizer and of counter threads of the pipelined counting
+     * mode, 0 when not pipelining.
+     */
+    private int pipeline = 0;
+
+    /**
+     * File holding the counts of earlier runs, {@code null} for none.
+     */
+    private String snapshot = null;
+
+    /**
+     * Debounce interval in milliseconds of watch mode, 0 when not watching.
+     */
+    private int watch = 0;
+
+    /**
+     * Number of worker threads of batch mode.
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Index file of batch mode, {@code null} for none.
+     */
+    private String index = null;
+
+    /**
+     * Number of words per counted n-gram.
+     */
+    private int ngram = 1;
+
+    /**
+     * Length in minutes of the sliding window of window mode, 0 when not
+     * counting over a window.
+     */
+    private int window = 0;
+
+    /**
+     * Partial-count file receiving the counts of the input, {@code null} for
+     * none.
+     */
+    private String partial = null;
+
+    /**
+     * Directory of partial-count files to merge, {@code null} when counting
+     * an input.
+     */
+    private String merge = null;
+
+    /**
+     * Number of entries of the stem cache of the normalization stage, 0 to
+     * count words as they are.
+     */
+    private int normalize = 0;
+
+    /**
+     * Memory budget in bytes for counting that starts exact and turns
+     * approximate when the words do not fit, 0 to not adapt.
+     */
+    private long adaptive = 0;
+
+    /**
+     * Percentage of the blocks of the input sampled for a preview, 0 to
+     * count the whole input.
+     */
+    private int sample = 0;
+
+    /**
+     * The clouds to write from one count, empty to write one cloud of the
+     * number of words asked for.
+     */
+    private List<Cloud> clouds = Collections.emptyList();
+
+    /**
+     * Port on which to serve tag clouds over HTTP, 0 to not serve.
+     */
+    private int serve = 0;
+
+    /**
+     * Largest number of bytes of HTML kept by the server's cloud cache.
+     */
+    private long cache = 64 * MEGABYTE;
+
+    /**
+     * Private constructor; use {@link #parse(String[])}.
+     */
+    private TagCloudOptions() {
+    }
+
+    /**
+     * Parses the value of an option that must be a positive integer.
+     *
+     * @param name
+     *            the name of the option
+     * @param value
+     *            the value to parse
+     * @return the value as an integer
+     * @throws IllegalArgumentException
+     *             if {@code value} is not a positive integer
+     */
+    private static int positiveInt(String name, String value) {
+        if (!TagCloudGenerator.canParseInt(value)
+                || Integer.parseInt(value) <= 0) {
+            throw new IllegalArgumentException(
+                    "Option --" + name + " needs a positive integer.");
+        }
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Returns the exception rejecting options given together.
+     *
+     * @param first
+     *            the name of an option
+     * @param second
+     *            the name of an option that cannot be used with
+     *            {@code first}
+     * @return the exception
+     */
+    private static IllegalArgumentException together(String first,
+            String second) {
+        return new IllegalArgumentException("Options --" + first + " and --"
+                + second + " cannot be used together.");
+    }
+
+    /**
+     * Returns those of the given options that were given.
+     *
+     * @param names
+     *            the names of the options
+     * @return the names of those given, in the order of {@code names}
+     */
+    private List<String> given(List<String> names) {
+        List<String> given = new ArrayList<>();
+        for (String name : names) {
+            if (this.given.contains(name)) {
+                given.add(name);
+            }
+        }
+        return given;
+    }
+
+    /**
+     * Checks that the options given can be used together.
+     *
+     * @throws IllegalArgumentException
+     *             if two of them cannot
+     */
+    private void check() {
+        List<String> modes = this.given(MODES);
+        List<String> counting = this.given(COUNTING);
+        List<String> unnormalized = this.given(UNNORMALIZED);
+        if (modes.size() > 1) {
+            throw together(modes.get(0), modes.get(1));
+        }
+        if (counting.size() > 1) {
+            throw together(counting.get(0), counting.get(1));
+        }
+        if (this.given.contains("normalize") && !unnormalized.isEmpty()) {
+            throw together("normalize", unnormalized.get(0));
+        }
+        if (this.given.contains("partial")
+                && this.given.contains("approximate")) {
+            throw together("partial", "approximate");
+        }
+        if (this.given.contains("spilldir") && !this.given.contains("spill")) {
+            throw new IllegalArgumentException(
+                    "Option --spilldir needs --spill.");
+        }
+        if (this.given.contains("cache") && !this.given.contains("serve")) {
+            throw new IllegalArgumentException(
+                    "Option --cache needs --serve.");
+        }
+        if (!modes.isEmpty()) {
+            for (String name : this.given) {
+                if (!name.equals(modes.get(0)) && !name.equals("cache")) {
+                    throw together(modes.get(0), name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the options given can be used to count a directory.
+     *
+     * @throws IllegalArgumentException
+     *             if one of them cannot
+     */
+    void checkDirectory() {
+        for (String name : this.given) {
+            if (!BATCH.contains(name)) {
+                throw new IllegalArgumentException("Option --" + name
+                        + " cannot be used with a directory.");
+            }
+        }
+    }
+
+    /**
+     * Checks that the options given can be used to count a file.
+     *
+     * @param plain
+     *            whether the file is an uncompressed regular file
+     * @throws IllegalArgumentException
+     *             if one of them cannot
+     */
+    void checkFile(boolean plain) {
+        for (String name : this.given) {
+            if (BATCH.contains(name)) {
+                throw new IllegalArgumentException(
+                        "Option --" + name + " needs a directory.");
+            }
+            if (!plain && PLAIN.contains(name)) {
+                throw new IllegalArgumentException("Option --" + name
+                        + " needs an uncompressed regular file.");
+            }
+        }
+    }
+
+    /**
+     * Parses a list of clouds, such as "25,100:20-48,1000": each cloud is a
+     * number of words, optionally followed by a range of font sizes.
+     *
+     * @param name
+     *            the name of the option
+     * @param value
+     *            the value to parse
+     * @return the clouds
+     * @throws IllegalArgumentException
+     *             if {@code value} is not a valid list of clouds
+     */
+    private static List<Cloud> clouds(String name, String value) {
+        List<Cloud> clouds = new ArrayList<>();
+        for (String spec : value.split(",", -1)) {
+            int colon = spec.indexOf(':');
+            int dash = spec.indexOf('-', colon + 1);
+            int minFont = TagCloudGenerator.MIN_FONT;
+            int maxFont = TagCloudGenerator.MAX_FONT;
+            String size = spec;
+            if (colon >= 0) {
+                size = spec.substring(0, colon);
+                if (dash < 0) {
+                    minFont = -1;
+                } else {
+                    String low = spec.substring(colon + 1, dash);
+                    String high = spec.substring(dash + 1);
+                    minFont = TagCloudGenerator.canParseInt(low)
+                            ? Integer.parseInt(low) : -1;
+                    maxFont = TagCloudGenerator.canParseInt(high)
+                            ? Integer.parseInt(high) : -1;
+                }
+            }
+            if (!TagCloudGenerator.canParseInt(size)
+                    || Integer.parseInt(size) <= 0
+                    || minFont < TagCloudGenerator.MIN_FONT
+                    || maxFont > TagCloudGenerator.MAX_FONT
+                    || minFont > maxFont) {
+                throw new IllegalArgumentException("Option --" + name
+                        + " needs numbers of words, each optionally with "
+                        + "font sizes from " + TagCloudGenerator.MIN_FONT
+                        + " to " + TagCloudGenerator.MAX_FONT
+                        + ", such as 25,100:20-48,1000.");
+            }
+            clouds.add(new Cloud(Integer.parseInt(size), minFont, maxFont));
+        }
+        return clouds;
+    }
+
+    /**
+     * Parses the given command line arguments.
+     *
+     * @param args
+     *            the command line arguments
+     * @return the options they specify
+     * @throws IllegalArgumentException
+     *             if an argument is not a valid option, or if options that
+     *             cannot be used together are given
+     */
+    static TagCloudOptions parse(String[] args) {
+        TagCloudOptions options = new TagCloudOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException(
+                        "Options must have the form --name=value: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            options.given.add(name);
+            switch (name) {
+                case "threads":
+                    options.threads = positiveInt(name, value);
+                    if (options.threads == 1) {
+                        options.given.remove(name);
+                    }
+                    break;
+                case "approximate":
+                    options.approximate = KILOBYTE * positiveInt(name, value);
+                    break;
+                case "spill":
+                    options.spill = MEGABYTE * positiveInt(name, value);
+                    break;
+                case "spilldir":
+                    options.spillDir = value;
+                    break;
+                case "pipeline":
+                    options.pipeline = positiveInt(name, value);
+                    break;
+                case "snapshot":
+                    options.snapshot = value;
+                    break;
+                case "watch":
+                    options.watch = positiveInt(name, value);
+                    break;
+                case "workers":
+                    options.workers = positiveInt(name, value);
+                    break;
+                case "index":
+                    options.index = value;
+                    break;
+                case "ngram":
+                    options.ngram = positiveInt(name, value);
+                    if (options.ngram == 1) {
+                        options.given.remove(name);
+                    }
+                    break;
+                case "window":
+                    options.window = positiveInt(name, value);
+                    break;
+                case "partial":
+                    options.partial = value;
+                    break;
+                case "merge":
+                    options.merge = value;
+                    break;
+                case "normalize":
+                    options.normalize = positiveInt(name, value);
+                    break;
+                case "adaptive":
+                    options.adaptive = KILOBYTE * positiveInt(name, value);
+                    break;
+                case "clouds":
+                    options.clouds = clouds(name, value);
+                    break;
+                case "sample":
+                    options.sample = positiveInt(name, value);
+                    if (options.sample > 100) {
+                        throw new IllegalArgumentException("Option --" + name
+                                + " needs a percentage from 1 to 100.");
+                    }
+                    break;
+                case "serve":
+                    options.serve = positiveInt(name, value);
+                    if (options.serve > MAX_PORT) {
+                        throw new IllegalArgumentException("Option --" + name
+                                + " needs a port from 1 to " + MAX_PORT
+                                + ".");
+                    }
+                    break;
+                case "cache":
+                    options.cache = MEGABYTE * positiveInt(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unknown option: --" + name);
+            }
+        }
+        options.check();
+        return options;
+    }
+
+    /**
+     * Returns the number of threads counting words.
+     *
+     * @return the number of threads, 1 for sequential counting
+     */
+    int threads() {
+        return this.threads;
+    }
+
+    /**
+     * Returns the memory budget for approximate counting, given in kilobytes
+     * by {@code --approximate}.
+     *
+     * @return the budget in bytes, 0 for exact counting
+     */
+    long approximate() {
+        return this.approximate;
+    }
+
+    /**
+     * Returns the memory budget for exact counting that spills sorted runs to
+     * disk, given in megabytes by {@code --spill}.
+     *
+     * @return the budget in bytes, 0 for counting in memory only
+     */
+    long spill() {
+        return this.spill;
+    }
+
+    /**
+     * Returns the directory of the run files of spilling, given by
+     * {@code --spilldir}. By default runs are written next to the output
+     * file rather than to the temporary-file directory, which may be a
+     * small in-memory file system.
+     *
+     * @return the directory, {@code null} for the directory of the output
+     *         file
+     */
+    String spillDir() {
+        return this.spillDir;
+    }
+
+    /**
+     * Returns the number of tokenizer threads, and of counter threads, of the
+     * pipelined counting mode, given by {@code --pipeline}.
+     *
+     * @return the number of threads per stage, 0 when not pipelining
+     */
+    int pipeline() {
+        return this.pipeline;
+    }
+
+    /**
+     * Returns the file holding the counts of earlier runs, given by
+     * {@code --snapshot}. Only the bytes appended to the input since that
+     * snapshot are counted, and the snapshot is then updated.
+     *
+     * @return the snapshot file name, {@code null} for none
+     */
+    String snapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Returns the debounce interval of watch mode, given in milliseconds by
+     * {@code --watch}. In watch mode the cloud is kept up to date as the
+     * input grows, until the program is interrupted.
+     *
+     * @return the debounce interval, 0 when not watching
+     */
+    int watch() {
+        return this.watch;
+    }
+
+    /**
+     * Returns the number of worker threads making the clouds of the files of
+     * a directory, given by {@code --workers}.
+     *
+     * @return the number of workers, by default the number of processors
+     */
+    int workers() {
+        return this.workers;
+    }
+
+    /**
+     * Returns the index file given by {@code --index}. In batch mode the
+     * files of the directory are added to this index, and their clouds are
+     * weighted by TF-IDF.
+     *
+     * @return the index file, {@code null} for none
+     */
+    String index() {
+        return this.index;
+    }
+
+    /**
+     * Returns the number of words per counted n-gram, given by
+     * {@code --ngram}. N-grams of more than one word are counted exactly, in
+     * memory, on one thread, whatever the other counting options.
+     *
+     * @return the number of words per n-gram, 1 to count single words
+     */
+    int ngram() {
+        return this.ngram;
+    }
+
+    /**
+     * Returns the length of the sliding window, given in minutes by
+     * {@code --window}. In window mode the input is read as a live stream,
+     * and the cloud of the words of the last minutes is rewritten every
+     * minute, until the stream ends or the program is interrupted.
+     *
+     * @return the length of the window in minutes, 0 when not counting over
+     *         a window
+     */
+    int window() {
+        return this.window;
+    }
+
+    /**
+     * Returns the partial-count file given by {@code --partial}. The exact
+     * counts of the input are written to this file, so that they can be
+     * merged with those of other shards of a larger input.
+     *
+     * @return the partial-count file name, {@code null} for none
+     */
+    String partial() {
+        return this.partial;
+    }
+
+    /**
+     * Returns the directory given by {@code --merge}. In merge mode no input
+     * is counted: the cloud is made from the merged counts of the
+     * partial-count files of this directory.
+     *
+     * @return the directory name, {@code null} when not merging
+     */
+    String merge() {
+        return this.merge;
+    }
+
+    /**
+     * Returns the number of entries of the stem cache, given by
+     * {@code --normalize}. When normalizing, stop-words are dropped and
+     * words are counted by their stems; normalized words are counted on one
+     * thread, and never resume from a snapshot.
+     *
+     * @return the number of memoized stems, 0 when not normalizing
+     */
+    int normalize() {
+        return this.normalize;
+    }
+
+    /**
+     * Returns the memory budget for adaptive counting, given in kilobytes by
+     * {@code --adaptive}. Words are counted exactly while they fit the
+     * budget, and approximately, within the same budget, once they do not.
+     *
+     * @return the budget in bytes, 0 when not adapting
+     */
+    long adaptive() {
+        return this.adaptive;
+    }
+
+    /**
+     * Returns the percentage of the blocks of the input sampled for a
+     * preview, given by {@code --sample}. In preview mode the counts of the
+     * cloud are estimated from randomly chosen blocks of the input, read
+     * with positional reads, and shown with their margins.
+     *
+     * @return the percentage sampled, 0 when counting the whole input
+     */
+    int sample() {
+        return this.sample;
+    }
+
+    /**
+     * Returns the clouds given by {@code --clouds}. With several clouds, the
+     * input is counted once, the words of the largest cloud are selected
+     * once, and every cloud is written from that selection, each to its own
+     * file named after the output file; no number of words is asked for.
+     *
+     * @return the clouds, empty to write one cloud of the number of words
+     *         asked for
+     */
+    List<Cloud> clouds() {
+        return this.clouds;
+    }
+
+    /**
+     * Returns the port on which to serve tag clouds over HTTP, given by
+     * {@code --serve}. When serving, no input is asked for: the clouds are
+     * asked for by {@code TagCloudServer} requests.
+     *
+     * @return the port, 0 when not serving
+     */
+    int serve() {
+        return this.serve;
+    }
+
+    /**
+     * Returns the largest number of bytes of HTML kept by the server's cloud
+     * cache, given in megabytes by {@code --cache}; 64 megabytes by default.
+     *
+     * @return the capacity of the cache in bytes
+     */
+    long cache() {
+        return this.cache;
+    }
+
+}
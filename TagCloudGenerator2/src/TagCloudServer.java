@@ -0,0 +1,482 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves tag clouds over HTTP, so that other programs can ask for a cloud
+ * without answering the prompts of {@code TagCloudGenerator}.
+ *
+ * <p>
+ * {@code GET /cloud?file=path&n=100} returns the cloud of the 100 most
+ * frequent words of a local file, which may be gzip compressed, and
+ * {@code POST /cloud?n=100&name=title} the cloud of the text in the body of
+ * the request. {@code GET /metrics} returns the use of the cache. Each
+ * request is handled on its own virtual thread, or, on JREs without virtual
+ * threads, by a pool of at most {@link #FALLBACK_THREADS} threads.
+ *
+ * <p>
+ * Clouds are kept in a {@code CloudCache}, keyed by the SHA-256 hash of the
+ * content, the number of words and the title, so the same document asked
+ * for again costs a hash and a lookup; requests that miss the same cloud at
+ * the same time render it once. The title of the cloud of a file is its
+ * absolute normalized path, so every name of the same file finds the same
+ * cloud. The hash of a file is remembered for its path, size and
+ * modification time, so a file asked for again that has not changed is not
+ * even read.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class TagCloudServer {
+
+    /**
+     * Path of the clouds.
+     */
+    static final String CLOUD = "/cloud";
+
+    /**
+     * Path of the metrics.
+     */
+    static final String METRICS = "/metrics";
+
+    /**
+     * Largest size of the text of a request, in bytes.
+     */
+    private static final int MAX_UPLOAD = 1 << 26;
+
+    /**
+     * Largest number of file hashes remembered.
+     */
+    private static final int MAX_DIGESTS = 1 << 12;
+
+    /**
+     * Largest number of threads handling requests when virtual threads are
+     * not available.
+     */
+    static final int FALLBACK_THREADS = 4
+            * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Title of a cloud of uploaded text without a name.
+     */
+    private static final String UPLOAD = "upload";
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The rendered clouds.
+     */
+    private final CloudCache cache;
+
+    /**
+     * The hash of the content of each file read, by its path, size and
+     * modification time, least recently used first.
+     */
+    private final Map<String, byte[]> digests = new LinkedHashMap<>(16,
+            0.75f, true) {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return this.size() > MAX_DIGESTS;
+        }
+
+    };
+
+    /**
+     * Constructor; the server is not started.
+     *
+     * @param address
+     *            the address to listen on; port 0 for any free port
+     * @param cacheBytes
+     *            the largest number of bytes of HTML cached
+     * @throws IOException
+     *             if the address cannot be bound
+     */
+    TagCloudServer(InetSocketAddress address, long cacheBytes)
+            throws IOException {
+        this.cache = new CloudCache(cacheBytes);
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(
+                VirtualThreads.executor("tagcloud-http", FALLBACK_THREADS));
+        this.server.createContext(CLOUD, this::cloud);
+        this.server.createContext(METRICS, this::metrics);
+    }
+
+    /**
+     * Starts serving.
+     */
+    void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops serving, waiting for requests being handled to finish.
+     */
+    void stop() {
+        this.server.stop(0);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    int port() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the cache of rendered clouds.
+     *
+     * @return the cache
+     */
+    CloudCache cache() {
+        return this.cache;
+    }
+
+    /**
+     * Parses the query of a request.
+     *
+     * @param query
+     *            the raw query, {@code null} if none
+     * @return the value of each parameter
+     */
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(
+                        URLDecoder.decode(pair.substring(0, eq),
+                                StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1),
+                                StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Sends a response and closes the exchange.
+     *
+     * @param exchange
+     *            the exchange
+     * @param status
+     *            the HTTP status
+     * @param type
+     *            the content type
+     * @param body
+     *            the body
+     * @throws IOException
+     *             write problem
+     */
+    private static void respond(HttpExchange exchange, int status,
+            String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Sends an error message and closes the exchange.
+     *
+     * @param exchange
+     *            the exchange
+     * @param status
+     *            the HTTP status
+     * @param message
+     *            the message
+     * @throws IOException
+     *             write problem
+     */
+    private static void fail(HttpExchange exchange, int status,
+            String message) throws IOException {
+        respond(exchange, status, "text/plain; charset=UTF-8",
+                (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a new SHA-256 digest.
+     *
+     * @return the digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the body of a request.
+     *
+     * @param in
+     *            the body
+     * @return the bytes of the body, {@code null} if longer than
+     *         {@code MAX_UPLOAD}
+     * @throws IOException
+     *             read problem
+     */
+    private static byte[] read(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_UPLOAD + 1);
+        if (body.length > MAX_UPLOAD) {
+            return null;
+        }
+        return body;
+    }
+
+    /**
+     * Handles a request for a cloud.
+     *
+     * @param exchange
+     *            the exchange
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void cloud(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> parameters = parameters(
+                    exchange.getRequestURI().getRawQuery());
+            String n = parameters.get("n");
+            if (n == null || !TagCloudGenerator.canParseInt(n)
+                    || Integer.parseInt(n) < 0) {
+                fail(exchange, 400,
+                        "Parameter n needs a non-negative integer.");
+                return;
+            }
+            int size = Integer.parseInt(n);
+            String method = exchange.getRequestMethod();
+            if (method.equals("GET") && parameters.containsKey("file")) {
+                this.fileCloud(exchange, parameters.get("file"), size);
+            } else if (method.equals("POST")) {
+                this.textCloud(exchange,
+                        parameters.getOrDefault("name", UPLOAD), size);
+            } else {
+                fail(exchange, 400, "Use GET " + CLOUD + "?file=path&n=N or"
+                        + " POST " + CLOUD + "?n=N with the text.");
+            }
+        } catch (IOException | UncheckedIOException e) {
+            fail(exchange, 500, "Error reading from file.");
+        } catch (IllegalStateException e) {
+            fail(exchange, 500, "Error: " + e.getMessage() + " Use --spill"
+                    + " or --adaptive to count more distinct words.");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answers a request for the cloud of a local file.
+     *
+     * @param exchange
+     *            the exchange
+     * @param file
+     *            the name of the file
+     * @param size
+     *            the number of words of the cloud
+     * @throws IOException
+     *             read or write problem
+     */
+    private void fileCloud(HttpExchange exchange, String file, int size)
+            throws IOException {
+        Path path;
+        BasicFileAttributes attributes;
+        try {
+            path = Paths.get(file).toAbsolutePath().normalize();
+            attributes = Files.readAttributes(path,
+                    BasicFileAttributes.class);
+        } catch (IOException | InvalidPathException e) {
+            fail(exchange, 404, "Error opening file.");
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            fail(exchange, 404, "Error opening file.");
+            return;
+        }
+        String version = path + " " + attributes.size() + " "
+                + attributes.lastModifiedTime().toMillis();
+        byte[] html;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            byte[] digest;
+            synchronized (this.digests) {
+                digest = this.digests.get(version);
+            }
+            if (digest == null) {
+                digest = digest(channel);
+                synchronized (this.digests) {
+                    this.digests.put(version, digest);
+                }
+            }
+            String title = path.toString();
+            html = this.cache.get(CloudCache.key(digest, size, title), () -> {
+                TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+                TagCloudMetrics.Span span = TagCloudMetrics
+                        .begin(TagCloudMetrics.Stage.COUNT);
+                ByteWordCounter m = new ByteWordCounter();
+                if (GzipInput.isGzip(channel)) {
+                    new GzipInput(channel).scan(m,
+                            WordScanner.MAX_WORD_LENGTH);
+                } else {
+                    WordScanner.scan(channel, 0, channel.size(), m,
+                            WordScanner.MAX_WORD_LENGTH);
+                }
+                span.end(m.size(), run.bytesRead());
+                return render(run, m, size, title);
+            });
+        }
+        respond(exchange, 200, "text/html; charset=UTF-8", html);
+    }
+
+    /**
+     * Answers a request for the cloud of the text in its body.
+     *
+     * @param exchange
+     *            the exchange
+     * @param title
+     *            the title of the cloud
+     * @param size
+     *            the number of words of the cloud
+     * @throws IOException
+     *             read or write problem
+     */
+    private void textCloud(HttpExchange exchange, String title, int size)
+            throws IOException {
+        byte[] text = read(exchange.getRequestBody());
+        if (text == null) {
+            fail(exchange, 413, "Text longer than " + MAX_UPLOAD + " bytes.");
+            return;
+        }
+        String key = CloudCache.key(sha256().digest(text), size, title);
+        byte[] html = this.cache.get(key, () -> {
+            TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+            TagCloudMetrics.Span span = TagCloudMetrics
+                    .begin(TagCloudMetrics.Stage.COUNT);
+            ByteWordCounter m = new ByteWordCounter();
+            WordScanner scanner = new WordScanner(m,
+                    WordScanner.MAX_WORD_LENGTH);
+            scanner.scan(ByteBuffer.wrap(text));
+            scanner.finish();
+            span.end(m.size(), run.bytesRead());
+            return render(run, m, size, title);
+        });
+        respond(exchange, 200, "text/html; charset=UTF-8", html);
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content of a file.
+     *
+     * @param channel
+     *            the file
+     * @return the hash
+     * @throws IOException
+     *             file read problem
+     */
+    private static byte[] digest(FileChannel channel) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = 0;
+        int n;
+        while ((n = channel.read(buffer, position)) > 0) {
+            position += n;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Renders the cloud of the given counts.
+     *
+     * @param run
+     *            the run recording the cloud
+     * @param m
+     *            the counts
+     * @param size
+     *            the number of words of the cloud
+     * @param title
+     *            the title of the cloud
+     * @return the HTML of the cloud
+     * @throws IOException
+     *             write problem
+     */
+    private static byte[] render(TagCloudMetrics.Run run, ByteWordCounter m,
+            int size, String title) throws IOException {
+        TagCloudMetrics.Span span = TagCloudMetrics
+                .begin(TagCloudMetrics.Stage.TOP);
+        List<Map.Entry<String, Integer>> s = TagCloudGenerator
+                .getWordsFrequency(m, size);
+        span.end(s.size(), 0);
+        int[] maxAndMin = new int[2];
+        span = TagCloudMetrics.begin(TagCloudMetrics.Stage.SORT);
+        List<Map.Entry<String, Integer>> s2 = TagCloudGenerator
+                .getWordsAlphabetical(s, maxAndMin);
+        span.end(s2.size(), 0);
+        span = TagCloudMetrics.begin(TagCloudMetrics.Stage.RENDER);
+        ByteArrayOutputStream html = new ByteArrayOutputStream();
+        HtmlRenderer renderer = new HtmlRenderer();
+        renderer.render(Channels.newChannel(html), s2, title, maxAndMin[0],
+                maxAndMin[1]);
+        span.end(s2.size(), renderer.written());
+        run.end(m.size(), s2.size(), renderer.written());
+        return html.toByteArray();
+    }
+
+    /**
+     * Handles a request for the metrics.
+     *
+     * @param exchange
+     *            the exchange
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, "text/plain; charset=UTF-8",
+                    (this.cache.statistics() + "\n")
+                            .getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
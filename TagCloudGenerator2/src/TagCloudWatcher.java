@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the tag cloud of a growing input file up to date. The directory of
+ * the file is watched for changes; the bytes appended since the last update
+ * are counted into the existing counts, and the cloud is rewritten only if
+ * the words shown or any of their font sizes changed.
+ *
+ * <p>
+ * Changes are debounced: after a change is noticed, counting waits for the
+ * debounce interval, and all changes made meanwhile lead to a single update.
+ * So the cloud is updated at most once per interval however often the file
+ * is written. Since change notifications are not delivered for
+ * every file system (network file systems in particular), the size of the
+ * file is also checked periodically.
+ *
+ * <p>
+ * Words are counted once a separator follows them. If the file is truncated
+ * or rewritten rather than appended to, it is counted again from the start.
+ * Each update is recorded by {@code TagCloudMetrics} as a run. An update
+ * that fails, say because the file is being rotated, is reported, and
+ * watching goes on.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class TagCloudWatcher {
+
+    /**
+     * Interval, in milliseconds, at which the file size is checked when no
+     * change notification arrives.
+     */
+    private static final long POLL_MILLIS = 10000;
+
+    /**
+     * The input file.
+     */
+    private final Path input;
+
+    /**
+     * The HTML file to keep up to date.
+     */
+    private final Path output;
+
+    /**
+     * The number of words in the cloud.
+     */
+    private final int size;
+
+    /**
+     * Debounce interval in milliseconds.
+     */
+    private final long debounce;
+
+    /**
+     * The counts, and how far the input was counted.
+     */
+    private final CountSnapshot counts = new CountSnapshot();
+
+    /**
+     * The name of the input in {@code counts}.
+     */
+    private final String name;
+
+    /**
+     * The font size and word of each word of the cloud last written.
+     */
+    private List<String> shown = null;
+
+    /**
+     * Writes the cloud.
+     */
+    private final HtmlRenderer renderer = new HtmlRenderer();
+
+    /**
+     * Number of times the cloud was written.
+     */
+    private int writes = 0;
+
+    /**
+     * Number of updates of {@code run} that failed.
+     */
+    private volatile int failures = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param input
+     *            the input file
+     * @param output
+     *            the HTML file to keep up to date
+     * @param size
+     *            the number of words in the cloud
+     * @param debounce
+     *            the debounce interval in milliseconds
+     */
+    TagCloudWatcher(Path input, Path output, int size, long debounce) {
+        this.input = input.toAbsolutePath().normalize();
+        this.output = output.toAbsolutePath().normalize();
+        this.size = size;
+        this.debounce = debounce;
+        this.name = this.input.toString();
+    }
+
+    /**
+     * Counts the bytes appended to the input since the last update, and
+     * rewrites the cloud if what it shows changed.
+     *
+     * @return true iff the cloud was rewritten
+     * @throws IOException
+     *             file read or write problem
+     */
+    boolean update() throws IOException {
+        TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+        long before = this.renderer.written();
+        try (FileChannel ch = FileChannel.open(this.input,
+                StandardOpenOption.READ)) {
+            if (!this.counts.isResumable(ch, this.name)) {
+                this.counts.reset(this.name);
+            }
+            this.counts.update(ch, this.name);
+        }
+        WordCounter m = this.counts.counts(this.name);
+        int[] maxAndMin = new int[2];
+        List<Map.Entry<String, Integer>> s = TagCloudGenerator
+                .getWordsAlphabetical(
+                        TagCloudGenerator.getWordsFrequency(m, this.size),
+                        maxAndMin);
+        List<String> visible = new ArrayList<>();
+        for (Map.Entry<String, Integer> p : s) {
+            visible.add(TagCloudGenerator.fontSize(p.getValue(), maxAndMin[0],
+                    maxAndMin[1]) + " " + p.getKey());
+        }
+        boolean changed = !visible.equals(this.shown);
+        if (changed) {
+            this.write(s, maxAndMin[0], maxAndMin[1]);
+            this.shown = visible;
+        }
+        run.end(m.size(), s.size(), this.renderer.written() - before);
+        return changed;
+    }
+
+    /**
+     * Writes the cloud, atomically replacing the output.
+     *
+     * @param s
+     *            the words of the cloud, in alphabetical order
+     * @param max
+     *            the count of word that appears the most
+     * @param min
+     *            the count of word that appears the least
+     * @throws IOException
+     *             file write problem
+     */
+    private void write(List<Map.Entry<String, Integer>> s, int max, int min)
+            throws IOException {
+        this.renderer.write(this.output, s,
+                this.input.getFileName().toString(), max, min);
+        this.writes++;
+    }
+
+    /**
+     * Returns the number of times the cloud was written.
+     *
+     * @return the number of writes
+     */
+    int writes() {
+        return this.writes;
+    }
+
+    /**
+     * Returns the number of updates of {@code run} that failed.
+     *
+     * @return the number of failed updates
+     */
+    int failures() {
+        return this.failures;
+    }
+
+    /**
+     * Tells whether a watch key reports a change to the input.
+     *
+     * @param key
+     *            the key of the input's directory
+     * @return true iff one of its pending events concerns the input
+     */
+    private boolean concernsInput(WatchKey key) {
+        boolean found = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || this.input.getFileName().equals(event.context())) {
+                found = true;
+            }
+        }
+        key.reset();
+        return found;
+    }
+
+    /**
+     * Updates the cloud, reporting a failure to read the input or to write
+     * the cloud instead of throwing it, since the next change may well fix
+     * it (as when the input is rotated).
+     *
+     * @return true iff the cloud was rewritten
+     */
+    private boolean tryUpdate() {
+        try {
+            return this.update();
+        } catch (IOException e) {
+            this.failures++;
+            System.err.println("Error updating cloud: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the size of the input.
+     *
+     * @return the size of the input, -1 if it is missing or unreadable
+     */
+    private long inputSize() {
+        long size = -1;
+        try {
+            size = Files.size(this.input);
+        } catch (IOException e) {
+            // missing for now, as during rotation
+        }
+        return size;
+    }
+
+    /**
+     * Updates the cloud, then keeps updating it as the input changes, until
+     * interrupted. A failed update is reported, and watching goes on.
+     *
+     * @throws IOException
+     *             if the directory of the input cannot be watched
+     * @throws InterruptedException
+     *             when interrupted, which is the only way to stop watching
+     */
+    void run() throws IOException, InterruptedException {
+        try (WatchService watcher = this.input.getFileSystem()
+                .newWatchService()) {
+            this.input.getParent().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            long counted = this.inputSize();
+            this.tryUpdate();
+            while (true) {
+                WatchKey key = watcher.poll(POLL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                boolean changed;
+                if (key != null) {
+                    changed = this.concernsInput(key);
+                } else {
+                    long size = this.inputSize();
+                    changed = size >= 0 && size != counted;
+                }
+                if (changed) {
+                    Thread.sleep(this.debounce);
+                    key = watcher.poll();
+                    while (key != null) {
+                        this.concernsInput(key);
+                        key = watcher.poll();
+                    }
+                    counted = this.inputSize();
+                    if (counted >= 0 && this.tryUpdate()) {
+                        System.out.println("Cloud updated.");
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,758 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.ObjectName;
+
+/**
+ * Counts the words of an input in a pipeline of stages connected by bounded
+ * queues, so that reading overlaps with tokenizing and counting:
+ * <ol>
+ * <li>a reader stage reads large blocks of bytes, each cut just after a
+ * separator so that no word spans two blocks;</li>
+ * <li>tokenizer stages split blocks into words and append each word to a
+ * batch for the counter shard its hash selects;</li>
+ * <li>counter stages each count the words of their own shard in their own
+ * {@code WordCounter}.</li>
+ * </ol>
+ * Every stage runs on its own (virtual, where available) thread. The counter
+ * shards are merged once all stages are done.
+ *
+ * <p>
+ * While the pipeline runs, each stage is published through JMX as
+ * {@code TagCloudGenerator:type=Pipeline,stage=<name>}, so that its queue
+ * depth and throughput can be watched as it goes.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class TokenPipeline {
+
+    /**
+     * Default size of the blocks read.
+     */
+    static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Largest number of bytes of one word carried from a block to the next.
+     */
+    static final int MAX_CARRY = 1 << 20;
+
+    /**
+     * Number of bytes of words in a batch.
+     */
+    private static final int BATCH_BYTES = 1 << 16;
+
+    /**
+     * Maximum number of words in a batch.
+     */
+    private static final int BATCH_WORDS = 1 << 12;
+
+    /**
+     * Default capacity of each queue between stages.
+     */
+    static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * Prefix of the JMX names of the stages.
+     */
+    private static final String STAGE_NAME = "TagCloudGenerator:type=Pipeline,"
+            + "stage=";
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final double MEGABYTE = 1 << 20;
+
+    /**
+     * A block of input bytes that starts and ends on a word boundary.
+     */
+    private static final class Block {
+
+        /**
+         * Marks the end of the input.
+         */
+        static final Block END = new Block(new byte[0], 0);
+
+        /**
+         * The bytes of the block.
+         */
+        final byte[] bytes;
+
+        /**
+         * Number of bytes in use.
+         */
+        final int length;
+
+        /**
+         * Constructor.
+         *
+         * @param bytes
+         *            the bytes of the block
+         * @param length
+         *            number of bytes in use
+         */
+        Block(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * A batch of words for one counter shard, stored back to back.
+     */
+    private static final class Batch {
+
+        /**
+         * Marks the end of the input.
+         */
+        static final Batch END = new Batch();
+
+        /**
+         * The bytes of the words.
+         */
+        private byte[] bytes = new byte[BATCH_BYTES];
+
+        /**
+         * Offset just past the end of each word.
+         */
+        private final int[] ends = new int[BATCH_WORDS];
+
+        /**
+         * Number of words in the batch.
+         */
+        private int words = 0;
+
+        /**
+         * Number of bytes in use.
+         */
+        private int length = 0;
+
+        /**
+         * Appends a word to the batch.
+         *
+         * @param word
+         *            the bytes holding the word
+         * @param len
+         *            the length of the word
+         */
+        void add(byte[] word, int len) {
+            if (this.length + len > this.bytes.length) {
+                byte[] bigger = new byte[Math.max(2 * this.bytes.length,
+                        this.length + len)];
+                System.arraycopy(this.bytes, 0, bigger, 0, this.length);
+                this.bytes = bigger;
+            }
+            System.arraycopy(word, 0, this.bytes, this.length, len);
+            this.length += len;
+            this.ends[this.words] = this.length;
+            this.words++;
+        }
+
+        /**
+         * Tells whether the batch should be handed to its counter.
+         *
+         * @return true iff the batch is full
+         */
+        boolean isFull() {
+            return this.words == BATCH_WORDS || this.length >= BATCH_BYTES;
+        }
+
+    }
+
+    /**
+     * Running totals of one kind of stage.
+     */
+    static final class Stage implements TokenPipelineStageMBean {
+
+        /**
+         * Name of the stage.
+         */
+        private final String name;
+
+        /**
+         * Items (blocks or batches) processed.
+         */
+        private final AtomicLong items = new AtomicLong();
+
+        /**
+         * Bytes processed.
+         */
+        private final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * Time spent working rather than waiting on queues, in nanoseconds,
+         * summed over the threads of the stage.
+         */
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        /**
+         * The queues feeding the stage.
+         */
+        private final List<BlockingQueue<?>> inputs = new ArrayList<>();
+
+        /**
+         * Number of samples of the depth of the input queues.
+         */
+        private final AtomicLong depthSamples = new AtomicLong();
+
+        /**
+         * Sum of the sampled depths of the input queues.
+         */
+        private final AtomicLong depthSum = new AtomicLong();
+
+        /**
+         * Largest sampled depth of an input queue.
+         */
+        private final AtomicLong maxDepth = new AtomicLong();
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            name of the stage
+         */
+        Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records that an item was processed.
+         *
+         * @param size
+         *            the number of bytes in the item
+         * @param nanos
+         *            the time spent processing it
+         */
+        void processed(long size, long nanos) {
+            this.items.incrementAndGet();
+            this.bytes.addAndGet(size);
+            this.busyNanos.addAndGet(nanos);
+        }
+
+        /**
+         * Records the depth of one input queue of the stage.
+         *
+         * @param depth
+         *            the number of items waiting in the queue
+         */
+        void sampleDepth(int depth) {
+            this.depthSamples.incrementAndGet();
+            this.depthSum.addAndGet(depth);
+            this.maxDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        /**
+         * Returns the current number of items waiting in the input queues of
+         * the stage.
+         *
+         * @return the current queue depth
+         */
+        @Override
+        public int getQueueDepth() {
+            int depth = 0;
+            for (BlockingQueue<?> q : this.inputs) {
+                depth += q.size();
+            }
+            return depth;
+        }
+
+        /**
+         * Returns the throughput of the stage while busy, in megabytes per
+         * second per thread.
+         *
+         * @return the throughput
+         */
+        @Override
+        public double getThroughput() {
+            double seconds = this.busyNanos.get() / NANOS_PER_SECOND;
+            double result = 0;
+            if (seconds > 0) {
+                result = this.bytes.get() / MEGABYTE / seconds;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-9s %8d items %10.1f MB %8.1f MB/s "
+                            + "queue depth avg %.1f max %d",
+                    this.name, this.items.get(), this.bytes.get() / MEGABYTE,
+                    this.getThroughput(),
+                    this.getAverageQueueDepth(),
+                    this.maxDepth.get());
+        }
+
+        @Override
+        public long getItems() {
+            return this.items.get();
+        }
+
+        @Override
+        public long getBytes() {
+            return this.bytes.get();
+        }
+
+        @Override
+        public double getAverageQueueDepth() {
+            return (double) this.depthSum.get()
+                    / Math.max(1, this.depthSamples.get());
+        }
+
+        @Override
+        public long getMaxQueueDepth() {
+            return this.maxDepth.get();
+        }
+
+    }
+
+    /**
+     * The reader stage.
+     */
+    private final Stage reader = new Stage("reader");
+
+    /**
+     * The tokenizer stages.
+     */
+    private final Stage tokenizer = new Stage("tokenizer");
+
+    /**
+     * The counter stages.
+     */
+    private final Stage counter = new Stage("counter");
+
+    /**
+     * Number of tokenizer threads.
+     */
+    private final int tokenizers;
+
+    /**
+     * Size of the blocks read.
+     */
+    private final int blockSize;
+
+    /**
+     * Blocks waiting to be tokenized.
+     */
+    private final BlockingQueue<Block> blocks;
+
+    /**
+     * Batches waiting to be counted, one queue per counter shard.
+     */
+    private final List<BlockingQueue<Batch>> batches = new ArrayList<>();
+
+    /**
+     * The counts of each shard.
+     */
+    private final List<WordCounter> shards = new ArrayList<>();
+
+    /**
+     * The first failure of any stage.
+     */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Constructor, with blocks of {@code BLOCK_SIZE} bytes and queues of
+     * {@code QUEUE_CAPACITY} items.
+     *
+     * @param tokenizers
+     *            the number of tokenizer threads
+     * @param counters
+     *            the number of counter threads, each owning one shard
+     * @requires tokenizers > 0 and counters > 0
+     */
+    TokenPipeline(int tokenizers, int counters) {
+        this(tokenizers, counters, BLOCK_SIZE, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tokenizers
+     *            the number of tokenizer threads
+     * @param counters
+     *            the number of counter threads, each owning one shard
+     * @param blockSize
+     *            the size of the blocks read
+     * @param queueCapacity
+     *            the capacity of each queue between stages
+     * @requires tokenizers > 0 and counters > 0 and blockSize > 0 and
+     *           queueCapacity > 0
+     */
+    TokenPipeline(int tokenizers, int counters, int blockSize,
+            int queueCapacity) {
+        assert tokenizers > 0 : "Violation of: tokenizers > 0";
+        assert counters > 0 : "Violation of: counters > 0";
+        assert blockSize > 0 : "Violation of: blockSize > 0";
+        assert queueCapacity > 0 : "Violation of: queueCapacity > 0";
+        this.tokenizers = tokenizers;
+        this.blockSize = blockSize;
+        this.blocks = new ArrayBlockingQueue<>(queueCapacity);
+        this.tokenizer.inputs.add(this.blocks);
+        for (int i = 0; i < counters; i++) {
+            BlockingQueue<Batch> q = new ArrayBlockingQueue<>(queueCapacity);
+            this.batches.add(q);
+            this.counter.inputs.add(q);
+            this.shards.add(new WordCounter());
+        }
+    }
+
+    /**
+     * Returns the stages of the pipeline, for monitoring.
+     *
+     * @return the reader, tokenizer and counter stages
+     */
+    List<Stage> stages() {
+        List<Stage> list = new ArrayList<>();
+        list.add(this.reader);
+        list.add(this.tokenizer);
+        list.add(this.counter);
+        return list;
+    }
+
+    /**
+     * Puts an item in a queue, sampling the depth of the queue first.
+     *
+     * @param <T>
+     *            type of the items
+     * @param q
+     *            the queue
+     * @param item
+     *            the item
+     * @param consumer
+     *            the stage consuming from {@code q}
+     * @return the time spent waiting for room in the queue, in nanoseconds
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static <T> long put(BlockingQueue<T> q, T item, Stage consumer)
+            throws InterruptedException {
+        consumer.sampleDepth(q.size());
+        long start = System.nanoTime();
+        q.put(item);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Records a failure of a stage.
+     *
+     * @param t
+     *            the failure
+     */
+    private void fail(Throwable t) {
+        this.failure.compareAndSet(null, t);
+    }
+
+    /**
+     * Returns the offset just past the last separator in
+     * {@code bytes[0, length)}.
+     *
+     * @param bytes
+     *            the bytes to search
+     * @param length
+     *            the number of bytes to search
+     * @return the offset, 0 if there is no separator
+     */
+    private static int cut(byte[] bytes, int length) {
+        int i = length;
+        while (i > 0 && !WordScanner.isSeparator(bytes[i - 1])) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * The reader stage: reads blocks and cuts them after their last
+     * separator, carrying the partial word at the end to the next block. A
+     * word longer than both a block and {@code MAX_CARRY} is dropped, up to
+     * the separator that ends it, as the scanners drop words over their
+     * largest length.
+     *
+     * @param in
+     *            the input
+     */
+    private void read(ReadableByteChannel in) {
+        boolean interrupted = false;
+        try {
+            byte[] buf = new byte[this.blockSize];
+            int len = 0;
+            boolean eof = false;
+            boolean skipping = false;
+            long busy = 0;
+            while (!eof) {
+                long start = System.nanoTime();
+                if (len == buf.length) {
+                    if (len >= MAX_CARRY) {
+                        len = 0;
+                        skipping = true;
+                    } else {
+                        buf = Arrays.copyOf(buf,
+                                Math.min(2 * buf.length, MAX_CARRY));
+                    }
+                }
+                int n = in.read(ByteBuffer.wrap(buf, len, buf.length - len));
+                eof = n < 0;
+                if (n > 0) {
+                    len += n;
+                }
+                if (skipping) {
+                    int first = 0;
+                    while (first < len
+                            && !WordScanner.isSeparator(buf[first])) {
+                        first++;
+                    }
+                    skipping = first == len;
+                    System.arraycopy(buf, first, buf, 0, len - first);
+                    len -= first;
+                }
+                int end = len;
+                if (!eof) {
+                    end = cut(buf, len);
+                }
+                busy += System.nanoTime() - start;
+                if ((eof || len == buf.length) && end > 0) {
+                    byte[] next = new byte[Math.max(this.blockSize,
+                            len - end)];
+                    System.arraycopy(buf, end, next, 0, len - end);
+                    this.reader.processed(end, busy);
+                    busy = 0;
+                    put(this.blocks, new Block(buf, end), this.tokenizer);
+                    buf = next;
+                    len -= end;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.fail(e);
+        } catch (InterruptedException e) {
+            this.fail(e);
+            interrupted = true;
+        } finally {
+            int ends = 0;
+            while (ends < this.tokenizers) {
+                try {
+                    this.blocks.put(Block.END);
+                    ends++;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A tokenizer stage: splits blocks into words and routes each word to
+     * the batch of the counter shard selected by its hash.
+     */
+    private void tokenize() {
+        int shards = this.batches.size();
+        Batch[] open = new Batch[shards];
+        for (int i = 0; i < shards; i++) {
+            open[i] = new Batch();
+        }
+        AtomicReference<InterruptedException> interrupt =
+                new AtomicReference<>();
+        long[] waited = new long[1];
+        WordScanner scanner = new WordScanner((word, length) -> {
+            int h = 0;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + word[i];
+            }
+            int shard = (h & Integer.MAX_VALUE) % shards;
+            open[shard].add(word, length);
+            if (open[shard].isFull()) {
+                try {
+                    waited[0] += put(this.batches.get(shard), open[shard],
+                            this.counter);
+                } catch (InterruptedException e) {
+                    interrupt.set(e);
+                }
+                open[shard] = new Batch();
+            }
+        });
+        try {
+            Block b = this.blocks.take();
+            while (b != Block.END && interrupt.get() == null) {
+                long start = System.nanoTime();
+                waited[0] = 0;
+                scanner.scan(ByteBuffer.wrap(b.bytes, 0, b.length));
+                scanner.finish();
+                this.tokenizer.processed(b.length,
+                        System.nanoTime() - start - waited[0]);
+                b = this.blocks.take();
+            }
+            if (interrupt.get() != null) {
+                throw interrupt.get();
+            }
+            for (int i = 0; i < shards; i++) {
+                if (open[i].words > 0) {
+                    put(this.batches.get(i), open[i], this.counter);
+                }
+            }
+        } catch (InterruptedException e) {
+            this.fail(e);
+            drain(this.blocks, Block.END);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            this.fail(e);
+            drain(this.blocks, Block.END);
+        }
+    }
+
+    /**
+     * Takes items from the queue of a failed stage until the end marker, so
+     * that the stages before it are not blocked forever.
+     *
+     * @param <T>
+     *            type of the items
+     * @param q
+     *            the queue
+     * @param end
+     *            the end marker
+     */
+    private static <T> void drain(BlockingQueue<T> q, T end) {
+        try {
+            while (q.take() != end) {
+                continue;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A counter stage: counts the words of the batches of one shard.
+     *
+     * @param shard
+     *            the shard
+     */
+    private void count(int shard) {
+        BlockingQueue<Batch> q = this.batches.get(shard);
+        WordCounter m = this.shards.get(shard);
+        WordScanner.CountingSink sink = WordScanner.counting(m::increment);
+        try {
+            Batch b = q.take();
+            while (b != Batch.END) {
+                long start = System.nanoTime();
+                int from = 0;
+                for (int i = 0; i < b.words; i++) {
+                    sink.word(b.bytes, from, b.ends[i] - from);
+                    from = b.ends[i];
+                }
+                this.counter.processed(b.length, System.nanoTime() - start);
+                b = q.take();
+            }
+        } catch (InterruptedException e) {
+            this.fail(e);
+            drain(q, Batch.END);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            this.fail(e);
+            drain(q, Batch.END);
+        }
+    }
+
+    /**
+     * Counts all the words of the given input.
+     *
+     * @param in
+     *            the input
+     * @return the counter of words and their count
+     * @throws IOException
+     *             if reading fails or the pipeline is interrupted
+     */
+    WordCounter run(ReadableByteChannel in) throws IOException {
+        List<ObjectName> published = new ArrayList<>();
+        for (Stage stage : this.stages()) {
+            ObjectName name = TagCloudMetrics.publish(STAGE_NAME + stage.name,
+                    stage, TokenPipelineStageMBean.class);
+            if (name != null) {
+                published.add(name);
+            }
+        }
+        try {
+            return this.runStages(in);
+        } finally {
+            for (ObjectName name : published) {
+                TagCloudMetrics.unpublish(name);
+            }
+        }
+    }
+
+    /**
+     * Runs the stages on the given input and merges the counts of the
+     * shards.
+     *
+     * @param in
+     *            the input
+     * @return the counter of words and their count
+     * @throws IOException
+     *             if reading fails or the pipeline is interrupted
+     */
+    private WordCounter runStages(ReadableByteChannel in) throws IOException {
+        List<Thread> tokenizerThreads = new ArrayList<>();
+        List<Thread> counterThreads = new ArrayList<>();
+        TagCloudMetrics.Run run = TagCloudMetrics.current();
+        Thread readerThread = VirtualThreads.start("tagcloud-reader",
+                () -> this.read(in));
+        for (int i = 0; i < this.tokenizers; i++) {
+            tokenizerThreads.add(VirtualThreads
+                    .start("tagcloud-tokenizer-" + i, () -> {
+                        TagCloudMetrics.attach(run);
+                        this.tokenize();
+                    }));
+        }
+        for (int i = 0; i < this.shards.size(); i++) {
+            int shard = i;
+            counterThreads.add(VirtualThreads.start("tagcloud-counter-" + i,
+                    () -> {
+                        TagCloudMetrics.attach(run);
+                        this.count(shard);
+                    }));
+        }
+        try {
+            readerThread.join();
+            for (Thread t : tokenizerThreads) {
+                t.join();
+            }
+            for (BlockingQueue<Batch> q : this.batches) {
+                q.put(Batch.END);
+            }
+            for (Thread t : counterThreads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting words.", e);
+        }
+        Throwable t = this.failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IOException("Counting words failed.", t);
+        }
+        WordCounter m = this.shards.get(0);
+        for (int i = 1; i < this.shards.size(); i++) {
+            m.addAll(this.shards.get(i));
+        }
+        return m;
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * Management interface of a stage of a {@code TokenPipeline}: its progress
+ * and the depth of its input queues, as seen through JMX while the pipeline
+ * runs.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+public interface TokenPipelineStageMBean {
+
+    /**
+     * Returns the number of items (blocks or batches) processed.
+     *
+     * @return the items processed
+     */
+    long getItems();
+
+    /**
+     * Returns the number of bytes processed.
+     *
+     * @return the bytes processed
+     */
+    long getBytes();
+
+    /**
+     * Returns the throughput of the stage while busy, in megabytes per
+     * second per thread.
+     *
+     * @return the throughput
+     */
+    double getThroughput();
+
+    /**
+     * Returns the current number of items waiting in the input queues of the
+     * stage.
+     *
+     * @return the current queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the average depth of an input queue of the stage, sampled each
+     * time an item is put in it.
+     *
+     * @return the average queue depth
+     */
+    double getAverageQueueDepth();
+
+    /**
+     * Returns the largest sampled depth of an input queue of the stage.
+     *
+     * @return the largest queue depth
+     */
+    long getMaxQueueDepth();
+
+}
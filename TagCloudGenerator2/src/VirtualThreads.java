@@ -0,0 +1,139 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts threads as virtual threads when the running JRE supports them (Java
+ * 21 and later), and as ordinary daemon threads otherwise, so that this
+ * program still runs on older JREs.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class VirtualThreads {
+
+    /**
+     * Seconds after which an idle thread of a fallback pool ends.
+     */
+    private static final long IDLE_SECONDS = 60;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * {@code Thread.ofVirtual()}, or {@code null} if not available.
+     */
+    private static final Method OF_VIRTUAL;
+
+    /**
+     * {@code Thread.Builder.name(String)}.
+     */
+    private static final Method NAME;
+
+    /**
+     * {@code Thread.Builder.start(Runnable)}.
+     */
+    private static final Method START;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method start = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            start = builder.getMethod("start", Runnable.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        START = start;
+    }
+
+    /**
+     * Tells whether virtual threads can be started.
+     *
+     * @return true iff the running JRE supports virtual threads and they are
+     *         enabled
+     */
+    static boolean available() {
+        if (OF_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            OF_VIRTUAL.invoke(null);
+            return true;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            // virtual threads are a disabled preview feature
+            return false;
+        }
+    }
+
+    /**
+     * Starts a new thread running the given task.
+     *
+     * @param name
+     *            the name of the thread
+     * @param task
+     *            the task to run
+     * @return the started thread
+     */
+    static Thread start(String name, Runnable task) {
+        Thread t = null;
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                t = (Thread) START.invoke(builder, task);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                // virtual threads are a disabled preview feature
+                t = null;
+            }
+        }
+        if (t == null) {
+            t = new Thread(task, name);
+            t.setDaemon(true);
+            t.start();
+        }
+        return t;
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread, since
+     * virtual threads are cheap enough to start one per task. Without
+     * virtual threads, tasks are run by a pool of at most {@code threads}
+     * daemon threads, and wait in a queue while all of them are busy, so
+     * that a burst of tasks does not start a platform thread each.
+     *
+     * @param name
+     *            the name of the threads
+     * @param threads
+     *            the largest number of threads of the fallback pool
+     * @return the executor
+     * @requires threads > 0
+     */
+    static Executor executor(String name, int threads) {
+        assert threads > 0 : "Violation of: threads > 0";
+        if (available()) {
+            return task -> start(name, task);
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                task -> {
+                    Thread t = new Thread(task, name);
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+}
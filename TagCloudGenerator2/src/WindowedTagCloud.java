@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the tag cloud of the words of a live log stream over the last few
+ * minutes. The words are counted by a {@code WindowedWordCount} with one
+ * bucket per minute, and the cloud is rewritten each time a bucket expires.
+ *
+ * <p>
+ * A regular input file is followed like {@code tail -f}: counting starts at
+ * its current end, and bytes appended later are counted as they arrive; if
+ * the file is truncated, it is followed again from its start. Any other
+ * input, such as a named pipe, is read until its end. Since reading a pipe
+ * blocks, buckets of a pipe expire only when more bytes arrive or the pipe
+ * ends. Each cloud written is recorded by {@code TagCloudMetrics} as a run
+ * of the text scanned since the previous one.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class WindowedTagCloud {
+
+    /**
+     * Duration of a bucket in milliseconds.
+     */
+    private static final long BUCKET_MILLIS = 60000;
+
+    /**
+     * Interval, in milliseconds, at which a followed file is checked for new
+     * bytes.
+     */
+    private static final long POLL_MILLIS = 200;
+
+    /**
+     * Size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The input file or stream.
+     */
+    private final Path input;
+
+    /**
+     * The HTML file to keep up to date.
+     */
+    private final Path output;
+
+    /**
+     * The length of the window in minutes.
+     */
+    private final int minutes;
+
+    /**
+     * The counts of the window.
+     */
+    private final WindowedWordCount counts;
+
+    /**
+     * Writes the cloud.
+     */
+    private final HtmlRenderer renderer = new HtmlRenderer();
+
+    /**
+     * Constructor.
+     *
+     * @param input
+     *            the input file or stream
+     * @param output
+     *            the HTML file to keep up to date
+     * @param size
+     *            the number of words in the cloud
+     * @param minutes
+     *            the length of the window in minutes
+     * @requires minutes > 0
+     */
+    WindowedTagCloud(Path input, Path output, int size, int minutes) {
+        this.input = input;
+        this.output = output;
+        this.minutes = minutes;
+        this.counts = new WindowedWordCount(minutes, BUCKET_MILLIS, size,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Writes the cloud of the current top words of the window, and ends the
+     * run of the text scanned since the last one.
+     *
+     * @param scanner
+     *            the scanner of the input
+     * @param run
+     *            the run of the text scanned since the last cloud
+     * @throws IOException
+     *             file write problem
+     */
+    private void write(WordScanner scanner, TagCloudMetrics.Run run)
+            throws IOException {
+        scanner.report();
+        int[] maxAndMin = new int[2];
+        List<Map.Entry<String, Integer>> s = TagCloudGenerator
+                .getWordsAlphabetical(this.counts.top(), maxAndMin);
+        long before = this.renderer.written();
+        this.renderer.write(this.output, s,
+                this.input.getFileName() + ", last " + this.minutes
+                        + " minutes",
+                maxAndMin[0], maxAndMin[1]);
+        run.end(this.counts.size(), s.size(),
+                this.renderer.written() - before);
+    }
+
+    /**
+     * Counts the input as it arrives and rewrites the cloud whenever a
+     * bucket expires, until the end of a stream that is not a regular file,
+     * or until interrupted.
+     *
+     * @throws IOException
+     *             read or write problem
+     * @throws InterruptedException
+     *             when interrupted, which is the normal way to stop following
+     *             a regular file
+     */
+    void run() throws IOException, InterruptedException {
+        boolean follow = Files.isRegularFile(this.input);
+        WordScanner scanner = new WordScanner(this.counts,
+                WordScanner.MAX_WORD_LENGTH);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.write(scanner, TagCloudMetrics.beginRun());
+        TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+        try (SeekableByteChannel ch = Files.newByteChannel(this.input)) {
+            if (follow) {
+                ch.position(ch.size());
+            }
+            int n = 0;
+            while (n >= 0 || follow) {
+                if (follow && ch.size() < ch.position()) {
+                    ch.position(0);
+                }
+                n = ch.read(buffer);
+                if (n > 0) {
+                    buffer.flip();
+                    scanner.scan(buffer);
+                    buffer.clear();
+                } else if (follow) {
+                    Thread.sleep(POLL_MILLIS);
+                }
+                if (this.counts.advance(System.currentTimeMillis())) {
+                    this.write(scanner, run);
+                    run = TagCloudMetrics.beginRun();
+                }
+            }
+        }
+        scanner.finish();
+        this.write(scanner, run);
+    }
+
+}
@@ -0,0 +1,200 @@
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Counts the words of a stream over a sliding time window, and keeps the
+ * words with the most counts in the window up to date as words arrive.
+ *
+ * <p>
+ * The window is made of a fixed number of buckets of equal duration, each
+ * with its own table of the words counted during it, and a table of the
+ * total counts of the window. A word is added to the current bucket and to
+ * the total. When a bucket expires, its counts are subtracted from the total
+ * and its table is reused for the new current bucket, so no word is ever
+ * counted again. A window of {@code n} buckets of one minute thus holds the
+ * words of the last {@code n - 1} to {@code n} minutes.
+ *
+ * <p>
+ * Between expiries counts only grow, so the top words are kept exactly by
+ * checking each counted word against the word with the least counts among
+ * them; only words reaching that count are decoded. Since subtracting a
+ * bucket may lower any count, the top words are selected again from the
+ * total when a bucket expires.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class WindowedWordCount implements WordScanner.Sink {
+
+    /**
+     * Orders words with more counts first, as the clouds do.
+     */
+    private static final Comparator<Map.Entry<String, Integer>> ORDER =
+            new TagCloudGenerator.MapPairValueLT();
+
+    /**
+     * The counts of each bucket, in a ring.
+     */
+    private final ByteWordCounter[] buckets;
+
+    /**
+     * The total counts of all buckets.
+     */
+    private final ByteWordCounter window = new ByteWordCounter();
+
+    /**
+     * Duration of a bucket in milliseconds.
+     */
+    private final long bucketMillis;
+
+    /**
+     * Number of top words kept.
+     */
+    private final int size;
+
+    /**
+     * Index in {@code buckets} of the current bucket.
+     */
+    private int current = 0;
+
+    /**
+     * Time at which the current bucket expires, in milliseconds.
+     */
+    private long bucketEnd;
+
+    /**
+     * The top words with their counts in the window, more counts first.
+     */
+    private final NavigableSet<Map.Entry<String, Integer>> top = new TreeSet<>(
+            ORDER);
+
+    /**
+     * The entry in {@code top} of each top word.
+     */
+    private final Map<String, Map.Entry<String, Integer>> members =
+            new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param buckets
+     *            the number of buckets in the window
+     * @param bucketMillis
+     *            the duration of a bucket in milliseconds
+     * @param size
+     *            the number of top words to keep
+     * @param start
+     *            the time at which the first bucket starts, in milliseconds
+     * @requires buckets > 0 and bucketMillis > 0 and size >= 0
+     */
+    WindowedWordCount(int buckets, long bucketMillis, int size, long start) {
+        assert buckets > 0 : "Violation of: buckets > 0";
+        assert bucketMillis > 0 : "Violation of: bucketMillis > 0";
+        this.buckets = new ByteWordCounter[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new ByteWordCounter();
+        }
+        this.bucketMillis = bucketMillis;
+        this.size = size;
+        this.bucketEnd = start + bucketMillis;
+    }
+
+    @Override
+    public void word(byte[] word, int length) {
+        this.buckets[this.current].word(word, length);
+        int slot = this.window.wordSlot(word, length);
+        int count = this.window.countAt(slot);
+        if (this.size == 0 || (this.top.size() == this.size
+                && count < this.top.last().getValue())) {
+            return;
+        }
+        Map.Entry<String, Integer> p = new SimpleImmutableEntry<>(
+                this.window.wordAt(slot), count);
+        Map.Entry<String, Integer> old = this.members.get(p.getKey());
+        if (old != null) {
+            this.top.remove(old);
+        } else if (this.top.size() == this.size) {
+            if (ORDER.compare(p, this.top.last()) > 0) {
+                return;
+            }
+            this.members.remove(this.top.pollLast().getKey());
+        }
+        this.top.add(p);
+        this.members.put(p.getKey(), p);
+    }
+
+    /**
+     * Expires the buckets ending at or before {@code now}. If buckets
+     * expired, the top words are selected again.
+     *
+     * @param now
+     *            the current time in milliseconds
+     * @return true iff at least one bucket expired
+     */
+    boolean advance(long now) {
+        if (now < this.bucketEnd) {
+            return false;
+        }
+        long expired = (now - this.bucketEnd) / this.bucketMillis + 1;
+        if (expired >= this.buckets.length) {
+            for (ByteWordCounter bucket : this.buckets) {
+                bucket.clear();
+            }
+            this.window.clear();
+        } else {
+            for (long k = 0; k < expired; k++) {
+                this.current = (this.current + 1) % this.buckets.length;
+                this.window.subtractAll(this.buckets[this.current]);
+                this.buckets[this.current].clear();
+            }
+        }
+        this.bucketEnd += expired * this.bucketMillis;
+        this.top.clear();
+        this.members.clear();
+        for (Map.Entry<String, Integer> p : TagCloudGenerator
+                .getWordsFrequency(this.window, this.size)) {
+            this.top.add(p);
+            this.members.put(p.getKey(), p);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the top words of the window.
+     *
+     * @return the top words and their counts in the window, with more counts
+     *         being in the front
+     */
+    List<Map.Entry<String, Integer>> top() {
+        return new ArrayList<>(this.top);
+    }
+
+    /**
+     * Returns the count of the given word in the window.
+     *
+     * @param word
+     *            the word
+     * @return the count of {@code word}, 0 if it was not counted in the
+     *         window
+     */
+    int get(String word) {
+        return this.window.get(word);
+    }
+
+    /**
+     * Returns the number of distinct words in the window.
+     *
+     * @return the number of distinct words
+     */
+    int size() {
+        return this.window.size();
+    }
+
+}
@@ -0,0 +1,203 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Stores the UTF-8 bytes of words one after another in large byte arrays
+ * ("slabs"), and refers to each word by an {@code int} handle: the index of
+ * its slab and its offset in the slab. The length of a word is kept by the
+ * caller.
+ *
+ * <p>
+ * A word costs its bytes and nothing else: no object header, no
+ * {@code String} and no {@code char[]} until it is decoded. Slabs are never
+ * copied: when the current one is full a new one is started, twice as large
+ * as the last up to {@code MAX_SLAB}, so the store grows without the copies
+ * and the doubled peak of a single growing array.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class WordArena {
+
+    /**
+     * Number of bits of a handle holding the offset in the slab.
+     */
+    private static final int OFFSET_BITS = 20;
+
+    /**
+     * Largest size of a slab, except for a slab holding a single longer
+     * word.
+     */
+    static final int MAX_SLAB = 1 << OFFSET_BITS;
+
+    /**
+     * Largest number of slabs, so that handles are non-negative.
+     */
+    private static final int MAX_SLABS = 1 << (Integer.SIZE - 1 - OFFSET_BITS);
+
+    /**
+     * Size of the first slab.
+     */
+    private static final int FIRST_SLAB = 1 << 14;
+
+    /**
+     * The slabs, of which {@code count} are in use.
+     */
+    private byte[][] slabs = new byte[4][];
+
+    /**
+     * Number of slabs in use.
+     */
+    private int count = 0;
+
+    /**
+     * Number of bytes in use in the last slab.
+     */
+    private int used = 0;
+
+    /**
+     * Constructor.
+     */
+    WordArena() {
+        this.slabs[0] = new byte[FIRST_SLAB];
+        this.count = 1;
+    }
+
+    /**
+     * Copies {@code b[off, off + len)} into the store.
+     *
+     * @param b
+     *            the bytes holding the word
+     * @param off
+     *            the offset of the word
+     * @param len
+     *            the length of the word
+     * @return the handle of the copy
+     * @throws IllegalStateException
+     *             if the store is full
+     */
+    int add(byte[] b, int off, int len) {
+        byte[] slab = this.slabs[this.count - 1];
+        if (slab.length - this.used < len) {
+            if (this.count == MAX_SLABS) {
+                throw new IllegalStateException("Word store is full.");
+            }
+            if (this.count == this.slabs.length) {
+                this.slabs = Arrays.copyOf(this.slabs, 2 * this.count);
+            }
+            slab = new byte[Math.max(len,
+                    Math.min(MAX_SLAB, 2 * slab.length))];
+            this.slabs[this.count] = slab;
+            this.count++;
+            this.used = 0;
+        }
+        System.arraycopy(b, off, slab, this.used, len);
+        int handle = ((this.count - 1) << OFFSET_BITS) | this.used;
+        this.used += len;
+        return handle;
+    }
+
+    /**
+     * Returns the slab holding the word of a handle.
+     *
+     * @param handle
+     *            the handle
+     * @return the slab
+     */
+    byte[] slab(int handle) {
+        return this.slabs[handle >>> OFFSET_BITS];
+    }
+
+    /**
+     * Returns the offset in its slab of the word of a handle.
+     *
+     * @param handle
+     *            the handle
+     * @return the offset
+     */
+    static int offset(int handle) {
+        return handle & (MAX_SLAB - 1);
+    }
+
+    /**
+     * Tells whether the word of a handle is {@code b[off, off + len)}.
+     *
+     * @param handle
+     *            the handle, of a word of length {@code len}
+     * @param b
+     *            the bytes holding the other word
+     * @param off
+     *            the offset of the other word
+     * @param len
+     *            the length of both words
+     * @return true iff the bytes are the same
+     */
+    boolean equals(int handle, byte[] b, int off, int len) {
+        int start = offset(handle);
+        return Arrays.equals(this.slab(handle), start, start + len, b, off,
+                off + len);
+    }
+
+    /**
+     * Decodes the word of a handle.
+     *
+     * @param handle
+     *            the handle
+     * @param len
+     *            the length of the word
+     * @return the word
+     */
+    String decode(int handle, int len) {
+        return new String(this.slab(handle), offset(handle), len,
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares two words of the store in the order of
+     * {@code String.compareTo}. UTF-8 bytes sort in code point order, which
+     * is the order of {@code String}s except between characters beyond
+     * U+FFFF and characters from U+E000 on; only words differing there are
+     * decoded.
+     *
+     * @param h1
+     *            the handle of the first word
+     * @param len1
+     *            its length
+     * @param h2
+     *            the handle of the second word
+     * @param len2
+     *            its length
+     * @return negative, 0 or positive as the first word comes before, is,
+     *         or comes after the second
+     */
+    int compare(int h1, int len1, int h2, int len2) {
+        byte[] a = this.slab(h1);
+        byte[] b = this.slab(h2);
+        int o1 = offset(h1);
+        int o2 = offset(h2);
+        int i = Arrays.mismatch(a, o1, o1 + len1, b, o2, o2 + len2);
+        if (i < 0) {
+            return 0;
+        }
+        if (i == len1 || i == len2) {
+            return len1 - len2;
+        }
+        int x = a[o1 + i] & 0xFF;
+        int y = b[o2 + i] & 0xFF;
+        if (x >= 0xEE && y >= 0xEE) {
+            return this.decode(h1, len1).compareTo(this.decode(h2, len2));
+        }
+        return x - y;
+    }
+
+    /**
+     * Removes all words, keeping the first slab.
+     */
+    void clear() {
+        Arrays.fill(this.slabs, 1, this.count, null);
+        this.count = 1;
+        this.used = 0;
+    }
+
+}
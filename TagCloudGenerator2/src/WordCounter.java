@@ -0,0 +1,275 @@
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counts occurrences of words. Words are looked up by a slice of any
+ * {@code CharSequence}, so counting a word that is already present allocates
+ * nothing; a {@code String} is only created when a new word is inserted.
+ *
+ * <p>
+ * Implemented as an open addressing hash table with linear probing over
+ * parallel arrays of keys, hashes and primitive {@code int} counts, so an
+ * increment costs a single probe sequence and no boxing.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class WordCounter implements WordCounts {
+
+    /**
+     * Initial number of slots; must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * The word in each slot, or {@code null} for an empty slot.
+     */
+    private String[] keys;
+
+    /**
+     * Hash of the word in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Count of the word in each slot.
+     */
+    private int[] counts;
+
+    /**
+     * Number of slots in use.
+     */
+    private int size = 0;
+
+    /**
+     * Number of slots in use above which the table grows.
+     */
+    private int threshold;
+
+    /**
+     * Constructor.
+     */
+    WordCounter() {
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Replaces the table with an empty one of the given capacity.
+     *
+     * @param capacity
+     *            the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.threshold = capacity / 4 * 3;
+    }
+
+    /**
+     * Hashes {@code text[start, end)}.
+     *
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return the hash
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Tells whether slot {@code i} holds {@code text[start, end)}.
+     *
+     * @param i
+     *            the slot
+     * @param h
+     *            the hash of the word
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return true iff slot {@code i} holds the word
+     */
+    private boolean holds(int i, int h, CharSequence text, int start,
+            int end) {
+        String key = this.keys[i];
+        if (this.hashes[i] != h || key.length() != end - start) {
+            return false;
+        }
+        for (int j = 0; j < key.length(); j++) {
+            if (key.charAt(j) != text.charAt(start + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot holding {@code text[start, end)}, or the empty slot
+     * where it would be inserted.
+     *
+     * @param h
+     *            the hash of the word
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return the slot
+     */
+    private int find(int h, CharSequence text, int start, int end) {
+        int mask = this.keys.length - 1;
+        int i = h & mask;
+        while (this.keys[i] != null && !this.holds(i, h, text, start, end)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Adds {@code n} to the count of {@code text[start, end)}.
+     *
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @param n
+     *            the amount to add
+     * @return the new count of the word
+     * @requires 0 <= start < end <= |text| and n > 0
+     */
+    int add(CharSequence text, int start, int end, int n) {
+        int h = hash(text, start, end);
+        int i = this.find(h, text, start, end);
+        if (this.keys[i] == null) {
+            this.keys[i] = new StringBuilder(end - start)
+                    .append(text, start, end).toString();
+            this.hashes[i] = h;
+            this.counts[i] = n;
+            this.size++;
+            if (this.size > this.threshold) {
+                this.grow();
+            }
+            return n;
+        }
+        this.counts[i] += n;
+        return this.counts[i];
+    }
+
+    /**
+     * Adds one to the count of {@code text[start, end)}.
+     *
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index just past the last character of the word
+     * @return the new count of the word
+     * @requires 0 <= start < end <= |text|
+     */
+    int increment(CharSequence text, int start, int end) {
+        return this.add(text, start, end, 1);
+    }
+
+    /**
+     * Returns the count of the given word.
+     *
+     * @param word
+     *            the word
+     * @return the count of {@code word}, 0 if it was never counted
+     */
+    int get(CharSequence word) {
+        int h = hash(word, 0, word.length());
+        int i = this.find(h, word, 0, word.length());
+        return this.counts[i];
+    }
+
+    /**
+     * Returns the number of distinct words counted.
+     *
+     * @return the number of distinct words
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds all the counts of {@code other} to this counter.
+     *
+     * @param other
+     *            the counts to add
+     */
+    void addAll(WordCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            String key = other.keys[i];
+            if (key != null) {
+                this.add(key, 0, key.length(), other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes all words.
+     */
+    void clear() {
+        this.allocate(INITIAL_CAPACITY);
+        this.size = 0;
+    }
+
+    /**
+     * Performs the given action for each word and its count, in no particular
+     * order.
+     *
+     * @param action
+     *            the action to perform
+     */
+    @Override
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                action.accept(this.keys[i], this.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Doubles the number of slots, timing it as a rehash in
+     * {@code TagCloudMetrics}.
+     */
+    private void grow() {
+        TagCloudMetrics.Span span = TagCloudMetrics
+                .begin(TagCloudMetrics.Stage.REHASH);
+        String[] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+        this.allocate(2 * oldKeys.length);
+        int mask = this.keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (this.keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.hashes[i] = oldHashes[j];
+                this.counts[i] = oldCounts[j];
+            }
+        }
+        span.end(this.size, 0);
+    }
+
+}
@@ -0,0 +1,51 @@
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A collection of distinct words, each with its count.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+interface WordCounts {
+
+    /**
+     * Performs the given action for each word and its count, in an order
+     * defined by the implementation.
+     *
+     * @param action
+     *            the action to perform
+     */
+    void forEach(ObjIntConsumer<String> action);
+
+    /**
+     * Performs the given action for each word counted at least {@code min}
+     * times, in an order defined by the implementation.
+     *
+     * @param min
+     *            the smallest count reported
+     * @param action
+     *            the action to perform
+     */
+    default void forEachAtLeast(int min, ObjIntConsumer<String> action) {
+        this.forEach((word, count) -> {
+            if (count >= min) {
+                action.accept(word, count);
+            }
+        });
+    }
+
+    /**
+     * Returns a count reached by each of the {@code size} words with the most
+     * counts, so that words counted fewer times can be skipped when selecting
+     * them. The default is 0, which skips nothing.
+     *
+     * @param size
+     *            the number of words to select
+     * @return a lower bound of the counts of the top {@code size} words
+     */
+    default int topThreshold(int size) {
+        return 0;
+    }
+
+}
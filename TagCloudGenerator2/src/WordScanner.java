@@ -0,0 +1,437 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits raw text bytes into "words" (maximal length runs of bytes that are
+ * not in {@code TagCloudGenerator.SEPARATORS}), folding ASCII upper case
+ * letters to lower case as it goes.
+ *
+ * <p>
+ * Bytes are classified through a table built once from
+ * {@code TagCloudGenerator.SEPARATORS}, and the bytes of the current word are
+ * folded into a single reusable buffer, so scanning allocates nothing per
+ * word. All separators are ASCII, so a multi-byte UTF-8 sequence never
+ * splits a word; such bytes are passed through unchanged and case folding of
+ * non-ASCII letters is left to the {@link Sink}.
+ *
+ * <p>
+ * A word may span several calls to {@link #scan(ByteBuffer)}; it is reported
+ * once its terminating separator is seen, or by {@link #finish()}. Words
+ * may be of any length, unless the scanner is given a largest length, as by
+ * the modes that bound their memory: a longer word is then dropped, so that
+ * input with no separators cannot grow the word buffer without bound.
+ *
+ * @author Wenbo Nan
+ * @author Chenghan Wen
+ *
+ */
+final class WordScanner {
+
+    /**
+     * Receives the words found by a {@code WordScanner}.
+     */
+    interface Sink {
+
+        /**
+         * Reports one word.
+         *
+         * @param word
+         *            buffer holding the word in {@code word[0, length)}, with
+         *            ASCII letters already folded to lower case; only valid
+         *            for the duration of the call
+         * @param length
+         *            the length of the word in bytes
+         */
+        void word(byte[] word, int length);
+
+    }
+
+    /**
+     * Counts words given as slices of a {@code CharSequence}.
+     */
+    interface Tally {
+
+        /**
+         * Counts one occurrence of {@code text[start, end)}.
+         *
+         * @param text
+         *            the text holding the word; only valid for the duration
+         *            of the call
+         * @param start
+         *            the index of the first character of the word
+         * @param end
+         *            the index just past the last character of the word
+         */
+        void count(CharSequence text, int start, int end);
+
+    }
+
+    /**
+     * Counts words into a {@code Tally}, presenting ASCII words to it as a
+     * {@code CharSequence} view of the bytes they are in so that counting a
+     * known word allocates nothing.
+     */
+    static final class CountingSink implements Sink, CharSequence {
+
+        /**
+         * Where the words are counted.
+         */
+        private final Tally counter;
+
+        /**
+         * The bytes holding the word being counted.
+         */
+        private byte[] word;
+
+        /**
+         * Offset of the word being counted in {@code word}.
+         */
+        private int offset;
+
+        /**
+         * Length of the word being counted.
+         */
+        private int length;
+
+        /**
+         * Constructor.
+         *
+         * @param counter
+         *            where the words are counted
+         */
+        CountingSink(Tally counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void word(byte[] w, int len) {
+            this.word(w, 0, len);
+        }
+
+        /**
+         * Counts the word in {@code w[off, off + len)}.
+         *
+         * @param w
+         *            the bytes holding the word, ASCII already folded to lower
+         *            case
+         * @param off
+         *            the offset of the word in {@code w}
+         * @param len
+         *            the length of the word in bytes
+         */
+        void word(byte[] w, int off, int len) {
+            boolean ascii = true;
+            for (int i = off; i < off + len && ascii; i++) {
+                ascii = w[i] >= 0;
+            }
+            if (ascii) {
+                this.word = w;
+                this.offset = off;
+                this.length = len;
+                this.counter.count(this, 0, len);
+            } else {
+                String s = new String(w, off, len, StandardCharsets.UTF_8)
+                        .toLowerCase();
+                this.counter.count(s, 0, s.length());
+            }
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) this.word[this.offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return this.toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.word, this.offset, this.length,
+                    StandardCharsets.ISO_8859_1);
+        }
+
+    }
+
+    /**
+     * Size of the windows through which files are mapped.
+     */
+    private static final int WINDOW = 1 << 26;
+
+    /**
+     * Length in bytes of the longest word reported by the scanners of the
+     * modes that bound their memory.
+     */
+    static final int MAX_WORD_LENGTH = 1024;
+
+    /**
+     * Largest length of a word when words may be of any length.
+     */
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Initial capacity of the word buffer.
+     */
+    private static final int INITIAL_WORD_CAPACITY = 64;
+
+    /**
+     * Distance between an ASCII upper case letter and its lower case form.
+     */
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    /**
+     * {@code IS_SEPARATOR[b & 0xFF]} tells whether byte {@code b} is a
+     * separator.
+     */
+    private static final boolean[] IS_SEPARATOR = new boolean[256];
+
+    static {
+        for (int i = 0; i < TagCloudGenerator.SEPARATORS.length(); i++) {
+            IS_SEPARATOR[TagCloudGenerator.SEPARATORS.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * Where the words go.
+     */
+    private final Sink sink;
+
+    /**
+     * Length in bytes of the longest word reported.
+     */
+    private final int maxLength;
+
+    /**
+     * The (folded) bytes of the word being scanned.
+     */
+    private byte[] word = new byte[INITIAL_WORD_CAPACITY];
+
+    /**
+     * Number of bytes of {@code word} in use.
+     */
+    private int length = 0;
+
+    /**
+     * Whether the word being scanned is longer than {@code maxLength}, so is
+     * to be dropped.
+     */
+    private boolean tooLong = false;
+
+    /**
+     * Number of bytes scanned since the last {@link #report()}.
+     */
+    private long bytes = 0;
+
+    /**
+     * Number of line breaks scanned since the last {@link #report()}.
+     */
+    private long lines = 0;
+
+    /**
+     * Number of words reported since the last {@link #report()}.
+     */
+    private long tokens = 0;
+
+    /**
+     * Constructor of a scanner reporting words of any length.
+     *
+     * @param sink
+     *            receiver of the words found
+     */
+    WordScanner(Sink sink) {
+        this(sink, UNBOUNDED);
+    }
+
+    /**
+     * Constructor of a scanner dropping the words longer than
+     * {@code maxLength} bytes.
+     *
+     * @param sink
+     *            receiver of the words found
+     * @param maxLength
+     *            the length in bytes of the longest word reported
+     * @requires maxLength > 0
+     */
+    WordScanner(Sink sink, int maxLength) {
+        assert sink != null : "Violation of: sink is not null";
+        assert maxLength > 0 : "Violation of: maxLength > 0";
+        this.sink = sink;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Tells whether the given byte is a separator.
+     *
+     * @param b
+     *            the byte to classify
+     * @return true iff {@code b} is in {@code SEPARATORS}
+     */
+    static boolean isSeparator(byte b) {
+        return IS_SEPARATOR[b & 0xFF];
+    }
+
+    /**
+     * Scans all remaining bytes of {@code in}, reporting every word that ends
+     * inside it.
+     *
+     * @param in
+     *            the bytes to scan
+     * @updates in.position
+     * @ensures in.position = in.limit
+     */
+    void scan(ByteBuffer in) {
+        int limit = in.limit();
+        this.bytes += limit - in.position();
+        for (int i = in.position(); i < limit; i++) {
+            byte b = in.get(i);
+            if (IS_SEPARATOR[b & 0xFF]) {
+                if (b == '\n') {
+                    this.lines++;
+                }
+                if (this.length > 0) {
+                    this.endWord();
+                }
+            } else if (this.length < this.word.length || this.grow()) {
+                if ('A' <= b && b <= 'Z') {
+                    b += CASE_OFFSET;
+                }
+                this.word[this.length] = b;
+                this.length++;
+            }
+        }
+        in.position(limit);
+    }
+
+    /**
+     * Reports the word in progress, if any, as the end of input has been
+     * reached, and adds the bytes, lines and words scanned to
+     * {@code TagCloudMetrics}.
+     */
+    void finish() {
+        if (this.length > 0) {
+            this.endWord();
+        }
+        this.report();
+    }
+
+    /**
+     * Doubles the capacity of the word buffer, unless it already holds a
+     * word of {@code maxLength} bytes, in which case the word being scanned
+     * is marked as too long.
+     *
+     * @return true iff the buffer has room for another byte
+     */
+    private boolean grow() {
+        if (this.word.length >= this.maxLength) {
+            this.tooLong = true;
+            return false;
+        }
+        this.word = Arrays.copyOf(this.word,
+                (int) Math.min(2L * this.word.length, this.maxLength));
+        return true;
+    }
+
+    /**
+     * Reports the word in the buffer, unless it is too long, and empties the
+     * buffer.
+     */
+    private void endWord() {
+        if (this.tooLong) {
+            this.tooLong = false;
+        } else {
+            this.sink.word(this.word, this.length);
+            this.tokens++;
+        }
+        this.length = 0;
+    }
+
+    /**
+     * Adds the bytes, lines and words scanned since the last report to
+     * {@code TagCloudMetrics}, leaving the word in progress, if any, to be
+     * continued.
+     */
+    void report() {
+        TagCloudMetrics.scanned(this.bytes, this.lines, this.tokens);
+        this.bytes = 0;
+        this.lines = 0;
+        this.tokens = 0;
+    }
+
+    /**
+     * Returns a {@code Sink} that counts the words it receives into
+     * {@code counter}. Non-ASCII words are decoded as UTF-8 and converted to
+     * lower case with {@code String.toLowerCase} before being counted.
+     *
+     * @param counter
+     *            where the words are counted
+     * @return the counting sink
+     */
+    static CountingSink counting(Tally counter) {
+        return new CountingSink(counter);
+    }
+
+    /**
+     * Scans bytes {@code [start, end)} of the given file, mapping it into
+     * memory one window at a time.
+     *
+     * @param channel
+     *            the file to scan
+     * @param start
+     *            the offset of the first byte to scan
+     * @param end
+     *            the offset just past the last byte to scan
+     * @param sink
+     *            receiver of the words found
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires 0 <= start <= end <= [size of the file]
+     */
+    static void scan(FileChannel channel, long start, long end, Sink sink)
+            throws IOException {
+        scan(channel, start, end, sink, UNBOUNDED);
+    }
+
+    /**
+     * Scans bytes {@code [start, end)} of the given file, mapping it into
+     * memory one window at a time, and dropping the words longer than
+     * {@code maxLength} bytes.
+     *
+     * @param channel
+     *            the file to scan
+     * @param start
+     *            the offset of the first byte to scan
+     * @param end
+     *            the offset just past the last byte to scan
+     * @param sink
+     *            receiver of the words found
+     * @param maxLength
+     *            the length in bytes of the longest word reported
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires 0 <= start <= end <= [size of the file] and maxLength > 0
+     */
+    static void scan(FileChannel channel, long start, long end, Sink sink,
+            int maxLength) throws IOException {
+        WordScanner scanner = new WordScanner(sink, maxLength);
+        long position = start;
+        while (position < end) {
+            long size = Math.min(WINDOW, end - position);
+            MappedByteBuffer window = channel
+                    .map(FileChannel.MapMode.READ_ONLY, position, size);
+            scanner.scan(window);
+            position += size;
+        }
+        scanner.finish();
+    }
+
+}
@@ -0,0 +1,88 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code AdaptiveWordCounter}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class AdaptiveWordCounterTest {
+
+    /**
+     * A budget for 100 distinct words counted exactly.
+     */
+    private static final long BUDGET = 100 * ByteWordCounter.BYTES_PER_WORD;
+
+    /**
+     * Counts {@code n} words drawn from {@code distinct} words, the word of
+     * rank r about 1 / r of the time, with the given counter and with a map.
+     *
+     * @param c
+     *            the counter
+     * @param n
+     *            the number of words
+     * @param distinct
+     *            the number of distinct words
+     * @return the exact counts
+     */
+    private static Map<String, Integer> count(AdaptiveWordCounter c, int n,
+            int distinct) {
+        Random random = new Random(3);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            int rank = (int) Math.pow(distinct + 1, random.nextDouble());
+            String w = "w" + rank;
+            byte[] b = w.getBytes(StandardCharsets.UTF_8);
+            c.word(b, b.length);
+            expected.merge(w, 1, Integer::sum);
+        }
+        return expected;
+    }
+
+    @Test
+    public final void testStaysExact() {
+        AdaptiveWordCounter c = new AdaptiveWordCounter(BUDGET);
+        Map<String, Integer> expected = count(c, 5000, 80);
+        assertTrue(c.isExact());
+        Map<String, Integer> actual = new HashMap<>();
+        c.exact().forEach((word, count) -> actual.put(word, count));
+        assertEquals(expected, actual);
+        assertTrue(c.mode().startsWith("Counted exactly"));
+    }
+
+    @Test
+    public final void testSwitchesWithinBound() {
+        AdaptiveWordCounter c = new AdaptiveWordCounter(BUDGET);
+        Map<String, Integer> expected = count(c, 20000, 2000);
+        assertFalse(c.isExact());
+        SpaceSaving s = c.summary();
+        assertEquals(20000, s.total());
+        int bound = s.errorBound();
+        Map<String, Integer> estimates = new HashMap<>();
+        for (SpaceSaving.Estimate e : s.estimates()) {
+            estimates.put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, Integer> p : expected.entrySet()) {
+            Integer estimate = estimates.get(p.getKey());
+            if (p.getValue() > bound) {
+                assertTrue(p.getKey(), estimate != null);
+            }
+            if (estimate != null) {
+                assertTrue(p.getKey(), estimate >= p.getValue());
+                assertTrue(p.getKey(), estimate <= p.getValue() + bound);
+            }
+        }
+        assertTrue(estimates.containsKey("w1"));
+        assertTrue(c.mode().startsWith("Switched to approximate counting"));
+    }
+
+}
@@ -0,0 +1,135 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code ByteWordCounter}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class ByteWordCounterTest {
+
+    /**
+     * Returns the contents of the given counter as a map.
+     *
+     * @param c
+     *            the counter
+     * @return the map of words and their counts in {@code c}
+     */
+    private static Map<String, Integer> toMap(ByteWordCounter c) {
+        Map<String, Integer> m = new HashMap<>();
+        c.forEach((word, count) -> m.put(word, count));
+        return m;
+    }
+
+    /**
+     * Counts the words of the given text.
+     *
+     * @param text
+     *            the text
+     * @return the counter
+     */
+    private static ByteWordCounter count(String text) {
+        ByteWordCounter c = new ByteWordCounter();
+        WordScanner scanner = new WordScanner(c);
+        scanner.scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        scanner.finish();
+        return c;
+    }
+
+    @Test
+    public final void testCountsAsciiWords() {
+        ByteWordCounter c = count("Red red, BLUE red");
+        assertEquals(2, c.size());
+        assertEquals(3, c.get("red"));
+        assertEquals(1, c.get("blue"));
+        assertEquals(0, c.get("green"));
+    }
+
+    @Test
+    public final void testFoldsNonAsciiCase() {
+        ByteWordCounter c = count("\u00C9t\u00E9 \u00E9t\u00E9 "
+                + "\u00C9T\u00C9 Stra\u00DFe");
+        assertEquals(2, c.size());
+        assertEquals(3, c.get("\u00E9t\u00E9"));
+        assertEquals(1, c.get("stra\u00DFe"));
+    }
+
+    @Test
+    public final void testGrowAndAddAll() {
+        ByteWordCounter c1 = new ByteWordCounter();
+        ByteWordCounter c2 = new ByteWordCounter();
+        Map<String, Integer> expected = new HashMap<>();
+        final int words = 10000;
+        for (int i = 0; i < words; i++) {
+            byte[] w = ("w" + (i % (words / 2)))
+                    .getBytes(StandardCharsets.US_ASCII);
+            if (i % 3 == 0) {
+                c1.word(w, w.length);
+            } else {
+                c2.word(w, w.length);
+            }
+            expected.merge("w" + (i % (words / 2)), 1, Integer::sum);
+        }
+        c1.addAll(c2);
+        assertEquals(words / 2, c1.size());
+        assertEquals(expected, toMap(c1));
+    }
+
+    @Test
+    public final void testTopThreshold() {
+        ByteWordCounter c = count("a a a a b b b c c d e");
+        assertEquals(4, c.topThreshold(1));
+        assertEquals(2, c.topThreshold(3));
+        assertEquals(1, c.topThreshold(5));
+        assertEquals(0, c.topThreshold(6));
+        Map<String, Integer> m = new HashMap<>();
+        c.forEachAtLeast(c.topThreshold(2),
+                (word, count) -> m.put(word, count));
+        assertEquals(2, m.size());
+        assertEquals(Integer.valueOf(3), m.get("b"));
+    }
+
+    @Test
+    public final void testSubtractAll() {
+        ByteWordCounter c = count("a a a b b c d e f g h");
+        c.subtractAll(count("a b c"));
+        assertEquals(7, c.size());
+        assertEquals(2, c.get("a"));
+        assertEquals(0, c.get("c"));
+        assertEquals(1, c.topThreshold(2));
+        c.subtractAll(count("d e f"));
+        assertEquals(4, c.size());
+        assertEquals(0, c.get("d"));
+        assertEquals(1, c.get("g"));
+        Map<String, Integer> m = toMap(c);
+        assertEquals(4, m.size());
+        assertEquals(Integer.valueOf(2), m.get("a"));
+        c.word("c".getBytes(StandardCharsets.UTF_8), 1);
+        assertEquals(1, c.get("c"));
+        assertEquals(5, c.size());
+    }
+
+    @Test
+    public final void testTop() {
+        ByteWordCounter c = count("b a c a b d a \u00E9 \u00E9 z y x y "
+                + "\uD83D\uDE00 \uE000 \uD83D\uDE00 \uE000");
+        List<Map.Entry<String, Integer>> expected = new ArrayList<>(
+                toMap(c).entrySet());
+        expected.sort(new TagCloudGenerator.MapPairValueLT());
+        for (int size = 0; size <= expected.size() + 1; size++) {
+            assertEquals(
+                    expected.subList(0, Math.min(size, expected.size())),
+                    c.top(size));
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code CloudCache}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class CloudCacheTest {
+
+    @Test
+    public final void testHitAndMiss() {
+        CloudCache c = new CloudCache(100);
+        String key = CloudCache.key(new byte[] { 1, 2 }, 10, "a.txt");
+        assertNull(c.get(key));
+        c.put(key, new byte[] { 7 });
+        assertArrayEquals(new byte[] { 7 }, c.get(key));
+        assertEquals(1, c.hits());
+        assertEquals(1, c.misses());
+        assertEquals(1, c.bytes());
+    }
+
+    @Test(timeout = 10000)
+    public final void testConcurrentMissesRenderOnce() throws Exception {
+        CloudCache c = new CloudCache(100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger renders = new AtomicInteger();
+        byte[] cloud = { 7 };
+        CloudCache.Renderer renderer = () -> {
+            renders.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return cloud;
+        };
+        byte[][] results = new byte[3][];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            int k = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    results[k] = c.get("a", renderer);
+                } catch (IOException e) {
+                    results[k] = null;
+                }
+            });
+            threads[i].start();
+            if (i == 0) {
+                started.await();
+            }
+        }
+        while (c.misses() < threads.length) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1, renders.get());
+        for (byte[] r : results) {
+            assertSame(cloud, r);
+        }
+        assertSame(cloud, c.get("a", renderer));
+        assertEquals(1, renders.get());
+    }
+
+    @Test
+    public final void testFailedRenderingIsNotCached() throws IOException {
+        CloudCache c = new CloudCache(100);
+        try {
+            c.get("a", () -> {
+                throw new IOException("unreadable");
+            });
+            fail("Rendering did not fail");
+        } catch (IOException e) {
+            assertEquals("unreadable", e.getMessage());
+        }
+        assertArrayEquals(new byte[] { 7 }, c.get("a", () -> new byte[] { 7 }));
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public final void testKey() {
+        byte[] d = { 1, 2, 3 };
+        assertEquals(CloudCache.key(d, 10, "a"),
+                CloudCache.key(d.clone(), 10, "a"));
+        assertNotEquals(CloudCache.key(d, 10, "a"),
+                CloudCache.key(d, 11, "a"));
+        assertNotEquals(CloudCache.key(d, 10, "a"),
+                CloudCache.key(d, 10, "b"));
+        assertNotEquals(CloudCache.key(d, 10, "a"),
+                CloudCache.key(new byte[] { 1, 2, 4 }, 10, "a"));
+    }
+
+    @Test
+    public final void testEvictsLeastRecentlyUsed() {
+        CloudCache c = new CloudCache(10);
+        c.put("a", new byte[4]);
+        c.put("b", new byte[4]);
+        c.get("a");
+        c.put("c", new byte[4]);
+        assertNull(c.get("b"));
+        assertEquals(4, c.get("a").length);
+        assertEquals(4, c.get("c").length);
+        assertEquals(1, c.evictions());
+        assertEquals(8, c.bytes());
+        c.put("a", new byte[9]);
+        assertEquals(1, c.size());
+        assertEquals(9, c.bytes());
+        assertEquals(2, c.evictions());
+        c.put("d", new byte[11]);
+        assertNull(c.get("d"));
+        assertEquals(1, c.size());
+    }
+
+}
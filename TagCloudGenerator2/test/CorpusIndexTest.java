@@ -0,0 +1,108 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code CorpusIndex}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class CorpusIndexTest {
+
+    /**
+     * Directory holding the files of a test.
+     */
+    private Path dir;
+
+    /**
+     * The index file of a test.
+     */
+    private Path file;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("index");
+        this.file = this.dir.resolve("corpus.index");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Counts the words of a text.
+     *
+     * @param text
+     *            the text
+     * @return the counts
+     */
+    private static WordCounter counts(String text) {
+        WordCounter m = new WordCounter();
+        for (String w : text.split(" ")) {
+            m.increment(w, 0, w.length());
+        }
+        return m;
+    }
+
+    @Test
+    public final void testSaveAndAddWithoutRereading() throws IOException {
+        CorpusIndex index = CorpusIndex.open(this.file);
+        assertEquals(0, index.documents());
+        index.add("a", counts("the red the fox"));
+        index.add("b", counts("the blue the blue"));
+        index.save(this.file);
+        index = CorpusIndex.open(this.file);
+        assertEquals(2, index.documents());
+        assertTrue(index.contains("a"));
+        assertFalse(index.contains("c"));
+        assertEquals(2, index.documentFrequency("the"));
+        assertEquals(1, index.documentFrequency("blue"));
+        assertEquals(0, index.documentFrequency("green"));
+        index.add("c", counts("the green blue"));
+        assertEquals(2, index.documentFrequency("blue"));
+        index.save(this.file);
+        index = CorpusIndex.open(this.file);
+        assertEquals(3, index.documents());
+        assertEquals("c", index.document(2));
+        assertEquals(3, index.documentFrequency("the"));
+        assertEquals(2, index.documentFrequency("blue"));
+        assertEquals(1, index.documentFrequency("green"));
+        assertEquals(5, index.totals().get("the"));
+    }
+
+    @Test
+    public final void testTopWeighted() throws IOException {
+        CorpusIndex index = new CorpusIndex();
+        index.add("a", counts("the red red the fox"));
+        index.add("b", counts("the blue the blue blue fox"));
+        index.add("c", counts("the green"));
+        index.save(this.file);
+        List<List<Map.Entry<String, Integer>>> top = CorpusIndex
+                .open(this.file).topWeighted(2);
+        assertEquals(3, top.size());
+        List<Map.Entry<String, Integer>> a = top.get(0);
+        assertEquals(2, a.size());
+        assertEquals("red", a.get(0).getKey());
+        assertEquals("fox", a.get(1).getKey());
+        CorpusIndex.Weight red = (CorpusIndex.Weight) a.get(0);
+        assertEquals(2, red.count());
+        assertEquals(Math.round(2 * Math.log(3) * CorpusIndex.WEIGHT_SCALE),
+                (long) red.getValue());
+        assertEquals("blue", top.get(1).get(0).getKey());
+        assertEquals(1, top.get(2).size());
+    }
+
+}
@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code CountSnapshot}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class CountSnapshotTest {
+
+    /**
+     * Directory holding the files of a test.
+     */
+    private Path dir;
+
+    /**
+     * The input file of a test.
+     */
+    private Path input;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("snapshot");
+        this.input = this.dir.resolve("input.txt");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(this.dir)) {
+            for (Path p : files) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Appends text to the input file.
+     *
+     * @param text
+     *            the text to append
+     * @throws IOException
+     *             write problem
+     */
+    private void append(String text) throws IOException {
+        Files.write(this.input, text.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Updates the snapshot in {@code dir} from the input file, and returns
+     * the counts including the unterminated last word.
+     *
+     * @return the counts
+     * @throws IOException
+     *             read or write problem
+     */
+    private WordCounter update() throws IOException {
+        return this.update(this.input, "input");
+    }
+
+    /**
+     * Updates the snapshot in {@code dir} from the given file, and returns
+     * its counts including the unterminated last word.
+     *
+     * @param input
+     *            the file
+     * @param name
+     *            the name of the file in the snapshot
+     * @return the counts
+     * @throws IOException
+     *             read or write problem
+     */
+    private WordCounter update(Path input, String name) throws IOException {
+        Path file = this.dir.resolve("counts.snapshot");
+        CountSnapshot s = CountSnapshot.load(file);
+        try (FileChannel ch = FileChannel.open(input)) {
+            if (!s.isResumable(ch, name)) {
+                s.reset(name);
+            }
+            s.update(ch, name);
+            s.save(file);
+            WordCounter m = s.counts(name);
+            s.countTail(ch, name, m::increment);
+            return m;
+        }
+    }
+
+    @Test
+    public final void testResumesAfterAppend() throws IOException {
+        this.append("red blue re");
+        WordCounter m = this.update();
+        assertEquals(1, m.get("red"));
+        assertEquals(1, m.get("re"));
+        this.append("d green\n");
+        m = this.update();
+        assertEquals(2, m.get("red"));
+        assertEquals(0, m.get("re"));
+        assertEquals(1, m.get("green"));
+        assertEquals(3, m.size());
+    }
+
+    @Test
+    public final void testRewrittenFileIsNotResumable() throws IOException {
+        this.append("red blue ");
+        this.update();
+        Files.delete(this.input);
+        this.append("pink blue green");
+        CountSnapshot s = CountSnapshot
+                .load(this.dir.resolve("counts.snapshot"));
+        try (FileChannel ch = FileChannel.open(this.input)) {
+            assertFalse(s.isResumable(ch, "input"));
+        }
+        WordCounter m = this.update();
+        assertEquals(0, m.get("red"));
+        assertEquals(1, m.get("pink"));
+        assertEquals(1, m.get("green"));
+    }
+
+    @Test
+    public final void testFilesAreCountedSeparately() throws IOException {
+        Path other = this.dir.resolve("other.txt");
+        this.append("apple apple apple\n");
+        Files.write(other, "banana\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(3, this.update().get("apple"));
+        WordCounter m = this.update(other, "other");
+        assertEquals(1, m.size());
+        assertEquals(1, m.get("banana"));
+        assertEquals(0, m.get("apple"));
+        Files.write(other, "cherry\n".getBytes(StandardCharsets.UTF_8));
+        m = this.update(other, "other");
+        assertEquals(1, m.size());
+        assertEquals(1, m.get("cherry"));
+        this.append("apple\n");
+        m = this.update();
+        assertEquals(1, m.size());
+        assertEquals(4, m.get("apple"));
+    }
+
+}
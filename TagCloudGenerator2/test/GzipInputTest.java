@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code GzipInput}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class GzipInputTest {
+
+    /**
+     * The input file of a test.
+     */
+    private Path input;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.input = Files.createTempFile("gzip", ".gz");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        Files.delete(this.input);
+    }
+
+    /**
+     * Appends a gzip member holding the given text to the input file.
+     *
+     * @param text
+     *            the text to compress
+     * @throws IOException
+     *             write problem
+     */
+    private void appendMember(String text) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(
+                this.input, StandardOpenOption.APPEND))) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public final void testCountsAcrossBuffersAndMembers() throws IOException {
+        StringBuilder text = new StringBuilder();
+        final int words = 300000;
+        for (int i = 0; i < words; i++) {
+            text.append("Word").append(i % 7).append(' ');
+        }
+        this.appendMember(text.toString());
+        this.appendMember("tail");
+        ByteWordCounter m = new ByteWordCounter();
+        try (FileChannel ch = FileChannel.open(this.input)) {
+            assertTrue(GzipInput.isGzip(ch));
+            GzipInput in = new GzipInput(ch);
+            in.scan(m);
+            assertEquals(text.length() + "tail".length(), in.inflated());
+        }
+        assertEquals(8, m.size());
+        assertEquals((words + 6) / 7, m.get("word0"));
+        assertEquals(1, m.get("tail"));
+    }
+
+    @Test
+    public final void testPlainFileIsNotGzip() throws IOException {
+        Files.write(this.input, "red blue".getBytes(StandardCharsets.UTF_8));
+        try (FileChannel ch = FileChannel.open(this.input)) {
+            assertFalse(GzipInput.isGzip(ch));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public final void testTruncatedFileFails() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append(i).append(' ');
+        }
+        this.appendMember(text.toString());
+        try (FileChannel ch = FileChannel.open(this.input,
+                StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ch.truncate(ch.size() / 2);
+            new GzipInput(ch).scan(new ByteWordCounter());
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code HtmlRenderer}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class HtmlRendererTest {
+
+    /**
+     * Directory holding the files of a test.
+     */
+    private Path dir;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("render");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(this.dir)) {
+            for (Path p : files) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Renders a cloud and returns the page.
+     *
+     * @param s
+     *            the words and their counts
+     * @param file
+     *            the name of the input file
+     * @param r
+     *            the renderer
+     * @return the page
+     * @throws IOException
+     *             write problem
+     */
+    private static String render(List<Map.Entry<String, Integer>> s,
+            String file, HtmlRenderer r) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int max = 0;
+        int min = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> p : s) {
+            max = Math.max(max, p.getValue());
+            min = Math.min(min, p.getValue());
+        }
+        r.render(Channels.newChannel(out), s, file, max, min);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public final void testFontBucketsAndCounts() throws IOException {
+        List<Map.Entry<String, Integer>> s = new ArrayList<>();
+        s.add(new SimpleImmutableEntry<>("big", 1234567));
+        s.add(new SimpleImmutableEntry<>("small", 7));
+        String page = render(s, "in.txt", new HtmlRenderer());
+        String nl = System.lineSeparator();
+        assertTrue(page.startsWith("<html> <head>" + nl
+                + "<title>Top 2 words in in.txt</title>" + nl));
+        assertTrue(page.contains("<h2>Top 2 words in in.txt</h2>"));
+        assertTrue(page.contains("<span style=\"cursor:default\" class=\"f48\""
+                + " title=\"count: 1234567\">big</span>" + nl));
+        assertTrue(page.contains("<span style=\"cursor:default\" class=\"f11\""
+                + " title=\"count: 7\">small</span>" + nl));
+        assertTrue(page.endsWith("</p> </div> </body> </html>" + nl));
+    }
+
+    @Test
+    public final void testFontRange() throws IOException {
+        List<Map.Entry<String, Integer>> s = new ArrayList<>();
+        s.add(new SimpleImmutableEntry<>("big", 100));
+        s.add(new SimpleImmutableEntry<>("mid", 50));
+        s.add(new SimpleImmutableEntry<>("small", 0));
+        HtmlRenderer r = new HtmlRenderer();
+        r.setFontRange(20, 30);
+        String page = render(s, "in.txt", r);
+        assertTrue(page.contains("class=\"f30\" title=\"count: 100\""));
+        assertTrue(page.contains("class=\"f25\" title=\"count: 50\""));
+        assertTrue(page.contains("class=\"f20\" title=\"count: 0\""));
+        r.setFontRange(TagCloudGenerator.MIN_FONT, TagCloudGenerator.MAX_FONT);
+        assertTrue(render(s, "in.txt", r)
+                .contains("class=\"f48\" title=\"count: 100\""));
+    }
+
+    @Test
+    public final void testEscapesAndEncodes() throws IOException {
+        List<Map.Entry<String, Integer>> s = new ArrayList<>();
+        s.add(new SimpleImmutableEntry<>(
+                "a<b>&c\u00E9\u20AC\uD83D\uDE00", 1));
+        String page = render(s, "x&y", new HtmlRenderer());
+        assertTrue(page.contains(
+                ">a&lt;b&gt;&amp;c\u00E9\u20AC\uD83D\uDE00</span>"));
+        assertTrue(page.contains("<title>Top 1 words in x&amp;y</title>"));
+    }
+
+    @Test
+    public final void testReusedAcrossLargeClouds() throws IOException {
+        List<Map.Entry<String, Integer>> s = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            s.add(new SimpleImmutableEntry<>("word" + i, i + 1));
+        }
+        HtmlRenderer r = new HtmlRenderer();
+        String first = render(s, "in.txt", r);
+        String second = render(s, "in.txt", r);
+        assertEquals(first, second);
+        assertTrue(first.contains(">word9999</span>"));
+    }
+
+    @Test
+    public final void testWriteReplacesAtomically() throws IOException {
+        Path target = this.dir.resolve("cloud.html");
+        List<Map.Entry<String, Integer>> s = List
+                .of(new SimpleImmutableEntry<>("word", 3));
+        HtmlRenderer r = new HtmlRenderer();
+        r.write(target, s, "in.txt", 3, 3);
+        r.write(target, s, "in.txt", 3, 3);
+        assertEquals(render(s, "in.txt", r), new String(
+                Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertEquals(1, this.dir.toFile().list().length);
+    }
+
+    @Test
+    public final void testWriteKeepsPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews()
+                .contains("posix"));
+        List<Map.Entry<String, Integer>> s = List
+                .of(new SimpleImmutableEntry<>("word", 3));
+        HtmlRenderer r = new HtmlRenderer();
+        Path fresh = this.dir.resolve("fresh.html");
+        r.write(fresh, s, "in.txt", 3, 3);
+        Path plain = Files.createFile(this.dir.resolve("plain.html"));
+        assertEquals(Files.getPosixFilePermissions(plain),
+                Files.getPosixFilePermissions(fresh));
+        Set<PosixFilePermission> shared = PosixFilePermissions
+                .fromString("rw-rw-r--");
+        Path target = Files.createFile(this.dir.resolve("cloud.html"));
+        Files.setPosixFilePermissions(target, shared);
+        r.write(target, s, "in.txt", 3, 3);
+        assertEquals(shared, Files.getPosixFilePermissions(target));
+    }
+
+}
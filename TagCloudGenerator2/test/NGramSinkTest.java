@@ -0,0 +1,108 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code NGramSink}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class NGramSinkTest {
+
+    /**
+     * Counts the n-grams of the given text.
+     *
+     * @param text
+     *            the text
+     * @param n
+     *            the number of words per n-gram
+     * @return the counter
+     */
+    private static ByteWordCounter count(String text, int n) {
+        ByteWordCounter c = new ByteWordCounter();
+        WordScanner scanner = new WordScanner(new NGramSink(c, n));
+        scanner.scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        scanner.finish();
+        return c;
+    }
+
+    @Test
+    public final void testBigrams() {
+        ByteWordCounter c = count("Connection reset. connection RESET, "
+                + "connection refused", 2);
+        assertEquals(3, c.size());
+        assertEquals(2, c.get("connection reset"));
+        assertEquals(2, c.get("reset connection"));
+        assertEquals(1, c.get("connection refused"));
+    }
+
+    @Test
+    public final void testFewerWordsThanN() {
+        assertEquals(0, count("one two", 3).size());
+    }
+
+    @Test
+    public final void testWindowLongerThanBuffer() {
+        String[] words = new String[3];
+        for (int k = 0; k < words.length; k++) {
+            char[] c = new char[300];
+            Arrays.fill(c, (char) ('a' + k));
+            words[k] = new String(c);
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append(words[i % 3]).append(' ');
+        }
+        ByteWordCounter c = count(text.toString(), 7);
+        assertEquals(3, c.size());
+        for (int k = 0; k < words.length; k++) {
+            StringBuilder gram = new StringBuilder(words[k]);
+            for (int i = 1; i < 7; i++) {
+                gram.append(' ').append(words[(k + i) % 3]);
+            }
+            assertEquals(98, c.get(gram.toString()));
+        }
+    }
+
+    @Test
+    public final void testMatchesJoinedWords() {
+        String[] vocabulary = { "a", "bb", "connection", "\u00C9lan",
+                "\u00E9lan", "x", "averyveryveryverylongwordindeed" };
+        Random random = new Random(1);
+        for (int n = 1; n <= 4; n++) {
+            StringBuilder text = new StringBuilder();
+            String[] words = new String[5000];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = vocabulary[random.nextInt(vocabulary.length)];
+                text.append(words[i]).append(i % 10 == 0 ? "\n" : " ");
+            }
+            Map<String, Integer> expected = new HashMap<>();
+            for (int i = 0; i + n <= words.length; i++) {
+                StringBuilder gram = new StringBuilder();
+                for (int k = i; k < i + n; k++) {
+                    if (k > i) {
+                        gram.append(' ');
+                    }
+                    gram.append(words[k].toLowerCase());
+                }
+                expected.merge(gram.toString(), 1, Integer::sum);
+            }
+            Map<String, Integer> actual = new HashMap<>();
+            ByteWordCounter c = count(text.toString(), n);
+            c.forEach((gram, count) -> actual.put(gram, count));
+            assertEquals(expected, actual);
+            for (String gram : expected.keySet()) {
+                assertEquals((int) expected.get(gram), c.get(gram));
+            }
+        }
+    }
+
+}
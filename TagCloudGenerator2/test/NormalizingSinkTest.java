@@ -0,0 +1,96 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code NormalizingSink}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class NormalizingSinkTest {
+
+    /**
+     * Counts the normalized words of the given text.
+     *
+     * @param text
+     *            the text
+     * @param cacheSize
+     *            the number of entries of the stem cache
+     * @return the counter
+     */
+    private static ByteWordCounter count(String text, int cacheSize) {
+        ByteWordCounter c = new ByteWordCounter();
+        WordScanner scanner = new WordScanner(
+                new NormalizingSink(c, cacheSize));
+        scanner.scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        scanner.finish();
+        return c;
+    }
+
+    /**
+     * Tells whether a word is a stop-word.
+     *
+     * @param word
+     *            the word
+     * @return true iff it is a stop-word
+     */
+    private static boolean isStopWord(String word) {
+        byte[] b = word.getBytes(StandardCharsets.UTF_8);
+        return StopWords.contains(b, b.length, StopWords.hash(b, b.length));
+    }
+
+    @Test
+    public final void testStopWords() {
+        for (String w : new String[] { "the", "and", "a", "yourselves", "t",
+                "don", "of", "i", "wouldn" }) {
+            assertEquals(w, true, isStopWord(w));
+        }
+        for (String w : new String[] { "", "th", "thee", "cloud", "andy",
+                "yourselve", "z", "\u00E9" }) {
+            assertEquals(w, false, isStopWord(w));
+        }
+    }
+
+    @Test
+    public final void testDropsStopWordsAndStems() {
+        ByteWordCounter c = count("The connection and THE connections; "
+                + "a Connected host, don't reconnect", 16);
+        assertEquals(3, c.size());
+        assertEquals(3, c.get("connect"));
+        assertEquals(1, c.get("host"));
+        assertEquals(1, c.get("reconnect"));
+        assertEquals(0, c.get("the"));
+    }
+
+    @Test
+    public final void testOtherWordsUnchanged() {
+        ByteWordCounter c = count("r2d2 runs r2d2 \u00C9lans x86", 16);
+        assertEquals(2, c.get("r2d2"));
+        assertEquals(1, c.get("run"));
+        assertEquals(1, c.get("\u00E9lans"));
+        assertEquals(1, c.get("x86"));
+    }
+
+    @Test
+    public final void testTinyCacheSameCounts() {
+        StringBuilder text = new StringBuilder();
+        String[] words = { "running", "runs", "cats", "cat", "happiness",
+                "the", "generalizations", "ponies", "x1" };
+        for (int i = 0; i < 2000; i++) {
+            text.append(words[(i * 7 + i / 3) % words.length]).append(' ');
+        }
+        ByteWordCounter small = count(text.toString(), 1);
+        ByteWordCounter large = count(text.toString(), 1 << 10);
+        assertEquals(large.size(), small.size());
+        for (String w : new String[] { "run", "cat", "happi", "gener", "poni",
+                "x1" }) {
+            assertEquals(w, large.get(w), small.get(w));
+        }
+        assertEquals(0, large.get("the"));
+    }
+
+}
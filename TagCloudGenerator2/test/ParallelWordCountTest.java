@@ -0,0 +1,135 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code ParallelWordCount}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class ParallelWordCountTest {
+
+    /**
+     * The input file of a test.
+     */
+    private Path input;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.input = Files.createTempFile("parallel", ".txt");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        Files.delete(this.input);
+    }
+
+    /**
+     * Returns the contents of the given counter as a map.
+     *
+     * @param c
+     *            the counter
+     * @return the map of words and their counts in {@code c}
+     */
+    private static Map<String, Integer> toMap(ByteWordCounter c) {
+        Map<String, Integer> m = new HashMap<>();
+        c.forEach((word, count) -> m.put(word, count));
+        return m;
+    }
+
+    /**
+     * Writes the input file, then checks that counting it in parallel with
+     * the given parameters gives the counts of {@code generateMap}, and that
+     * every boundary between ranges directly follows a separator.
+     *
+     * @param text
+     *            the text of the input file
+     * @param parallelism
+     *            the number of threads
+     * @param minRange
+     *            the smallest range
+     * @throws IOException
+     *             read or write problem
+     */
+    private void check(String text, int parallelism, long minRange)
+            throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Files.write(this.input, bytes);
+        try (FileChannel in = FileChannel.open(this.input)) {
+            long[] bounds = ParallelWordCount.boundaries(in, parallelism,
+                    minRange);
+            assertEquals(0, bounds[0]);
+            assertEquals(bytes.length, bounds[bounds.length - 1]);
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertTrue(bounds[i] > bounds[i - 1]);
+                assertTrue(WordScanner
+                        .isSeparator(bytes[(int) bounds[i] - 1]));
+            }
+            Map<String, Integer> expected = toMap(
+                    TagCloudGenerator.generateMap(in));
+            assertEquals("minRange " + minRange, expected, toMap(
+                    ParallelWordCount.count(in, parallelism, minRange)));
+        }
+    }
+
+    @Test
+    public final void testEveryAlignment() throws IOException {
+        String text = "red, blue green\nred  yellow-blue red "
+                + "\u00E9t\u00E9 Red";
+        for (long minRange = 1; minRange <= text.length() + 1; minRange++) {
+            this.check(text, 2, minRange);
+        }
+    }
+
+    @Test
+    public final void testWordStraddlingSeveralRanges() throws IOException {
+        StringBuilder sb = new StringBuilder("a ");
+        for (int i = 0; i < 100; i++) {
+            sb.append('x');
+        }
+        sb.append(" a");
+        this.check(sb.toString(), 4, 5);
+        this.check(sb.toString().trim() + "x", 4, 3);
+    }
+
+    @Test
+    public final void testFileSmallerThanMinRange() throws IOException {
+        this.check("red blue red", 4, ParallelWordCount.MIN_RANGE);
+        this.check("", 4, ParallelWordCount.MIN_RANGE);
+        this.check("   ", 2, 1);
+    }
+
+    @Test
+    public final void testMoreThreadsThanRanges() throws IOException {
+        this.check("one two three four", 16, 8);
+        this.check("one", 64, 1);
+    }
+
+    @Test
+    public final void testLargeFile() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300000; i++) {
+            sb.append('w').append(i % 1000).append(i % 7 == 0 ? '\n' : ' ');
+        }
+        String text = sb.toString();
+        assertTrue(text.length() > ParallelWordCount.MIN_RANGE);
+        this.check(text, 3, ParallelWordCount.MIN_RANGE);
+        try (FileChannel in = FileChannel.open(this.input)) {
+            assertTrue(ParallelWordCount.boundaries(in, 3,
+                    ParallelWordCount.MIN_RANGE).length > 2);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code PartialCounts}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class PartialCountsTest {
+
+    /**
+     * Directory holding the files of a test.
+     */
+    private Path dir;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("partial");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(this.dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Counts the words of a text.
+     *
+     * @param text
+     *            the text
+     * @return the counts
+     */
+    private static WordCounter counts(String text) {
+        WordCounter m = new WordCounter();
+        for (String w : text.split(" ")) {
+            m.increment(w, 0, w.length());
+        }
+        return m;
+    }
+
+    /**
+     * Returns the words reported by the given counts, in order.
+     *
+     * @param m
+     *            the counts
+     * @return the words and their counts, as "word=count"
+     */
+    private static List<String> report(WordCounts m) {
+        List<String> words = new ArrayList<>();
+        m.forEach((word, count) -> words.add(word + "=" + count));
+        return words;
+    }
+
+    /**
+     * Returns the number of files open in this process.
+     *
+     * @return the number of open file descriptors
+     * @throws IOException
+     *             if they cannot be listed
+     */
+    private static long openFiles() throws IOException {
+        try (Stream<Path> fds = Files.list(Paths.get("/proc/self/fd"))) {
+            return fds.count();
+        }
+    }
+
+    @Test
+    public final void testMergesInByteOrder() throws IOException {
+        PartialCounts.write(counts("bat bath bat ant \u00E9t\u00E9"),
+                this.dir.resolve("a.counts"));
+        PartialCounts.write(counts("bath b zoo ant"),
+                this.dir.resolve("b.counts"));
+        PartialCounts.write(counts("zoo"), this.dir.resolve("c.counts"));
+        Files.write(this.dir.resolve("notes.txt"), new byte[] { 1, 2 });
+        List<Path> files = PartialCounts.list(this.dir);
+        assertEquals(3, files.size());
+        assertEquals(Arrays.asList("ant=2", "b=1", "bat=2", "bath=2", "zoo=2",
+                "\u00E9t\u00E9=1"), report(new PartialCounts(files)));
+        List<String> frequent = new ArrayList<>();
+        new PartialCounts(files).forEachAtLeast(2,
+                (word, count) -> frequent.add(word));
+        assertEquals(Arrays.asList("ant", "bat", "bath", "zoo"), frequent);
+    }
+
+    @Test
+    public final void testEmptyFile() throws IOException {
+        PartialCounts.write(new WordCounter(), this.dir.resolve("a.counts"));
+        PartialCounts.write(counts("one"), this.dir.resolve("b.counts"));
+        assertEquals(Arrays.asList("one=1"),
+                report(new PartialCounts(PartialCounts.list(this.dir))));
+    }
+
+    @Test
+    public final void testMatchesSingleCount() throws IOException {
+        Random random = new Random(5);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int shard = 0; shard < 20; shard++) {
+            WordCounter m = new WordCounter();
+            for (int i = 0; i < 500; i++) {
+                String w = Integer.toString(random.nextInt(3000), 36);
+                m.increment(w, 0, w.length());
+                expected.merge(w, 1, Integer::sum);
+            }
+            PartialCounts.write(m, this.dir.resolve(shard + ".counts"));
+        }
+        Map<String, Integer> actual = new HashMap<>();
+        new PartialCounts(PartialCounts.list(this.dir))
+                .forEach((word, count) -> actual.put(word, count));
+        assertEquals(expected, actual);
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public final void testRejectsOtherFiles() throws IOException {
+        Path bad = this.dir.resolve("bad.counts");
+        Files.write(bad, new byte[] { 'T', 'C', 'G', 'I', 0, 0, 0, 1 });
+        report(new PartialCounts(Arrays.asList(bad)));
+    }
+
+    @Test
+    public final void testClosesTruncatedFile() throws IOException {
+        assumeTrue(Files.isDirectory(Paths.get("/proc/self/fd")));
+        Path a = this.dir.resolve("a.counts");
+        PartialCounts.write(counts("ant bat cat dog"), a);
+        byte[] bytes = Files.readAllBytes(a);
+        Files.write(a, Arrays.copyOf(bytes, bytes.length - 3));
+        PartialCounts.write(counts("bee"), this.dir.resolve("b.counts"));
+        long before = openFiles();
+        try {
+            report(new PartialCounts(PartialCounts.list(this.dir)));
+            fail("Merged a truncated file");
+        } catch (UncheckedIOException e) {
+            assertEquals(before, openFiles());
+        }
+    }
+
+}
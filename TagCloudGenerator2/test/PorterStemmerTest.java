@@ -0,0 +1,87 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code PorterStemmer}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class PorterStemmerTest {
+
+    /**
+     * Stems a word.
+     *
+     * @param word
+     *            the word
+     * @return its stem
+     */
+    private static String stem(String word) {
+        byte[] b = new byte[word.length() + 1];
+        System.arraycopy(word.getBytes(StandardCharsets.US_ASCII), 0, b, 0,
+                word.length());
+        return new String(b, 0, new PorterStemmer().stem(b, word.length()),
+                StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Checks the stem of each word.
+     *
+     * @param pairs
+     *            pairs of a word and its expected stem
+     */
+    private static void check(String... pairs) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            assertEquals(pairs[i], pairs[i + 1], stem(pairs[i]));
+        }
+    }
+
+    @Test
+    public final void testStep1() {
+        check("caresses", "caress", "ponies", "poni", "ties", "ti", "caress",
+                "caress", "cats", "cat", "feed", "feed", "agreed", "agre",
+                "plastered", "plaster", "bled", "bled", "motoring", "motor",
+                "sing", "sing", "conflated", "conflat", "troubled", "troubl",
+                "sized", "size", "hopping", "hop", "tanned", "tan", "falling",
+                "fall", "hissing", "hiss", "fizzed", "fizz", "failing", "fail",
+                "filing", "file", "happy", "happi", "sky", "sky");
+    }
+
+    @Test
+    public final void testSteps2To4() {
+        check("relational", "relat", "conditional", "condit", "rational",
+                "ration", "valenci", "valenc", "digitizer", "digit",
+                "vietnamization", "vietnam", "predication", "predic",
+                "operator", "oper", "decisiveness", "decis", "hopefulness",
+                "hope", "sensibiliti", "sensibl", "triplicate", "triplic",
+                "formative", "form", "electrical", "electr", "goodness",
+                "good");
+    }
+
+    @Test
+    public final void testSteps5And6() {
+        check("revival", "reviv", "allowance", "allow", "airliner", "airlin",
+                "adjustable", "adjust", "replacement", "replac", "adjustment",
+                "adjust", "dependent", "depend", "adoption", "adopt",
+                "communism", "commun", "homologous", "homolog", "effective",
+                "effect", "bowdlerize", "bowdler", "probate", "probat",
+                "rate", "rate", "cease", "ceas", "controll", "control",
+                "roll", "roll");
+    }
+
+    @Test
+    public final void testInflectionsShareStem() {
+        check("connect", "connect", "connected", "connect", "connecting",
+                "connect", "connection", "connect", "connections", "connect",
+                "generalization", "gener", "generously", "gener");
+    }
+
+    @Test
+    public final void testShortWords() {
+        check("a", "a", "is", "is", "as", "as");
+    }
+
+}
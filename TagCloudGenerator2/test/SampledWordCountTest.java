@@ -0,0 +1,127 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code SampledWordCount}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class SampledWordCountTest {
+
+    /**
+     * The input file of a test.
+     */
+    private Path file;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.file = Files.createTempFile("sample", ".txt");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        Files.delete(this.file);
+    }
+
+    /**
+     * Writes {@code n} words drawn from {@code distinct} words to the input
+     * file, the word of rank r about 1 / r of the time, and counts them.
+     *
+     * @param n
+     *            the number of words
+     * @param distinct
+     *            the number of distinct words
+     * @return the counts
+     * @throws IOException
+     *             file write problem
+     */
+    private Map<String, Integer> write(int n, int distinct)
+            throws IOException {
+        Random random = new Random(11);
+        Map<String, Integer> counts = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            int rank = (int) Math.pow(distinct + 1, random.nextDouble());
+            String w = "word" + Integer.toString(rank, 26);
+            text.append(w).append(i % 12 == 11 ? "\n" : " ");
+            counts.merge(w, 1, Integer::sum);
+        }
+        Files.write(this.file,
+                text.toString().getBytes(StandardCharsets.UTF_8));
+        return counts;
+    }
+
+    /**
+     * Samples the input file.
+     *
+     * @param percent
+     *            the percentage of the blocks to sample
+     * @param blockSize
+     *            the size of a block
+     * @return the estimates
+     * @throws IOException
+     *             file read problem
+     */
+    private List<SampledWordCount.Estimate> sample(int percent,
+            int blockSize) throws IOException {
+        SampledWordCount s = new SampledWordCount(percent, blockSize,
+                new Random(7));
+        try (FileChannel channel = FileChannel.open(this.file)) {
+            s.run(channel);
+        }
+        return s.estimates();
+    }
+
+    @Test
+    public final void testFullSampleIsExact() throws IOException {
+        Map<String, Integer> expected = this.write(5000, 300);
+        Map<String, Integer> actual = new HashMap<>();
+        for (SampledWordCount.Estimate e : this.sample(100, 97)) {
+            actual.put(e.getKey(), e.getValue());
+            assertEquals(0, e.margin());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public final void testMarginsCoverTrueCounts() throws IOException {
+        Map<String, Integer> expected = this.write(100000, 1000);
+        List<SampledWordCount.Estimate> estimates = this.sample(10, 512);
+        for (SampledWordCount.Estimate e : estimates.subList(0, 5)) {
+            int truth = expected.get(e.getKey());
+            assertTrue(e.getKey(), e.margin() > 0);
+            assertTrue(e.getKey(),
+                    Math.abs(e.getValue() - truth) <= e.margin());
+        }
+        assertEquals("word1", estimates.get(0).getKey());
+    }
+
+    @Test
+    public final void testUncertain() {
+        List<SampledWordCount.Estimate> estimates = Arrays.asList(
+                new SampledWordCount.Estimate("a", 100, 5),
+                new SampledWordCount.Estimate("b", 60, 10),
+                new SampledWordCount.Estimate("c", 50, 5),
+                new SampledWordCount.Estimate("d", 10, 5));
+        assertEquals(1, SampledWordCount.uncertain(estimates, 2));
+        assertEquals(0, SampledWordCount.uncertain(estimates, 3));
+        assertEquals(0, SampledWordCount.uncertain(estimates, 4));
+    }
+
+}
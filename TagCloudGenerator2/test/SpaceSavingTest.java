@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code SpaceSaving}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class SpaceSavingTest {
+
+    /**
+     * Counts the given words into a new summary of the given capacity.
+     *
+     * @param capacity
+     *            the number of counters
+     * @param words
+     *            the words to count
+     * @return the summary
+     */
+    private static SpaceSaving count(int capacity, String... words) {
+        SpaceSaving s = new SpaceSaving(capacity);
+        for (String w : words) {
+            s.count(w, 0, w.length());
+        }
+        return s;
+    }
+
+    /**
+     * Returns the estimated counts of the given summary as a map.
+     *
+     * @param s
+     *            the summary
+     * @return the map of monitored words and their estimated counts
+     */
+    private static Map<String, Integer> toMap(SpaceSaving s) {
+        Map<String, Integer> m = new HashMap<>();
+        for (SpaceSaving.Estimate e : s.estimates()) {
+            m.put(e.getKey(), e.getValue());
+        }
+        return m;
+    }
+
+    @Test
+    public final void testExactWhenLargeEnough() {
+        SpaceSaving s = count(4, "red", "blue", "red", "green", "red");
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("red", 3);
+        expected.put("blue", 1);
+        expected.put("green", 1);
+        assertEquals(expected, toMap(s));
+        assertEquals(0, s.errorBound());
+        assertEquals(5, s.total());
+    }
+
+    @Test
+    public final void testEviction() {
+        SpaceSaving s = count(2, "red", "red", "blue", "green");
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("red", 2);
+        expected.put("green", 2);
+        assertEquals(expected, toMap(s));
+        assertEquals(2, s.errorBound());
+    }
+
+    @Test
+    public final void testBoundsOnSkewedStream() {
+        final int capacity = 50;
+        final int vocabulary = 5000;
+        final int length = 200000;
+        Random r = new Random(1);
+        SpaceSaving s = new SpaceSaving(capacity);
+        Map<String, Integer> exact = new HashMap<>();
+        for (int i = 0; i < length; i++) {
+            int rank = (int) Math.pow(vocabulary, r.nextDouble());
+            String w = "w" + rank;
+            s.count(w, 0, w.length());
+            exact.merge(w, 1, Integer::sum);
+        }
+        assertTrue(s.errorBound() <= length / capacity);
+        for (SpaceSaving.Estimate e : s.estimates()) {
+            int truth = exact.get(e.getKey());
+            assertTrue(e.getValue() >= truth);
+            assertTrue(e.getValue() - e.error() <= truth);
+        }
+        for (Map.Entry<String, Integer> p : exact.entrySet()) {
+            if (p.getValue() > length / capacity) {
+                assertTrue(toMap(s).containsKey(p.getKey()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code SpillingWordCounter}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class SpillingWordCounterTest {
+
+    @Test
+    public final void testNoWords() throws IOException {
+        try (SpillingWordCounter c = new SpillingWordCounter(1)) {
+            List<String> words = new ArrayList<>();
+            c.forEach((word, count) -> words.add(word));
+            assertEquals(0, words.size());
+        }
+    }
+
+    @Test
+    public final void testMergesRunsInOrder() throws IOException {
+        final int distinct = 50;
+        final int length = 10000;
+        Random r = new Random(2);
+        Map<String, Integer> expected = new HashMap<>();
+        Map<String, Integer> merged = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        try (SpillingWordCounter c = new SpillingWordCounter(
+                distinct * SpillingWordCounter.BYTES_PER_WORD)) {
+            for (int i = 0; i < length; i++) {
+                String w = "w" + r.nextInt(length / 10) + "\u00E9";
+                c.count(w, 0, w.length());
+                expected.merge(w, 1, Integer::sum);
+            }
+            c.forEach((word, count) -> {
+                merged.put(word, count);
+                order.add(word);
+            });
+        }
+        assertEquals(expected, merged);
+        List<String> sorted = new ArrayList<>(order);
+        sorted.sort(null);
+        assertEquals(sorted, order);
+    }
+
+    @Test
+    public final void testMergesInPassesAboveFanIn() throws IOException {
+        final int distinct = 10;
+        final int fanIn = 3;
+        Path dir = Files.createTempDirectory("runs");
+        Random r = new Random(3);
+        Map<String, Integer> expected = new HashMap<>();
+        Map<String, Integer> merged = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        try (SpillingWordCounter c = new SpillingWordCounter(
+                distinct * SpillingWordCounter.BYTES_PER_WORD, dir, fanIn)) {
+            for (int i = 0; i < 5000; i++) {
+                String w = "w" + r.nextInt(500);
+                c.count(w, 0, w.length());
+                expected.merge(w, 1, Integer::sum);
+            }
+            int spilled = c.runs();
+            assertTrue(spilled > fanIn * fanIn);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                int n = 0;
+                for (Path p : files) {
+                    n++;
+                }
+                assertEquals(spilled, n);
+            }
+            c.forEach((word, count) -> {
+                merged.put(word, count);
+                order.add(word);
+            });
+            assertTrue(c.runs() <= fanIn);
+            assertEquals(expected, merged);
+            merged.clear();
+            c.forEach((word, count) -> merged.put(word, count));
+            assertEquals(expected, merged);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path p : files) {
+                    Files.delete(p);
+                }
+            }
+            Files.delete(dir);
+        }
+        List<String> sorted = new ArrayList<>(order);
+        sorted.sort(null);
+        assertEquals(sorted, order);
+    }
+
+}
@@ -0,0 +1,88 @@
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TagCloudBatch}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TagCloudBatchTest {
+
+    /**
+     * Directory holding the files of a test.
+     */
+    private Path dir;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("batch");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        try (Stream<Path> tree = Files.walk(this.dir)) {
+            tree.sorted(Comparator.reverseOrder()).forEach(p -> {
+                p.toFile().delete();
+            });
+        }
+    }
+
+    /**
+     * Writes a file.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            its contents
+     * @throws IOException
+     *             write problem
+     */
+    private static void write(Path file, String text) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a file.
+     *
+     * @param file
+     *            the file
+     * @return its contents
+     * @throws IOException
+     *             read problem
+     */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public final void testFileAndCorpusClouds() throws Exception {
+        Path in = this.dir.resolve("in");
+        Path out = in.resolve("out");
+        write(in.resolve("a.txt"), "red red blue");
+        write(in.resolve("sub/b.txt"), "green green green blue");
+        new TagCloudBatch(out, 1, 2, null).run(in);
+        String a = read(out.resolve("a.txt.html"));
+        assertTrue(a.contains(">red<"));
+        assertFalse(a.contains(">blue<"));
+        String b = read(out.resolve("sub/b.txt.html"));
+        assertTrue(b.contains(">green<"));
+        new TagCloudBatch(out, 1, 2, null).run(in);
+        String corpus = read(out.resolve(TagCloudBatch.CORPUS));
+        assertTrue(corpus.contains("title=\"count: 3\">green<"));
+        assertFalse(Files.exists(out.resolve("out")));
+    }
+
+}
@@ -0,0 +1,171 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for the counting, selection and sorting of the words of
+ * a cloud in {@code TagCloudGenerator}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TagCloudGeneratorTest {
+
+    /**
+     * Text whose counts tie at several cutoffs: d 4, c 3, a 2, b 2, e 2,
+     * f 1, g 1.
+     */
+    private static final String TEXT = "d d d d c c c a a b b e e f g";
+
+    /**
+     * Counts the words of the given text in a {@code WordCounter}.
+     *
+     * @param text
+     *            the text
+     * @return the counter
+     */
+    private static WordCounter countWords(String text) {
+        WordCounter c = new WordCounter();
+        for (String w : text.split(" ")) {
+            c.increment(w, 0, w.length());
+        }
+        return c;
+    }
+
+    /**
+     * Counts the words of the given text in a {@code ByteWordCounter}.
+     *
+     * @param text
+     *            the text
+     * @return the counter
+     */
+    private static ByteWordCounter countBytes(String text) {
+        ByteWordCounter c = new ByteWordCounter();
+        WordScanner scanner = new WordScanner(c);
+        scanner.scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        scanner.finish();
+        return c;
+    }
+
+    /**
+     * Returns the words of the given list, each followed by its count.
+     *
+     * @param s
+     *            the words and their counts
+     * @return the words and counts, as "word:count"
+     */
+    private static List<String> show(List<Map.Entry<String, Integer>> s) {
+        List<String> shown = new ArrayList<>();
+        for (Map.Entry<String, Integer> p : s) {
+            shown.add(p.getKey() + ":" + p.getValue());
+        }
+        return shown;
+    }
+
+    /**
+     * Checks the selection of the top {@code size} words of {@code TEXT}
+     * with both counters.
+     *
+     * @param size
+     *            the number of words
+     * @param expected
+     *            the words selected, as "word:count", in selection order
+     */
+    private static void checkTop(int size, String... expected) {
+        assertEquals(List.of(expected), show(TagCloudGenerator
+                .getWordsFrequency(countWords(TEXT), size)));
+        assertEquals(List.of(expected), show(TagCloudGenerator
+                .getWordsFrequency(countBytes(TEXT), size)));
+    }
+
+    @Test
+    public final void testExactCountsOfLongWords() throws IOException {
+        char[] c = new char[2 * WordScanner.MAX_WORD_LENGTH];
+        Arrays.fill(c, 'x');
+        String word = new String(c);
+        Path file = Files.createTempFile("long", ".txt");
+        try {
+            Files.write(file, (word + " hello hello " + word)
+                    .getBytes(StandardCharsets.US_ASCII));
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                ByteWordCounter m = TagCloudGenerator.generateMap(channel);
+                assertEquals(2, m.size());
+                assertEquals(2, m.get(word));
+                assertEquals(2, m.get("hello"));
+                m = ParallelWordCount.count(channel, 2, 16);
+                assertEquals(2, m.size());
+                assertEquals(2, m.get(word));
+                assertEquals(2, m.get("hello"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public final void testTiesAtCutoff() {
+        checkTop(3, "d:4", "c:3", "e:2");
+        checkTop(4, "d:4", "c:3", "e:2", "b:2");
+        checkTop(6, "d:4", "c:3", "e:2", "b:2", "a:2", "g:1");
+    }
+
+    @Test
+    public final void testNoWords() {
+        checkTop(0);
+        assertEquals(0, TagCloudGenerator
+                .getWordsFrequency(countWords("a"), 0).size());
+    }
+
+    @Test
+    public final void testMoreThanVocabulary() {
+        checkTop(100, "d:4", "c:3", "e:2", "b:2", "a:2", "g:1", "f:1");
+        checkTop(7, "d:4", "c:3", "e:2", "b:2", "a:2", "g:1", "f:1");
+    }
+
+    @Test
+    public final void testAlphabeticalOfNone() {
+        int[] maxAndMin = new int[2];
+        assertEquals(0, TagCloudGenerator
+                .getWordsAlphabetical(new ArrayList<>(), maxAndMin).size());
+        assertArrayEquals(new int[] { 0, 0 }, maxAndMin);
+    }
+
+    @Test
+    public final void testAlphabeticalOfOne() {
+        int[] maxAndMin = new int[2];
+        List<Map.Entry<String, Integer>> top = TagCloudGenerator
+                .getWordsFrequency(countWords(TEXT), 1);
+        assertEquals(List.of("d:4"), show(
+                TagCloudGenerator.getWordsAlphabetical(top, maxAndMin)));
+        assertArrayEquals(new int[] { 4, 4 }, maxAndMin);
+    }
+
+    @Test
+    public final void testAlphabetical() {
+        int[] maxAndMin = new int[2];
+        List<Map.Entry<String, Integer>> top = new ArrayList<>();
+        top.add(new SimpleImmutableEntry<>("d", 4));
+        top.add(new SimpleImmutableEntry<>("c", 3));
+        top.add(new SimpleImmutableEntry<>("e", 2));
+        assertEquals(List.of("c:3", "d:4", "e:2"), show(
+                TagCloudGenerator.getWordsAlphabetical(top, maxAndMin)));
+        assertArrayEquals(new int[] { 4, 2 }, maxAndMin);
+        assertEquals(List.of("d:4", "c:3", "e:2"), show(top));
+    }
+
+}
@@ -0,0 +1,173 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TagCloudMetrics}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TagCloudMetricsTest {
+
+    @Test
+    public final void testCountersThroughJmx() throws JMException {
+        TagCloudMetrics.register();
+        TagCloudMetrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TagCloudMetrics.NAME);
+        long runs = (Long) server.getAttribute(name, "Runs");
+        long bytes = (Long) server.getAttribute(name, "BytesRead");
+        long tokens = (Long) server.getAttribute(name, "Tokens");
+        long rehashes = (Long) server.getAttribute(name, "Rehashes");
+        TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+        ByteWordCounter m = new ByteWordCounter();
+        WordScanner scanner = new WordScanner(m);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("w").append(i).append(i % 10 == 9 ? "\n" : " ");
+        }
+        scanner.scan(ByteBuffer.wrap(
+                text.toString().getBytes(StandardCharsets.US_ASCII)));
+        scanner.finish();
+        assertEquals(text.length(), run.bytesRead());
+        run.end(m.size(), 0, 0);
+        assertEquals(runs + 1,
+                (long) (Long) server.getAttribute(name, "Runs"));
+        assertEquals(bytes + text.length(),
+                (long) (Long) server.getAttribute(name, "BytesRead"));
+        assertEquals(tokens + 2000,
+                (long) (Long) server.getAttribute(name, "Tokens"));
+        assertTrue((Long) server.getAttribute(name, "Rehashes") > rehashes);
+        assertEquals(2000L, server.getAttribute(name, "DistinctWords"));
+    }
+
+    @Test
+    public final void testFlightRecorderEvents() throws IOException {
+        Path file = Files.createTempFile("metrics", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("TagCloud.Stage").withThreshold(Duration.ZERO);
+            recording.enable("TagCloud.Run");
+            recording.start();
+            TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+            TagCloudMetrics.begin(TagCloudMetrics.Stage.SORT).end(7, 0);
+            TagCloudMetrics.begin(TagCloudMetrics.Stage.RENDER).end(7, 512);
+            WordScanner scanner = new WordScanner((word, length) -> {
+            });
+            scanner.scan(ByteBuffer.wrap(new byte[1000]));
+            scanner.finish();
+            run.end(50, 7, 512);
+            recording.stop();
+            recording.dump(file);
+            List<String> stages = new ArrayList<>();
+            long read = -1;
+            long written = -1;
+            for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+                String type = e.getEventType().getName();
+                if (type.equals("TagCloud.Stage")) {
+                    stages.add(e.getString("stage") + ":" + e.getLong("words")
+                            + ":" + e.getLong("bytes"));
+                } else if (type.equals("TagCloud.Run")) {
+                    read = e.getLong("bytesRead");
+                    written = e.getLong("bytesWritten");
+                }
+            }
+            assertTrue(stages.contains("sort:7:0"));
+            assertTrue(stages.contains("render:7:512"));
+            assertEquals(1000, read);
+            assertEquals(512, written);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public final void testConcurrentRunsCountedSeparately()
+            throws InterruptedException {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        long[] tokens = new long[2];
+        long[] bytes = new long[2];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            int n = t;
+            threads.add(new Thread(() -> {
+                TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+                WordScanner scanner = new WordScanner(new ByteWordCounter());
+                byte[] words = "a b c ".getBytes(StandardCharsets.US_ASCII);
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        barrier.await();
+                        for (int j = 0; j <= n; j++) {
+                            scanner.scan(ByteBuffer.wrap(words));
+                            scanner.report();
+                        }
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    return;
+                }
+                tokens[n] = run.tokens();
+                bytes[n] = run.bytesRead();
+                run.end(3, 3, 0);
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(300, tokens[0]);
+        assertEquals(600, bytes[0]);
+        assertEquals(600, tokens[1]);
+        assertEquals(1200, bytes[1]);
+    }
+
+    @Test
+    public final void testWorkerThreadsCountForTheirRun() throws IOException {
+        Path file = Files.createTempFile("metrics", ".txt");
+        try {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                text.append("w").append(i % 97).append(' ');
+            }
+            Files.write(file,
+                    text.toString().getBytes(StandardCharsets.US_ASCII));
+            TagCloudMetrics.Run run = TagCloudMetrics.beginRun();
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                ParallelWordCount.count(channel, 2, 1024);
+            }
+            assertEquals(5000, run.tokens());
+            assertEquals(text.length(), run.bytesRead());
+            run.end(97, 0, 0);
+            assertNull(TagCloudMetrics.current());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TagCloudOptions}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TagCloudOptionsTest {
+
+    /**
+     * Checks that the given arguments are rejected with the given message.
+     *
+     * @param message
+     *            the expected message
+     * @param args
+     *            the command line arguments
+     */
+    private static void checkRejected(String message, String... args) {
+        try {
+            TagCloudOptions.parse(args);
+            fail("Accepted " + String.join(" ", args));
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public final void testCompatibleOptions() {
+        TagCloudOptions options = TagCloudOptions.parse(new String[] {
+            "--spill=8", "--spilldir=/tmp", "--normalize=100",
+            "--partial=p.bin", "--clouds=25,100" });
+        assertEquals(8L << 20, options.spill());
+        assertEquals(100, options.normalize());
+        TagCloudOptions.parse(new String[] { "--serve=8080", "--cache=1" });
+        TagCloudOptions.parse(new String[] { "--ngram=2", "--normalize=10" });
+        TagCloudOptions.parse(new String[] { "--threads=1", "--spill=8" });
+        TagCloudOptions.parse(
+                new String[] { "--ngram=1", "--approximate=64" });
+        TagCloudOptions.parse(new String[] { "--threads=1", "--serve=8080" });
+    }
+
+    @Test
+    public final void testRejectsTwoWaysOfCounting() {
+        checkRejected("Options --spill and --approximate cannot be used "
+                + "together.", "--approximate=64", "--spill=8");
+        checkRejected("Options --pipeline and --threads cannot be used "
+                + "together.", "--threads=4", "--pipeline=2");
+        checkRejected("Options --normalize and --snapshot cannot be used "
+                + "together.", "--snapshot=s.bin", "--normalize=100");
+        checkRejected("Options --partial and --approximate cannot be used "
+                + "together.", "--partial=p.bin", "--approximate=64");
+    }
+
+    @Test
+    public final void testRejectsOptionsOfModes() {
+        checkRejected("Options --watch and --sample cannot be used "
+                + "together.", "--sample=5", "--watch=100");
+        checkRejected("Options --watch and --spill cannot be used together.",
+                "--spill=8", "--watch=100");
+        checkRejected("Options --window and --clouds cannot be used "
+                + "together.", "--window=5", "--clouds=25");
+        checkRejected("Option --cache needs --serve.", "--cache=1");
+        checkRejected("Option --spilldir needs --spill.", "--spilldir=/tmp");
+    }
+
+    @Test
+    public final void testChecksKindOfInput() {
+        TagCloudOptions options = TagCloudOptions
+                .parse(new String[] { "--threads=4" });
+        options.checkFile(true);
+        try {
+            options.checkFile(false);
+            fail("Accepted --threads on a compressed file");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Option --threads needs an uncompressed regular "
+                    + "file.", e.getMessage());
+        }
+        try {
+            options.checkDirectory();
+            fail("Accepted --threads on a directory");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Option --threads cannot be used with a directory.",
+                    e.getMessage());
+        }
+        options = TagCloudOptions.parse(new String[] { "--workers=2" });
+        options.checkDirectory();
+        try {
+            options.checkFile(true);
+            fail("Accepted --workers on a file");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Option --workers needs a directory.",
+                    e.getMessage());
+        }
+    }
+
+}
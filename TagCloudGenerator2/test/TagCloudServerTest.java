@@ -0,0 +1,163 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TagCloudServer}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TagCloudServerTest {
+
+    /**
+     * Sends a request to the given server.
+     *
+     * @param server
+     *            the server
+     * @param query
+     *            the path and query of the request
+     * @param body
+     *            the body of a POST request, {@code null} for a GET request
+     * @return the status, a new line and the body of the response
+     * @throws IOException
+     *             connection problem
+     */
+    private static String request(TagCloudServer server, String query,
+            String body) throws IOException {
+        URL url = new URL("http://localhost:" + server.port() + query);
+        HttpURLConnection c = (HttpURLConnection) url.openConnection();
+        if (body != null) {
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            try (OutputStream out = c.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = c.getResponseCode();
+        InputStream in = status < 400 ? c.getInputStream()
+                : c.getErrorStream();
+        try (in) {
+            return status + "\n"
+                    + new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @return the server
+     * @throws IOException
+     *             if no port can be bound
+     */
+    private static TagCloudServer start() throws IOException {
+        TagCloudServer server = new TagCloudServer(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0), 1 << 20);
+        server.start();
+        return server;
+    }
+
+    @Test
+    public final void testFileCloudIsCached() throws IOException {
+        Path file = Files.createTempFile("server", ".txt");
+        TagCloudServer server = start();
+        try {
+            Files.write(file, "red red blue red green blue"
+                    .getBytes(StandardCharsets.US_ASCII));
+            String query = "/cloud?n=2&file=" + URLEncoder
+                    .encode(file.toString(), StandardCharsets.UTF_8);
+            String first = request(server, query, null);
+            assertTrue(first.startsWith("200\n"));
+            assertTrue(first.contains(">red</span>"));
+            assertTrue(first.contains(">blue</span>"));
+            assertFalse(first.contains(">green</span>"));
+            assertEquals(first, request(server, query, null));
+            assertEquals(1, server.cache().hits());
+            assertEquals(1, server.cache().misses());
+            Files.write(file, "green green"
+                    .getBytes(StandardCharsets.US_ASCII));
+            Files.setLastModifiedTime(file,
+                    FileTime.fromMillis(System.currentTimeMillis() + 2000));
+            assertTrue(request(server, query, null)
+                    .contains(">green</span>"));
+            assertEquals(2, server.cache().misses());
+        } finally {
+            server.stop();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public final void testNamesOfSameFileShareCloud() throws IOException {
+        Path file = Files.createTempFile("server", ".txt");
+        TagCloudServer server = start();
+        try {
+            Files.write(file,
+                    "red red blue".getBytes(StandardCharsets.US_ASCII));
+            String direct = file.toString();
+            String dotted = file.getParent().resolve(".")
+                    .resolve(file.getFileName()).toString();
+            String first = request(server, "/cloud?n=2&file="
+                    + URLEncoder.encode(direct, StandardCharsets.UTF_8), null);
+            String second = request(server, "/cloud?n=2&file="
+                    + URLEncoder.encode(dotted, StandardCharsets.UTF_8), null);
+            assertEquals(first, second);
+            assertTrue(first.contains("2 words in " + direct));
+            assertEquals(1, server.cache().hits());
+            assertEquals(1, server.cache().misses());
+        } finally {
+            server.stop();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public final void testTextCloud() throws IOException {
+        TagCloudServer server = start();
+        try {
+            String first = request(server, "/cloud?n=1&name=notes",
+                    "b a b");
+            assertTrue(first.startsWith("200\n"));
+            assertTrue(first.contains(">b</span>"));
+            assertTrue(first.contains("1 words in notes"));
+            assertEquals(first,
+                    request(server, "/cloud?n=1&name=notes", "b a b"));
+            assertEquals(1, server.cache().hits());
+            assertTrue(request(server, "/metrics", null)
+                    .contains("1 hits, 1 misses"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public final void testBadRequests() throws IOException {
+        TagCloudServer server = start();
+        try {
+            assertTrue(request(server, "/cloud?n=x&file=a", null)
+                    .startsWith("400\n"));
+            assertTrue(request(server, "/cloud?n=3", null)
+                    .startsWith("400\n"));
+            assertTrue(request(server, "/cloud?n=3&file=no/such/file", null)
+                    .startsWith("404\n"));
+        } finally {
+            server.stop();
+        }
+    }
+
+}
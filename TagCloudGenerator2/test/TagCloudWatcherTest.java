@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TagCloudWatcher}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TagCloudWatcherTest {
+
+    /**
+     * Directory holding the files of a test.
+     */
+    private Path dir;
+
+    /**
+     * The input file of a test.
+     */
+    private Path input;
+
+    /**
+     * The cloud of a test.
+     */
+    private Path output;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("watch");
+        this.input = this.dir.resolve("input.txt");
+        this.output = this.dir.resolve("cloud.html");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(this.dir)) {
+            for (Path p : files) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Appends text to the input file.
+     *
+     * @param text
+     *            the text to append
+     * @throws IOException
+     *             write problem
+     */
+    private void append(String text) throws IOException {
+        Files.write(this.input, text.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public final void testRewritesOnlyWhenCloudChanges() throws IOException {
+        TagCloudWatcher w = new TagCloudWatcher(this.input, this.output, 2,
+                100);
+        this.append("red red red blue blue green ");
+        assertTrue(w.update());
+        assertEquals(1, w.writes());
+        this.append("pink red red red ");
+        assertFalse(w.update());
+        this.append("green green green ");
+        assertTrue(w.update());
+        assertEquals(2, w.writes());
+        String html = new String(Files.readAllBytes(this.output),
+                StandardCharsets.UTF_8);
+        assertTrue(html.contains(">green<"));
+        assertFalse(html.contains(">blue<"));
+    }
+
+    @Test
+    public final void testRecountsRewrittenFile() throws IOException {
+        TagCloudWatcher w = new TagCloudWatcher(this.input, this.output, 1,
+                100);
+        this.append("red red blue ");
+        assertTrue(w.update());
+        Files.delete(this.input);
+        this.append("blue ");
+        assertTrue(w.update());
+        String html = new String(Files.readAllBytes(this.output),
+                StandardCharsets.UTF_8);
+        assertTrue(html.contains(">blue<"));
+        assertFalse(html.contains(">red<"));
+    }
+
+    @Test(timeout = 10000)
+    public final void testKeepsWatchingAfterFailedUpdate() throws Exception {
+        this.append("red ");
+        Files.createDirectory(this.output);
+        Path blocker = this.output.resolve("blocker");
+        Files.createFile(blocker);
+        TagCloudWatcher w = new TagCloudWatcher(this.input, this.output, 1,
+                100);
+        AtomicReference<Exception> stop = new AtomicReference<>();
+        Thread t = new Thread(() -> {
+            try {
+                w.run();
+            } catch (IOException | InterruptedException e) {
+                stop.set(e);
+            }
+        });
+        t.start();
+        while (w.failures() == 0) {
+            Thread.sleep(10);
+        }
+        Files.delete(blocker);
+        Files.delete(this.output);
+        this.append("blue blue ");
+        while (!Files.isRegularFile(this.output)) {
+            Thread.sleep(10);
+        }
+        assertTrue(t.isAlive());
+        t.interrupt();
+        t.join();
+        assertTrue(stop.get() instanceof InterruptedException);
+    }
+
+}
@@ -0,0 +1,223 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TokenPipeline}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class TokenPipelineTest {
+
+    /**
+     * The input file of a test.
+     */
+    private Path input;
+
+    @Before
+    public final void setUp() throws IOException {
+        this.input = Files.createTempFile("pipeline", ".txt");
+    }
+
+    @After
+    public final void tearDown() throws IOException {
+        Files.delete(this.input);
+    }
+
+    /**
+     * Returns the contents of the given counts as a map.
+     *
+     * @param c
+     *            the counts
+     * @return the map of words and their counts in {@code c}
+     */
+    private static Map<String, Integer> toMap(WordCounts c) {
+        Map<String, Integer> m = new HashMap<>();
+        c.forEach((word, count) -> m.put(word, count));
+        return m;
+    }
+
+    /**
+     * Writes the input file, then checks that a pipeline counts it as
+     * {@code generateMap} does.
+     *
+     * @param text
+     *            the text of the input file
+     * @param pipeline
+     *            the pipeline
+     * @throws IOException
+     *             read or write problem
+     */
+    private void check(String text, TokenPipeline pipeline)
+            throws IOException {
+        Files.write(this.input, text.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel in = FileChannel.open(this.input)) {
+            Map<String, Integer> expected = toMap(
+                    TagCloudGenerator.generateMap(in));
+            in.position(0);
+            assertEquals(expected, toMap(pipeline.run(in)));
+        }
+    }
+
+    /**
+     * Returns random text of the given number of words, with words of up to
+     * 20 letters, mixed separators, and upper case and non-ASCII letters.
+     *
+     * @param words
+     *            the number of words
+     * @return the text
+     */
+    private static String text(int words) {
+        Random random = new Random(words);
+        String[] separators = { " ", "\n", ", ", "  ", "-", ".\n" };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            int length = 1 + random.nextInt(random.nextInt(20) + 1);
+            for (int j = 0; j < length; j++) {
+                int c = random.nextInt(30);
+                if (c < 24) {
+                    sb.append((char) ('a' + c % 6));
+                } else if (c < 28) {
+                    sb.append((char) ('A' + c % 6));
+                } else {
+                    sb.append('\u00E9');
+                }
+            }
+            sb.append(separators[random.nextInt(separators.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test(timeout = 20000)
+    public final void testMatchesGenerateMap() throws IOException {
+        String text = text(20000);
+        int[][] shapes = { { 1, 1, 64, 1 }, { 2, 3, 100, 1 },
+            { 3, 5, 1000, 2 }, { 4, 2, 4096, 8 }, { 1, 1, 1 << 20, 8 } };
+        for (int[] shape : shapes) {
+            this.check(text,
+                    new TokenPipeline(shape[0], shape[1], shape[2], shape[3]));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public final void testWordLongerThanBlock() throws IOException {
+        StringBuilder sb = new StringBuilder("red ");
+        for (int i = 0; i < 1000; i++) {
+            sb.append('x');
+        }
+        sb.append(" red blue");
+        this.check(sb.toString(), new TokenPipeline(2, 2, 16, 1));
+        this.check(sb.substring(4, 44) + " " + sb.substring(4, 27) + " z",
+                new TokenPipeline(1, 1, 16, 1));
+    }
+
+    @Test(timeout = 20000)
+    public final void testDropsWordLongerThanCarry() throws IOException {
+        StringBuilder sb = new StringBuilder("red ");
+        for (int i = 0; i <= TokenPipeline.MAX_CARRY; i++) {
+            sb.append('x');
+        }
+        sb.append(" red blue");
+        Files.write(this.input,
+                sb.toString().getBytes(StandardCharsets.US_ASCII));
+        try (FileChannel in = FileChannel.open(this.input)) {
+            Map<String, Integer> expected = new HashMap<>();
+            expected.put("red", 2);
+            expected.put("blue", 1);
+            assertEquals(expected,
+                    toMap(new TokenPipeline(1, 1, 1 << 10, 1).run(in)));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public final void testShortInput() throws IOException {
+        this.check("red blue red", new TokenPipeline(2, 2));
+        this.check("red", new TokenPipeline(1, 3));
+    }
+
+    @Test(timeout = 20000)
+    public final void testEmptyInput() throws IOException {
+        this.check("", new TokenPipeline(2, 2));
+        this.check(" \n ", new TokenPipeline(3, 1, 1, 1));
+    }
+
+    @Test(timeout = 20000)
+    public final void testStagesWithdrawnAfterRun()
+            throws IOException, MalformedObjectNameException {
+        this.check(text(100), new TokenPipeline(1, 1));
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName("TagCloudGenerator:type=Pipeline,"
+                        + "stage=reader")));
+    }
+
+    @Test(timeout = 20000)
+    public final void testStagesPublishedWhileRunning() throws IOException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        long[] seen = { -1, -1 };
+        ReadableByteChannel in = new ReadableByteChannel() {
+
+            /**
+             * Number of reads so far.
+             */
+            private int reads = 0;
+
+            @Override
+            public int read(ByteBuffer dst) {
+                this.reads++;
+                if (this.reads == 3) {
+                    try {
+                        ObjectName name = new ObjectName(
+                                "TagCloudGenerator:type=Pipeline,"
+                                        + "stage=reader");
+                        seen[0] = (Long) server.getAttribute(name, "Items");
+                        seen[1] = (Long) server.getAttribute(name, "Bytes");
+                    } catch (JMException e) {
+                        seen[0] = -2;
+                    }
+                }
+                if (this.reads > 4) {
+                    return -1;
+                }
+                dst.put("red blue\n".getBytes(StandardCharsets.US_ASCII));
+                return 9;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+
+        };
+        WordCounter m = new TokenPipeline(1, 1, 9, 1).run(in);
+        assertEquals(4, m.get("red"));
+        assertTrue(seen[0] >= 1);
+        assertEquals(9 * seen[0], seen[1]);
+    }
+
+}
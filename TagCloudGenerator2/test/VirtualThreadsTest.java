@@ -0,0 +1,50 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code VirtualThreads}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class VirtualThreadsTest {
+
+    @Test(timeout = 10000)
+    public final void testExecutorRunsEveryTask() throws InterruptedException {
+        Executor executor = VirtualThreads.executor("test", 2);
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            executor.execute(done::countDown);
+        }
+        done.await();
+    }
+
+    @Test(timeout = 10000)
+    public final void testFallbackPoolIsBounded() throws InterruptedException {
+        assumeFalse(VirtualThreads.available());
+        Executor executor = VirtualThreads.executor("test", 2);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            executor.execute(() -> {
+                threads.add(Thread.currentThread());
+                done.countDown();
+            });
+        }
+        done.await();
+        assertTrue(threads.size() <= 2);
+        for (Thread t : threads) {
+            assertTrue(t.isDaemon());
+            assertEquals("test", t.getName());
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code WindowedWordCount}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class WindowedWordCountTest {
+
+    /**
+     * Counts the words of the given text into the window.
+     *
+     * @param w
+     *            the window
+     * @param text
+     *            the text
+     */
+    private static void count(WindowedWordCount w, String text) {
+        WordScanner scanner = new WordScanner(w);
+        scanner.scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        scanner.finish();
+    }
+
+    @Test
+    public final void testBucketsExpire() {
+        WindowedWordCount w = new WindowedWordCount(3, 1000, 10, 0);
+        count(w, "error error warn");
+        assertFalse(w.advance(999));
+        assertTrue(w.advance(1000));
+        count(w, "error info");
+        assertTrue(w.advance(2500));
+        count(w, "info");
+        assertEquals(3, w.get("error"));
+        assertEquals(2, w.get("info"));
+        assertTrue(w.advance(3000));
+        assertEquals(1, w.get("error"));
+        assertEquals(0, w.get("warn"));
+        assertEquals(2, w.size());
+        assertTrue(w.advance(4000));
+        assertEquals(0, w.get("error"));
+        assertEquals(1, w.get("info"));
+        assertEquals(1, w.size());
+    }
+
+    @Test
+    public final void testLongGapClearsWindow() {
+        WindowedWordCount w = new WindowedWordCount(3, 1000, 10, 0);
+        count(w, "error error warn");
+        assertTrue(w.advance(60000));
+        assertEquals(0, w.size());
+        assertEquals(0, w.top().size());
+        count(w, "warn");
+        assertEquals(1, w.get("warn"));
+    }
+
+    /**
+     * Returns the top words of the given buckets, counted again.
+     *
+     * @param recent
+     *            the counts of the buckets of the window
+     * @param size
+     *            the number of words to select
+     * @return the top words
+     */
+    private static List<Map.Entry<String, Integer>> recount(
+            Deque<Map<String, Integer>> recent, int size) {
+        Map<String, Integer> total = new HashMap<>();
+        for (Map<String, Integer> bucket : recent) {
+            bucket.forEach((word, count) -> total.merge(word, count,
+                    Integer::sum));
+        }
+        WordCounts m = action -> total.forEach(action::accept);
+        return TagCloudGenerator.getWordsFrequency(m, size);
+    }
+
+    @Test
+    public final void testTopMatchesRecount() {
+        String[] vocabulary = new String[200];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = "w" + i;
+        }
+        Random random = new Random(3);
+        int buckets = 4;
+        WindowedWordCount w = new WindowedWordCount(buckets, 1000, 15, 0);
+        Deque<Map<String, Integer>> recent = new ArrayDeque<>();
+        recent.add(new HashMap<>());
+        for (int second = 0; second < 30; second++) {
+            for (int i = 0; i < 400; i++) {
+                int r = random.nextInt(vocabulary.length);
+                String word = vocabulary[r * r / vocabulary.length];
+                count(w, word);
+                recent.getLast().merge(word, 1, Integer::sum);
+            }
+            count(w, "w199 w199 w199");
+            recent.getLast().merge("w199", 3, Integer::sum);
+            assertEquals(recount(recent, 15), w.top());
+            w.advance((second + 1) * 1000L);
+            recent.add(new HashMap<>());
+            if (recent.size() > buckets) {
+                recent.removeFirst();
+            }
+            assertEquals(recount(recent, 15), w.top());
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code WordArena}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class WordArenaTest {
+
+    /**
+     * Adds a word to the given store.
+     *
+     * @param a
+     *            the store
+     * @param word
+     *            the word
+     * @return the handle of the word
+     */
+    private static int add(WordArena a, String word) {
+        byte[] b = word.getBytes(StandardCharsets.UTF_8);
+        return a.add(b, 0, b.length);
+    }
+
+    /**
+     * Returns the length of the given word in UTF-8.
+     *
+     * @param word
+     *            the word
+     * @return the length of {@code word} in bytes
+     */
+    private static int length(String word) {
+        return word.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Test
+    public final void testAddAcrossSlabs() {
+        WordArena a = new WordArena();
+        final int words = 200000;
+        int[] handles = new int[words];
+        for (int i = 0; i < words; i++) {
+            handles[i] = add(a, "word" + i);
+        }
+        for (int i = 0; i < words; i++) {
+            String w = "word" + i;
+            assertEquals(w, a.decode(handles[i], length(w)));
+            byte[] b = ("." + w).getBytes(StandardCharsets.UTF_8);
+            assertTrue(a.equals(handles[i], b, 1, b.length - 1));
+        }
+        assertTrue(handles[words - 1] >= 0);
+        assertTrue(handles[words - 1] >>> 20 > 0);
+    }
+
+    @Test
+    public final void testLongWord() {
+        WordArena a = new WordArena();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String w = sb.toString();
+        int h1 = add(a, "short");
+        int h2 = add(a, w);
+        assertEquals(w, a.decode(h2, w.length()));
+        assertEquals("short", a.decode(h1, 5));
+    }
+
+    @Test
+    public final void testCompare() {
+        String[] words = { "a", "ab", "b", "\u00E9", "\u00E9t\u00E9",
+            "\uE000", "\uE000a", "\uFB01", "\uD83D\uDE00", "\uD83D\uDE00b",
+            "\uD800\uDC00", "\uFFFD" };
+        WordArena a = new WordArena();
+        int[] handles = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            handles[i] = add(a, words[i]);
+        }
+        for (int i = 0; i < words.length; i++) {
+            for (int j = 0; j < words.length; j++) {
+                assertEquals(words[i] + " " + words[j],
+                        Integer.signum(words[i].compareTo(words[j])),
+                        Integer.signum(a.compare(handles[i],
+                                length(words[i]), handles[j],
+                                length(words[j]))));
+            }
+        }
+    }
+
+    @Test
+    public final void testClear() {
+        WordArena a = new WordArena();
+        for (int i = 0; i < 100000; i++) {
+            add(a, "word" + i);
+        }
+        a.clear();
+        int h = add(a, "again");
+        assertEquals(0, h);
+        assertEquals("again", a.decode(h, 5));
+    }
+
+}
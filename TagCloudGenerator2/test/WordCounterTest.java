@@ -0,0 +1,90 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code WordCounter}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class WordCounterTest {
+
+    /**
+     * Returns the contents of the given counter as a map.
+     *
+     * @param c
+     *            the counter
+     * @return the map of words and their counts in {@code c}
+     */
+    private static Map<String, Integer> toMap(WordCounter c) {
+        Map<String, Integer> m = new HashMap<>();
+        c.forEach((word, count) -> m.put(word, count));
+        return m;
+    }
+
+    @Test
+    public final void testConstructor() {
+        WordCounter c = new WordCounter();
+        assertEquals(0, c.size());
+        assertEquals(0, c.get("red"));
+    }
+
+    @Test
+    public final void testIncrementNew() {
+        WordCounter c = new WordCounter();
+        assertEquals(1, c.increment("red", 0, 3));
+        assertEquals(1, c.size());
+        assertEquals(1, c.get("red"));
+    }
+
+    @Test
+    public final void testIncrementSlice() {
+        WordCounter c = new WordCounter();
+        c.increment("a red fox", 2, 5);
+        assertEquals(2, c.increment(new StringBuilder("red"), 0, 3));
+        assertEquals(1, c.size());
+        assertEquals(2, c.get("red"));
+    }
+
+    @Test
+    public final void testAdd() {
+        WordCounter c = new WordCounter();
+        c.add("red", 0, 3, 5);
+        assertEquals(7, c.add("red", 0, 3, 2));
+    }
+
+    @Test
+    public final void testGrow() {
+        WordCounter c = new WordCounter();
+        Map<String, Integer> expected = new HashMap<>();
+        final int words = 10000;
+        for (int i = 0; i < words; i++) {
+            String w = "w" + (i % (words / 2));
+            c.increment(w, 0, w.length());
+            expected.merge(w, 1, Integer::sum);
+        }
+        assertEquals(words / 2, c.size());
+        assertEquals(expected, toMap(c));
+    }
+
+    @Test
+    public final void testAddAll() {
+        WordCounter c1 = new WordCounter();
+        c1.increment("red", 0, 3);
+        c1.increment("blue", 0, 4);
+        WordCounter c2 = new WordCounter();
+        c2.add("red", 0, 3, 2);
+        c2.increment("green", 0, 5);
+        c1.addAll(c2);
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("red", 3);
+        expected.put("blue", 1);
+        expected.put("green", 1);
+        assertEquals(expected, toMap(c1));
+    }
+
+}
@@ -0,0 +1,133 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code WordScanner}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class WordScannerTest {
+
+    /**
+     * Scans the given pieces of text, in order, as one input.
+     *
+     * @param pieces
+     *            the consecutive pieces of the input
+     * @return the words found, decoded as UTF-8
+     */
+    private static List<String> scan(String... pieces) {
+        return scanBounded(WordScanner.UNBOUNDED, pieces);
+    }
+
+    /**
+     * Scans the given pieces of text, in order, as one input, dropping the
+     * words longer than {@code maxLength} bytes.
+     *
+     * @param maxLength
+     *            the length in bytes of the longest word reported
+     * @param pieces
+     *            the consecutive pieces of the input
+     * @return the words found, decoded as UTF-8
+     */
+    private static List<String> scanBounded(int maxLength,
+            String... pieces) {
+        List<String> words = new ArrayList<>();
+        WordScanner scanner = new WordScanner((word, length) -> words
+                .add(new String(word, 0, length, StandardCharsets.UTF_8)),
+                maxLength);
+        for (String piece : pieces) {
+            scanner.scan(ByteBuffer
+                    .wrap(piece.getBytes(StandardCharsets.UTF_8)));
+        }
+        scanner.finish();
+        return words;
+    }
+
+    @Test
+    public final void testEmpty() {
+        assertEquals(Arrays.asList(), scan(""));
+    }
+
+    @Test
+    public final void testOnlySeparators() {
+        assertEquals(Arrays.asList(), scan(" \t\n\r,-.!?[]\"';:/`()*"));
+    }
+
+    @Test
+    public final void testFoldsAsciiCase() {
+        assertEquals(Arrays.asList("hello", "world"), scan("Hello, WORLD!"));
+    }
+
+    @Test
+    public final void testLeavesNonAsciiBytes() {
+        assertEquals(Arrays.asList("\u00C9lan", "stra\u00DFe"),
+                scan("\u00C9lan stra\u00DFe"));
+    }
+
+    @Test
+    public final void testWordAcrossBuffers() {
+        assertEquals(Arrays.asList("tag", "cloud"), scan("ta", "g cl", "oud"));
+    }
+
+    @Test
+    public final void testSeparatorAtBufferEnd() {
+        assertEquals(Arrays.asList("tag", "cloud"), scan("tag ", "cloud\n"));
+    }
+
+    @Test
+    public final void testLongWord() {
+        char[] c = new char[1000];
+        Arrays.fill(c, 'x');
+        String s = new String(c);
+        assertEquals(Arrays.asList(s), scan(s.toUpperCase()));
+    }
+
+    @Test
+    public final void testDropsWordsOverMaximumLength() {
+        char[] c = new char[WordScanner.MAX_WORD_LENGTH];
+        Arrays.fill(c, 'x');
+        String longest = new String(c);
+        String tooLong = longest + "y";
+        int max = WordScanner.MAX_WORD_LENGTH;
+        assertEquals(Arrays.asList("a", longest, "b"),
+                scanBounded(max, "a " + longest + " " + tooLong + " b"));
+        assertEquals(Arrays.asList("a", "b"),
+                scanBounded(max, "a ", tooLong.substring(0, 700),
+                        tooLong.substring(700), " b ", tooLong));
+    }
+
+    @Test
+    public final void testWordsOfAnyLengthByDefault() {
+        char[] c = new char[4 * WordScanner.MAX_WORD_LENGTH];
+        Arrays.fill(c, 'x');
+        String s = new String(c);
+        assertEquals(Arrays.asList("a", s, s), scan("a " + s + " ", s));
+    }
+
+    @Test
+    public final void testBoundedOnInputWithoutSeparators() {
+        List<String> words = new ArrayList<>();
+        WordScanner scanner = new WordScanner((word, length) -> {
+            assertEquals(WordScanner.MAX_WORD_LENGTH, word.length);
+            words.add(new String(word, 0, length, StandardCharsets.UTF_8));
+        }, WordScanner.MAX_WORD_LENGTH);
+        byte[] block = new byte[1 << 16];
+        Arrays.fill(block, (byte) 'x');
+        for (int i = 0; i < 256; i++) {
+            scanner.scan(ByteBuffer.wrap(block));
+        }
+        scanner.scan(ByteBuffer
+                .wrap(" word".getBytes(StandardCharsets.US_ASCII)));
+        scanner.finish();
+        assertEquals(Arrays.asList("word"), words);
+    }
+
+}
@@ -0,0 +1,71 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code ZipfCorpus}.
+ *
+ * @author Wenbo Nan
+ *
+ */
+public class ZipfCorpusTest {
+
+    /**
+     * Generates text.
+     *
+     * @param corpus
+     *            the generator
+     * @param bytes
+     *            the size of the text
+     * @return the text
+     * @throws IOException
+     *             write problem
+     */
+    private static byte[] text(ZipfCorpus corpus, long bytes)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        corpus.write(out, bytes);
+        return out.toByteArray();
+    }
+
+    @Test
+    public final void testDeterministic() throws IOException {
+        byte[] a = text(new ZipfCorpus(1000, 1.0, 8, 42), 50000);
+        byte[] b = text(new ZipfCorpus(1000, 1.0, 8, 42), 50000);
+        assertArrayEquals(a, b);
+        assertTrue(a.length >= 50000);
+    }
+
+    @Test
+    public final void testLinesAndFrequencies() throws IOException {
+        ZipfCorpus corpus = new ZipfCorpus(1000, 1.0, 8, 3);
+        String text = new String(text(corpus, 200000),
+                StandardCharsets.US_ASCII);
+        assertTrue(text.endsWith("\n"));
+        Map<String, Integer> counts = new HashMap<>();
+        long words = 0;
+        for (String line : text.split("\n")) {
+            String[] w = line.split(" ");
+            assertEquals(8, w.length);
+            for (String word : w) {
+                counts.merge(word, 1, Integer::sum);
+                words++;
+            }
+        }
+        assertTrue(counts.size() <= 1000);
+        int first = counts.get(corpus.word(0));
+        int second = counts.get(corpus.word(1));
+        double share = (double) first / words;
+        assertTrue(share > 0.11 && share < 0.15);
+        assertTrue(second > first / 3 && second < first);
+    }
+
+}